@@ -3,7 +3,9 @@ package nl.thedutchruben.mccore;
 import lombok.SneakyThrows;
 import net.md_5.bungee.api.chat.ComponentBuilder;
 import nl.thedutchruben.mccore.config.UpdateCheckerConfig;
+import nl.thedutchruben.mccore.global.caching.CacheRegion;
 import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.spigot.commands.CacheCommands;
 import nl.thedutchruben.mccore.spigot.commands.CommandRegistry;
 import nl.thedutchruben.mccore.spigot.listeners.ListenersRegistry;
 import nl.thedutchruben.mccore.spigot.runnables.RunnableRegistry;
@@ -41,6 +43,7 @@ public final class Mccore {
     private UpdateCheckerConfig updateCheckerConfig;
     private String tdrId;
     private CachingManager cachingManager;
+    private CommandRegistry commandRegistry;
 
     private String projectId;
     private PluginType type;
@@ -63,7 +66,7 @@ public final class Mccore {
                 break;
             case SPIGOT:
                 try {
-                    CommandRegistry commandRegistry = new CommandRegistry(this);
+                    commandRegistry = new CommandRegistry(this);
 
                     commandRegistry.setFailureHandler((reason, sender, command, subCommand) -> {
                         switch (reason) {
@@ -172,6 +175,14 @@ public final class Mccore {
             return complete;
         });
 
+        CommandRegistry.getTabCompletable().put("cacheregion", commandSender -> {
+            Set<String> complete = new HashSet<>();
+            for (CacheRegion<?> region : cachingManager.getRegions()) {
+                complete.add(region.getName());
+            }
+            return complete;
+        });
+
         CommandRegistry.getTabCompletable().put("color", commandSender -> {
             Set<String> complete = new HashSet<>();
             for (ChatColor color : ChatColor.values()) {
@@ -187,6 +198,34 @@ public final class Mccore {
         return cachingManager;
     }
 
+    public CommandRegistry getCommandRegistry() {
+        return commandRegistry;
+    }
+
+    /**
+     * Add the cache admin commands to a command of the plugin, like /command cache stats.
+     * See {@link CacheCommands} for the commands and permissions.
+     *
+     * @param command the name of the plugin command
+     */
+    public void registerCacheCommands(String command) {
+        if (commandRegistry == null) {
+            throw new IllegalStateException("Commands are only available on spigot");
+        }
+        try {
+            commandRegistry.registerSubCommandGroup(command, CacheCommands.class);
+        } catch (InstantiationException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop the library, call this in the onDisable of the plugin so the cache is written to disk
+     */
+    public void shutdown() {
+        cachingManager.shutdown();
+    }
+
     public void startUpdateChecker(UpdateCheckerConfig updateCheckerConfig) {
         this.updateCheckerConfig = updateCheckerConfig;
         Bukkit.getScheduler().runTaskTimerAsynchronously(this.javaPlugin, () -> getUpdate(Bukkit.getConsoleSender(),false),
@@ -0,0 +1,165 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A secondary index over the objects of one type in the {@link CachingManager}, like the profiles by their name or
+ * the members by their clan.
+ * <p>
+ * The index maps the value the extractor returns to the keys of the objects with that value, so a lookup is one hash
+ * lookup instead of a scan over every entry. The manager updates it on every store, replace, remove, expiry and
+ * eviction. The updates of one key are applied one at a time and only for the object that is stored at that moment,
+ * so concurrent writes of a key can't leave an old value behind. Only the objects that are in memory are indexed.
+ * <pre>
+ * CacheIndex&lt;Profile, String&gt; byName = cachingManager.addIndex("profile-name", Profile.class,
+ *         profile -&gt; profile.getName().toLowerCase());
+ * Profile profile = byName.getFirst("notch");
+ * </pre>
+ *
+ * @param <T> the type of the indexed objects
+ * @param <K> the type of the indexed value
+ */
+public class CacheIndex<T extends CachingObject, K> {
+    private final String name;
+    private final Class<T> type;
+    private final Function<? super T, ? extends K> extractor;
+    private final CachingManager cachingManager;
+    private final ConcurrentHashMap<K, Set<String>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, K> values = new ConcurrentHashMap<>();
+
+    CacheIndex(String name, Class<T> type, Function<? super T, ? extends K> extractor,
+               CachingManager cachingManager) {
+        this.name = name;
+        this.type = type;
+        this.extractor = extractor;
+        this.cachingManager = cachingManager;
+    }
+
+    /**
+     * Returns the objects with the value
+     *
+     * @param value
+     * @return the objects, empty if there are none
+     */
+    public List<T> get(K value) {
+        Set<String> keys = entries.get(value);
+        if (keys == null) {
+            return Collections.emptyList();
+        }
+        List<T> objects = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            CachingObject object = cachingManager.getIndexed(key);
+            if (type.isInstance(object)) {
+                objects.add(type.cast(object));
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Returns an object with the value, use it for values that are unique like a name
+     *
+     * @param value
+     * @return the object, or null if there is none
+     */
+    public T getFirst(K value) {
+        Set<String> keys = entries.get(value);
+        if (keys == null) {
+            return null;
+        }
+        for (String key : keys) {
+            CachingObject object = cachingManager.getIndexed(key);
+            if (type.isInstance(object)) {
+                return type.cast(object);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the keys of the objects with the value
+     *
+     * @param value
+     * @return an unmodifiable view of the keys, empty if there are none
+     */
+    public Set<String> getKeys(K value) {
+        Set<String> keys = entries.get(value);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Returns the amount of indexed objects
+     *
+     * @return
+     */
+    public int size() {
+        return values.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Index the object that is stored under the key
+     *
+     * @param key
+     * @param stored the object in the map of the manager
+     * @param object the object itself, it differs from the stored object when that is kept off the heap
+     */
+    void update(String key, CachingObject stored, CachingObject object) {
+        K value = type.isInstance(object) ? extractor.apply(type.cast(object)) : null;
+        values.compute(key, (k, previous) -> {
+            if (!cachingManager.isStored(key, stored)) {
+                // The object is replaced or removed in the meantime, that write updates the index
+                return previous;
+            }
+            if (previous != null && !previous.equals(value)) {
+                unlink(previous, key);
+            }
+            if (value != null) {
+                link(value, key);
+            }
+            return value;
+        });
+    }
+
+    /**
+     * Remove the key from the index, unless an object is stored under it again
+     *
+     * @param key
+     */
+    void remove(String key) {
+        values.compute(key, (k, previous) -> {
+            if (previous == null || cachingManager.isStored(key, null)) {
+                return previous;
+            }
+            unlink(previous, key);
+            return null;
+        });
+    }
+
+    private void link(K value, String key) {
+        entries.compute(value, (v, keys) -> {
+            Set<String> set = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            set.add(key);
+            return set;
+        });
+    }
+
+    private void unlink(K value, String key) {
+        entries.computeIfPresent(value, (v, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+}
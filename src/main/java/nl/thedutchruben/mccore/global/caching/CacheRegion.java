@@ -0,0 +1,458 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import nl.thedutchruben.mccore.global.caching.eviction.EvictionPolicy;
+import nl.thedutchruben.mccore.global.caching.eviction.TinyLfuEvictionPolicy;
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+import nl.thedutchruben.mccore.global.caching.expiry.ExpiryService;
+import nl.thedutchruben.mccore.global.caching.stats.CacheStats;
+import nl.thedutchruben.mccore.global.caching.stats.MemoryEstimator;
+import nl.thedutchruben.mccore.global.caching.stats.RemovalCause;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A named part of the cache that only holds values of one type, with its own expiry, size bound and file system.
+ * <p>
+ * Values are kept as they are, next to their expire time, so reading them needs no cast and no
+ * {@link CachingObject} per value. Only when a value is written to the file system it is wrapped in a
+ * {@link RegionCachingObject}.
+ * <p>
+ * A value that is evicted by the size bound stays in the file system. A lazy file system, see
+ * {@link CachingFileSystem#isLazy()}, is read again when the value is missed. Other file systems are only read by
+ * {@link #persistTo(CachingFileSystem)}, there an evicted value is gone until it is persisted again.
+ * <pre>
+ * CacheRegion&lt;Profile&gt; profiles = cachingManager.region("profiles", Profile.class)
+ *         .expireAfterWrite(30, TimeUnit.MINUTES)
+ *         .maximumSize(1000);
+ * </pre>
+ *
+ * @param <V> the type of the values
+ */
+public class CacheRegion<V> {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final String name;
+    private final Class<V> type;
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private volatile long expireAfterWriteMillis;
+    private final CacheStats stats = new CacheStats();
+
+    private volatile CachingFileSystem cachingFileSystem;
+    private volatile WriteBehindQueue writeBehindQueue;
+    private volatile ExpiryService expiryService;
+    private volatile CompletableFuture<Void> readyFuture = CompletableFuture.completedFuture(null);
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private EvictionPolicy evictionPolicy = new TinyLfuEvictionPolicy();
+    private volatile long maximumSize;
+
+    CacheRegion(String name, Class<V> type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    /**
+     * Let values expire a fixed time after they are written, 0 disables the expiry
+     *
+     * @param duration
+     * @param unit
+     * @return this region
+     */
+    public CacheRegion<V> expireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWriteMillis = unit.toMillis(duration);
+        if (expireAfterWriteMillis > 0 && expiryService == null) {
+            synchronized (this) {
+                if (expiryService == null) {
+                    expiryService = new ExpiryService(this::expire, removed -> {
+                        if (writeBehindQueue != null) {
+                            writeBehindQueue.enqueueRemoveAll(removed);
+                        }
+                    }, 1000, 64);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Set the maximum amount of values in memory, 0 disables the bound
+     *
+     * @param maximumSize
+     * @return this region
+     */
+    public CacheRegion<V> maximumSize(long maximumSize) {
+        evictionLock.lock();
+        try {
+            boolean wasBounded = this.maximumSize > 0;
+            this.maximumSize = Math.max(0, maximumSize);
+            evictionPolicy.setCapacity(this.maximumSize);
+            if (this.maximumSize > 0 && !wasBounded) {
+                entries.keySet().forEach(evictionPolicy::onInsert);
+            } else if (this.maximumSize == 0) {
+                evictionPolicy.clear();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        evictIfNeeded();
+        return this;
+    }
+
+    /**
+     * Set the policy that decides which value is evicted, the default is {@link TinyLfuEvictionPolicy}
+     *
+     * @param evictionPolicy
+     * @return this region
+     */
+    public CacheRegion<V> evictionPolicy(EvictionPolicy evictionPolicy) {
+        evictionLock.lock();
+        try {
+            this.evictionPolicy.clear();
+            this.evictionPolicy = evictionPolicy;
+            evictionPolicy.setCapacity(maximumSize);
+            if (maximumSize > 0) {
+                entries.keySet().forEach(evictionPolicy::onInsert);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Save the values of this region to the file system, the values that are saved there are loaded.
+     * Use a file system that is not shared with other regions.
+     *
+     * @param cachingFileSystem
+     * @return this region
+     */
+    public synchronized CacheRegion<V> persistTo(CachingFileSystem cachingFileSystem) {
+        if (writeBehindQueue == null) {
+            writeBehindQueue = new WriteBehindQueue(() -> this.cachingFileSystem, 5000, 1000);
+        } else {
+            writeBehindQueue.flush();
+            this.cachingFileSystem.close();
+        }
+        this.cachingFileSystem = cachingFileSystem;
+        readyFuture = cachingFileSystem.streamAll(this::storeLoaded);
+        return this;
+    }
+
+    /**
+     * Get the value stored under the key, a value that is not in memory is loaded from a lazy file system
+     *
+     * @param key
+     * @return the value, or null if there is no valid value
+     */
+    public V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            entry = loadLazy(key);
+        }
+        if (entry == null || entry.isExpired(CacheClock.currentTimeMillis())) {
+            stats.recordMiss();
+            return null;
+        }
+        stats.recordHit();
+        if (maximumSize > 0 && evictionLock.tryLock()) {
+            try {
+                evictionPolicy.onAccess(key);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return entry.value;
+    }
+
+    /**
+     * Store the value, a value that is already stored under the key is replaced
+     *
+     * @param key
+     * @param value
+     */
+    public void put(String key, V value) {
+        Entry<V> entry = newEntry(value);
+        Entry<V> previous = entries.put(key, entry);
+        onStored(key, previous, entry.expireAt);
+        save(key, entry);
+    }
+
+    /**
+     * Store the value if there is no valid value stored under the key
+     *
+     * @param key
+     * @param value
+     * @return the valid value that was already stored, or null if the given value is stored
+     */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(String key, V value) {
+        Entry<V> entry = newEntry(value);
+        Object[] existing = new Object[2];
+        entries.compute(key, (k, current) -> {
+            if (current != null && !current.isExpired(CacheClock.currentTimeMillis())) {
+                existing[0] = current;
+                return current;
+            }
+            existing[1] = current;
+            return entry;
+        });
+        if (existing[0] != null) {
+            return ((Entry<V>) existing[0]).value;
+        }
+        onStored(key, (Entry<V>) existing[1], entry.expireAt);
+        save(key, entry);
+        return null;
+    }
+
+    /**
+     * Get the valid value stored under the key, or create and store one with the mapping function
+     *
+     * @param key
+     * @param mappingFunction creates the value, may return null to store nothing
+     * @return the stored value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(String key, Function<String, ? extends V> mappingFunction) {
+        Object[] created = new Object[2];
+        Entry<V> result = entries.compute(key, (k, current) -> {
+            if (current != null && !current.isExpired(CacheClock.currentTimeMillis())) {
+                return current;
+            }
+            V value = mappingFunction.apply(k);
+            if (value == null) {
+                return null;
+            }
+            created[0] = Boolean.TRUE;
+            created[1] = current;
+            return newEntry(value);
+        });
+        if (result == null) {
+            return null;
+        }
+        if (created[0] != null) {
+            onStored(key, (Entry<V>) created[1], result.expireAt);
+            save(key, result);
+        }
+        return result.value;
+    }
+
+    /**
+     * Remove the value from memory and the file system
+     *
+     * @param key
+     * @return the removed value or null
+     */
+    public V remove(String key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed == null) {
+            return null;
+        }
+        onRemoved(key);
+        stats.recordRemoval(RemovalCause.EXPLICIT);
+        if (writeBehindQueue != null) {
+            writeBehindQueue.enqueueRemove(new RegionCachingObject(key, name, null, null, null));
+        }
+        return removed.value;
+    }
+
+    /**
+     * Returns a view of the stored keys, expired values that are not cleaned up yet are included
+     *
+     * @return
+     */
+    public Set<String> keys() {
+        return entries.keySet();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<V> getType() {
+        return type;
+    }
+
+    /**
+     * Returns the hit, miss and removal counters of the region
+     *
+     * @return
+     */
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Estimate the heap used by the values of the region, based on a sample of the values
+     *
+     * @return the estimated bytes
+     */
+    public long estimateMemory() {
+        return MemoryEstimator.estimate(entries);
+    }
+
+    /**
+     * Returns a future that completes when the values of the file system are loaded
+     *
+     * @return
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * Write the pending changes to the file system and wait until they are written
+     */
+    public void flush() {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.flush();
+        }
+    }
+
+    /**
+     * Flush the pending changes and stop the background threads of the region
+     */
+    public void shutdown() {
+        if (expiryService != null) {
+            expiryService.shutdown();
+        }
+        if (writeBehindQueue != null) {
+            writeBehindQueue.shutdown();
+            cachingFileSystem.close();
+        }
+    }
+
+    /**
+     * Load the value from a lazy file system and store it, unless another thread stored one first. A key with a
+     * pending write is not loaded, the file system still holds its old value.
+     */
+    private Entry<V> loadLazy(String key) {
+        CachingFileSystem fileSystem = cachingFileSystem;
+        WriteBehindQueue queue = writeBehindQueue;
+        if (fileSystem == null || !fileSystem.isLazy() || queue.isPending(key)) {
+            return null;
+        }
+        storeLoaded(fileSystem.load(key).getNow(null));
+        return entries.get(key);
+    }
+
+    /**
+     * Store a value that is read from the file system, a value that is already in memory is newer
+     */
+    private void storeLoaded(CachingObject cachingObject) {
+        if (!(cachingObject instanceof RegionCachingObject) || !cachingObject.isValid()) {
+            return;
+        }
+        RegionCachingObject stored = (RegionCachingObject) cachingObject;
+        long expireAt = stored.getExpireAt();
+        V value = GSON.fromJson(stored.getData(), type);
+        if (value != null && entries.putIfAbsent(stored.getKey(), new Entry<>(value, expireAt)) == null) {
+            onStored(stored.getKey(), null, expireAt);
+        }
+    }
+
+    private Entry<V> newEntry(V value) {
+        long ttl = expireAfterWriteMillis;
+        return new Entry<>(value, ttl > 0 ? CacheClock.currentTimeMillis() + ttl : -1);
+    }
+
+    private void save(String key, Entry<V> entry) {
+        if (writeBehindQueue == null) {
+            return;
+        }
+        Date expireDate = entry.expireAt < 0 ? null : new Date(entry.expireAt);
+        writeBehindQueue.enqueueSave(key, new RegionCachingObject(key, name, new Date(), expireDate,
+                GSON.toJsonTree(entry.value, type)));
+    }
+
+    /**
+     * Remove the value if it is expired, called by the {@link ExpiryService}
+     */
+    private CachingObject expire(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || !entry.isExpired(CacheClock.currentTimeMillis()) || !entries.remove(key, entry)) {
+            return null;
+        }
+        onRemoved(key);
+        stats.recordRemoval(RemovalCause.EXPIRED);
+        return writeBehindQueue == null ? null : new RegionCachingObject(key, name, null, null, null);
+    }
+
+    private void onStored(String key, Entry<V> previous, long expireAt) {
+        if (expireAt >= 0 && expiryService != null) {
+            expiryService.schedule(key, expireAt);
+        }
+        if (maximumSize <= 0) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            if (previous == null) {
+                evictionPolicy.onInsert(key);
+            } else {
+                evictionPolicy.onAccess(key);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        evictIfNeeded();
+    }
+
+    private void onRemoved(String key) {
+        if (maximumSize <= 0) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            evictionPolicy.onRemove(key);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evictIfNeeded() {
+        if (maximumSize <= 0) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            while (entries.size() > maximumSize) {
+                String victim = evictionPolicy.victim();
+                if (victim == null) {
+                    return;
+                }
+                evictionPolicy.onRemove(victim);
+                if (entries.remove(victim) != null) {
+                    stats.recordRemoval(RemovalCause.SIZE);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt >= 0 && now > expireAt;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Decodes saved caching objects in parallel when the cache starts.
+ * <p>
+ * Every source (a file, a record, ...) is decoded on a temporary pool with one thread per core, and handed to the
+ * consumer as soon as it is decoded, so the cache fills up while the rest is still loading. A source that fails to
+ * decode is skipped and does not stop the warm-up.
+ *
+ * @param <S> the type of the sources
+ */
+public class CacheWarmUpLoader<S> {
+    private final int parallelism;
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public CacheWarmUpLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a loader
+     *
+     * @param parallelism the amount of threads that decode at the same time
+     */
+    public CacheWarmUpLoader(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Decode all sources and hand the objects to the consumer, the consumer is called from multiple threads
+     *
+     * @param sources the sources to decode
+     * @param decoder decodes one source, may return null to skip it
+     * @param consumer receives the decoded objects
+     * @return a future that completes with the amount of loaded objects when all sources are decoded
+     */
+    public CompletableFuture<Integer> load(Collection<S> sources, Function<S, CachingObject> decoder,
+                                           Consumer<CachingObject> consumer) {
+        if (sources.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        // A parallel stream started from a task of the pool runs on that pool instead of the common pool
+        CompletableFuture<Integer> future = CompletableFuture.supplyAsync(() -> {
+            sources.parallelStream().forEach(source -> {
+                try {
+                    CachingObject cachingObject = decoder.apply(source);
+                    if (cachingObject != null) {
+                        consumer.accept(cachingObject);
+                        loaded.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    CoreLogger.warning("Could not load a saved cache object, it is skipped", e);
+                }
+            });
+            return loaded.get();
+        }, pool);
+        future.whenComplete((count, throwable) -> pool.shutdown());
+        return future;
+    }
+
+    /**
+     * Returns the amount of objects that are loaded
+     *
+     * @return
+     */
+    public int getLoaded() {
+        return loaded.get();
+    }
+
+    /**
+     * Returns the amount of sources that could not be decoded
+     *
+     * @return
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+}
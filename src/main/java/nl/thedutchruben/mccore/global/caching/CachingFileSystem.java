@@ -1,7 +1,11 @@
 package nl.thedutchruben.mccore.global.caching;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Abstract file system so i can implement thins like redis cache later
@@ -16,6 +20,17 @@ public abstract class CachingFileSystem {
      */
     public abstract CompletableFuture<Void> save(String key, CachingObject cachingObject);
 
+    /**
+     * Save multiple objects to the file system, file systems that can write them in one pass or round trip should
+     * override this
+     *
+     * @param cachingObjects the objects by their key
+     */
+    public CompletableFuture<Void> saveAll(Map<String, CachingObject> cachingObjects) {
+        return CompletableFuture.allOf(cachingObjects.entrySet().stream()
+                .map(entry -> save(entry.getKey(), entry.getValue())).toArray(CompletableFuture[]::new));
+    }
+
     /**
      * Remove the object from the file system
      * 
@@ -23,10 +38,108 @@ public abstract class CachingFileSystem {
      */
     public abstract CompletableFuture<Void> remove(CachingObject cachingObject);
 
+    /**
+     * Remove multiple objects from the file system, file systems that can remove in one pass should override this
+     *
+     * @param cachingObjects
+     */
+    public CompletableFuture<Void> removeAll(Collection<CachingObject> cachingObjects) {
+        return CompletableFuture.allOf(cachingObjects.stream().map(this::remove).toArray(CompletableFuture[]::new));
+    }
+
     /**
      * Returns a list with saved caching object
      * 
      * @return
      */
     public abstract CompletableFuture<List<CachingObject>> loadALl();
+
+    /**
+     * Hand every saved caching object to the consumer while they are loaded, instead of collecting them first.
+     * The consumer can be called from multiple threads at the same time.
+     *
+     * @param consumer
+     * @return a future that completes when all objects are loaded
+     */
+    public CompletableFuture<Void> streamAll(Consumer<CachingObject> consumer) {
+        return loadALl().thenAccept(list -> list.forEach(consumer));
+    }
+
+    /**
+     * Load one saved caching object, file systems that can look up a single key should override this
+     *
+     * @param key
+     * @return the object or null if nothing is saved under the key
+     */
+    public CompletableFuture<CachingObject> load(String key) {
+        return loadALl().thenApply(list -> {
+            for (CachingObject cachingObject : list) {
+                if (key.equals(cachingObject.getKey())) {
+                    return cachingObject;
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Load multiple saved caching objects, file systems that can look them up in one pass or round trip should
+     * override this
+     *
+     * @param keys
+     * @return a future with the found objects by their key, keys without a saved object are left out
+     */
+    public CompletableFuture<Map<String, CachingObject>> loadAll(Collection<String> keys) {
+        Map<String, CompletableFuture<CachingObject>> futures = new HashMap<>();
+        for (String key : keys) {
+            futures.put(key, load(key));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            Map<String, CachingObject> found = new HashMap<>();
+            futures.forEach((key, future) -> {
+                CachingObject cachingObject = future.join();
+                if (cachingObject != null) {
+                    found.put(key, cachingObject);
+                }
+            });
+            return found;
+        });
+    }
+
+    /**
+     * If true the objects are not loaded when the manager starts, but looked up with {@link #load(String)} the
+     * first time they are requested. A load that is completed right away is returned by
+     * {@link CachingManager#getCachingObject(String)}. A file system that loads over the network completes later, then
+     * that read misses and the object is stored when it arrives, use
+     * {@link CachingManager#getCachingObjectAsync(String)} to wait for it.
+     *
+     * @return
+     */
+    public boolean isLazy() {
+        return false;
+    }
+
+    /**
+     * Close the files or connections of the file system, pending writes are finished first
+     */
+    public void close() {
+    }
+
+    /**
+     * Find the class of a stored caching object by its name
+     *
+     * @param type the full class name
+     * @return the class, or null if it does not exist or is not a caching object
+     */
+    @SuppressWarnings("unchecked")
+    protected Class<? extends CachingObject> resolveType(String type) {
+        try {
+            Class<?> clazz = Class.forName(type, true, getClass().getClassLoader());
+            if (CachingObject.class.isAssignableFrom(clazz)) {
+                return (Class<? extends CachingObject>) clazz;
+            }
+        } catch (ClassNotFoundException ignored) {
+        }
+        return null;
+    }
 }
@@ -1,22 +1,160 @@
 package nl.thedutchruben.mccore.global.caching;
 
+import nl.thedutchruben.mccore.global.caching.eviction.EvictionPolicy;
+import nl.thedutchruben.mccore.global.caching.eviction.TinyLfuEvictionPolicy;
+import nl.thedutchruben.mccore.global.caching.eviction.Weigher;
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+import nl.thedutchruben.mccore.global.caching.expiry.ExpiryService;
 import nl.thedutchruben.mccore.global.caching.fileSystemTypes.JsonFileType;
+import nl.thedutchruben.mccore.global.caching.offheap.OffHeapEntry;
+import nl.thedutchruben.mccore.global.caching.offheap.OffHeapStore;
+import nl.thedutchruben.mccore.global.caching.stats.CacheStats;
+import nl.thedutchruben.mccore.global.caching.stats.MemoryEstimator;
+import nl.thedutchruben.mccore.global.caching.stats.RemovalCause;
+import nl.thedutchruben.mccore.utils.CoreLogger;
 
-import java.util.HashMap;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+/**
+ * Keeps the caching objects in memory and hands the persistent ones to the {@link CachingFileSystem}.
+ * The store is a {@link ConcurrentHashMap}, reads are lock free and every write only locks the bin of its own key,
+ * so it is safe to use from the main thread, async tasks and the loading thread at the same time.
+ * <p>
+ * The manager is unbounded by default. With {@link #setMaximumSize(long)} or {@link #setMaximumWeight(long, Weigher)}
+ * the {@link EvictionPolicy} removes entries from memory when the bound is exceeded, persistent entries stay on disk.
+ * Entries that must stay in memory, like the data of online players, can be pinned with {@link #pin(String)}.
+ * With a {@link DiskTier} the evicted entries are demoted to disk and promoted back into memory when they are read.
+ * Expired entries are removed in the background by the {@link ExpiryService}, and all disk writes go through the
+ * {@link WriteBehindQueue}.
+ */
 public class CachingManager {
-    private Map<String, CachingObject> cachingMap = new HashMap<>();
-    private CachingFileSystem cachingFileSystem;
+    private static final int WARM_UP_BATCH = 256;
+
+    private final ConcurrentMap<String, CachingObject> cachingMap = new ConcurrentHashMap<>();
+    private volatile CachingFileSystem cachingFileSystem;
+    private final ExpiryService expiryService;
+    private final WriteBehindQueue writeBehindQueue;
+    private volatile CompletableFuture<Void> readyFuture = new CompletableFuture<>();
+    private final ConcurrentMap<String, CacheRegion<?>> regions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CacheIndex<?, ?>> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<CachingObject>> loads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<CachingObject>> lazyLoads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> notFound = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> pins = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final CacheStats stats = new CacheStats();
+    private volatile OffHeapStore offHeapStore;
+    private volatile DiskTier diskTier;
+    private volatile double refreshAheadFactor;
+    private volatile long notFoundTtlMillis;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private EvictionPolicy evictionPolicy = new TinyLfuEvictionPolicy();
+    private volatile boolean bounded;
+    private long maximumSize;
+    private long maximumWeight;
+    private volatile double capacityFactor = 1;
+    private volatile HeapPressureMonitor heapPressureMonitor;
+    private volatile HotKeyRecorder hotKeyRecorder;
+    private Weigher weigher;
+    private long totalWeight;
 
     public CachingManager() {
-        this.cachingFileSystem = new JsonFileType();
-        this.cachingFileSystem.loadALl().whenCompleteAsync((aList, throwable) -> {
-            aList.forEach(data -> {
-                cachingMap.put(data.getKey(), data);
-            });
+        this(new JsonFileType());
+    }
+
+    /**
+     * Create a manager that persists to the given file system
+     *
+     * @param cachingFileSystem
+     */
+    public CachingManager(CachingFileSystem cachingFileSystem) {
+        this(cachingFileSystem, null);
+    }
+
+    /**
+     * Create a manager that persists to the given file system and logs every write to the write-ahead log. The
+     * writes that the log still holds from a crash are replayed into the file system before its objects are loaded.
+     *
+     * @param cachingFileSystem
+     * @param writeAheadLog the log, or null to only write to the file system
+     */
+    public CachingManager(CachingFileSystem cachingFileSystem, WriteAheadLog writeAheadLog) {
+        this.writeBehindQueue = new WriteBehindQueue(this::getCachingFileSystem, 5000, 1000, writeAheadLog);
+        this.expiryService = new ExpiryService(this::expire, writeBehindQueue::enqueueRemoveAll, 1000, 64);
+        if (writeAheadLog != null) {
+            writeAheadLog.replay(cachingFileSystem);
+        }
+        setCachingFileSystem(cachingFileSystem);
+    }
+
+    /**
+     * Switch to another file system, the old one is closed and the objects of the new one are loaded
+     *
+     * @param cachingFileSystem
+     */
+    public void setCachingFileSystem(CachingFileSystem cachingFileSystem) {
+        CachingFileSystem old = this.cachingFileSystem;
+        if (old != null) {
+            // Pending writes belong to the old file system
+            writeBehindQueue.flush();
+        }
+        this.cachingFileSystem = cachingFileSystem;
+        if (old != null) {
+            old.close();
+        }
+        CompletableFuture<Void> ready = readyFuture.isDone() ? new CompletableFuture<>() : readyFuture;
+        this.readyFuture = ready;
+        if (cachingFileSystem.isLazy()) {
+            ready.complete(null);
+            return;
+        }
+        // Never overwrite an entry that was added while we were loading
+        cachingFileSystem.streamAll(data -> {
+            CachingObject stored = toStored(data.getKey(), data);
+            if (cachingMap.putIfAbsent(data.getKey(), withNewVersion(stored)) == null) {
+                onStored(data.getKey(), null, stored, data);
+            } else {
+                release(stored);
+            }
+        }).whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                CoreLogger.severe("Could not load the saved cache objects", throwable);
+            }
+            ready.complete(null);
         });
+    }
 
+    /**
+     * Returns a future that completes when the saved objects are loaded, use it to hold logins until the cache is warm
+     *
+     * @return
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * Returns true if the saved objects are loaded
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return readyFuture.isDone();
     }
 
     /**
@@ -26,36 +164,1445 @@ public class CachingManager {
      * @return
      */
     public CachingObject getCachingObject(String key) {
-        CachingObject object = cachingMap.get(key);
-        if(object == null){
+        return lookup(key, true);
+    }
+
+    /**
+     * Get the caching object, and wait for a lazy file system when it is not in memory. A file system that loads over
+     * the network, like the {@link nl.thedutchruben.mccore.global.caching.fileSystemTypes.RespFileType}, completes
+     * the future when the object arrived without blocking the calling thread, while
+     * {@link #getCachingObject(String)} misses until then. Concurrent reads of the same key share one load.
+     *
+     * @param key
+     * @return a future that completes with the object, or null if there is no valid object
+     */
+    public CompletableFuture<CachingObject> getCachingObjectAsync(String key) {
+        CachingObject stored = cachingMap.get(key);
+        DiskTier tier = diskTier;
+        boolean inMemory = stored != null && stored.isValid();
+        if (!cachingFileSystem.isLazy() || inMemory || (tier != null && tier.contains(key))) {
+            return CompletableFuture.completedFuture(lookup(key, true));
+        }
+        return loadLazyAsync(key).thenApply(loaded -> lookup(key, true, false));
+    }
+
+    /**
+     * Drop the object from the memory of this server only, the file system keeps it and the next read loads it again
+     * from a lazy file system. Use it with a file system that several servers share, when another server changed the
+     * object.
+     *
+     * @param key
+     * @return true if an object was dropped
+     */
+    public boolean evict(String key) {
+        promoteIfDemoted(key);
+        CachingObject removed = cachingMap.remove(key);
+        if (removed == null) {
+            return false;
+        }
+        onRemoved(key, removed);
+        stats.recordRemoval(RemovalCause.EXPLICIT);
+        return true;
+    }
+
+    /**
+     * Get the caching object based of the key together with its version, pass the version to
+     * {@link #compareAndSet(String, long, CachingObject)} to store a new object based on this one
+     *
+     * @param key
+     * @return the object and its version, or null if there is no valid object stored
+     */
+    public VersionedObject getVersioned(String key) {
+        if (lookup(key, true) == null) {
             return null;
         }
-        if (object.isValid()) {
+        // The version belongs to the stored object, an object kept off the heap is decoded into a new one
+        CachingObject stored = cachingMap.get(key);
+        while (stored != null && stored.isValid()) {
+            CachingObject object = stored instanceof OffHeapEntry ? ((OffHeapEntry) stored).decode() : stored;
+            if (object != null) {
+                return new VersionedObject(object, stored.getVersion());
+            }
+            CachingObject current = cachingMap.get(key);
+            if (current == stored) {
+                return null;
+            }
+            stored = current;
+        }
+        return null;
+    }
+
+    private CachingObject lookup(String key, boolean recordStats) {
+        return lookup(key, recordStats, true);
+    }
+
+    private CachingObject lookup(String key, boolean recordStats, boolean loadLazy) {
+        HotKeyRecorder recorder = hotKeyRecorder;
+        if (recorder != null && recordStats) {
+            recorder.record(key);
+        }
+        CachingObject object = cachingMap.get(key);
+        if (object == null && diskTier != null) {
+            object = promote(key);
+        }
+        if (object == null && loadLazy && cachingFileSystem.isLazy()) {
+            object = loadLazy(key);
+        }
+        if (object != null && object.isValid()) {
+            object.touch(CacheClock.currentTimeMillis());
+            if (object instanceof OffHeapEntry) {
+                // A concurrent write can release the entry, then the current object is returned
+                object = decode(key, object);
+                if (object != null && !object.isValid()) {
+                    object = null;
+                }
+            }
+        } else {
+            object = null;
+        }
+        if (object != null) {
+            if (recordStats) {
+                stats.recordHit();
+            }
+            if (bounded) {
+                recordAccess(key);
+            }
             return object;
         }
+        if (recordStats) {
+            stats.recordMiss();
+        }
         return null;
     }
 
     /**
-     * Add caching object
+     * Get the caching object, or load it with the loader when there is no valid object stored.
+     * <p>
+     * Concurrent calls for the same key share one load, so an expensive lookup is only done once. The loaded object
+     * is stored before the future completes. When the load fails nothing is stored and the next call tries again.
+     * <p>
+     * With {@link #setRefreshAhead(double)} an object that passed the refresh point of its lifetime is reloaded in
+     * the background while the old object is still returned. With {@link #setNotFoundTtl(long, TimeUnit)} a load that
+     * returns null is remembered, and calls within that time return null without calling the loader.
+     *
+     * @param key
+     * @param loader starts the load of the key, the returned future may complete with null if the key doesn't exist
+     * @return a future that completes with the object, or null if the loader found nothing
+     */
+    public CompletableFuture<CachingObject> getOrLoad(String key,
+                                                      Function<String, CompletableFuture<? extends CachingObject>> loader) {
+        CachingObject cached = getCachingObject(key);
+        if (cached != null) {
+            double factor = refreshAheadFactor;
+            if (factor > 0 && cached.isRefreshDue(factor) && !loads.containsKey(key)) {
+                load(key, loader, cached);
+            }
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (isNotFound(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return load(key, loader, null);
+    }
+
+    /**
+     * Reload objects in the background once they passed the fraction of their lifetime, while the old object is
+     * still returned. Only objects with an expire date that are read through {@link #getOrLoad(String, Function)}
+     * are refreshed.
+     *
+     * @param refreshAheadFactor the fraction of the lifetime between 0 and 1, 0 disables the refresh
+     */
+    public void setRefreshAhead(double refreshAheadFactor) {
+        if (refreshAheadFactor < 0 || refreshAheadFactor >= 1) {
+            throw new IllegalArgumentException("The refresh ahead factor must be between 0 and 1");
+        }
+        this.refreshAheadFactor = refreshAheadFactor;
+    }
+
+    public double getRefreshAhead() {
+        return refreshAheadFactor;
+    }
+
+    /**
+     * Remember for the given time that a load found nothing, 0 disables it. Keep it short, an object that is added
+     * to the cache in the meantime is returned right away.
+     *
+     * @param duration
+     * @param unit
+     */
+    public void setNotFoundTtl(long duration, TimeUnit unit) {
+        this.notFoundTtlMillis = Math.max(0, unit.toMillis(duration));
+        if (notFoundTtlMillis == 0) {
+            notFound.clear();
+        }
+    }
+
+    public long getNotFoundTtlMillis() {
+        return notFoundTtlMillis;
+    }
+
+    /**
+     * Add caching object, a valid object that is already stored under the key will not be replaced
      *
      * @param key
      * @param object
      */
     public void addCachingObject(String key, CachingObject object) {
-        if (cachingMap.get(key) != null) {
-            if (cachingMap.get(key).isValid()) {
-                return;
+        if (putIfAbsent(key, object) != null) {
+            return;
+        }
+        if (object.isPersistent()) {
+            writeBehindQueue.enqueueSave(key, object);
+        }
+    }
+
+    /**
+     * Store the object if there is no valid object stored under the key.
+     * The check and the store happen as one atomic operation.
+     *
+     * @param key
+     * @param object
+     * @return the valid object that was already stored, or null if the given object is stored
+     */
+    public CachingObject putIfAbsent(String key, CachingObject object) {
+        promoteIfDemoted(key);
+        return storeIfAbsent(key, object);
+    }
+
+    private CachingObject storeIfAbsent(String key, CachingObject object) {
+        CachingObject stored = toStored(key, object);
+        CachingObject[] existing = new CachingObject[2];
+        cachingMap.compute(key, (k, current) -> {
+            if (current != null && current.isValid()) {
+                existing[0] = current;
+                return current;
+            }
+            existing[1] = current;
+            return withNewVersion(stored);
+        });
+        if (existing[0] == null) {
+            onStored(key, existing[1], stored, object);
+            return null;
+        }
+        release(stored);
+        return decode(key, existing[0]);
+    }
+
+    /**
+     * Get the valid object stored under the key, or create and store one with the mapping function.
+     * The function is called at most once per key while other writers of that key wait.
+     *
+     * @param key
+     * @param mappingFunction function that creates the object, may return null to store nothing
+     * @return the stored object or null if the function returned null
+     */
+    public CachingObject computeIfAbsent(String key, Function<String, ? extends CachingObject> mappingFunction) {
+        promoteIfDemoted(key);
+        CachingObject[] replaced = new CachingObject[1];
+        CachingObject[] created = new CachingObject[1];
+        boolean[] called = new boolean[1];
+        CachingObject result = cachingMap.compute(key, (k, current) -> {
+            if (current != null && current.isValid()) {
+                return current;
+            }
+            called[0] = true;
+            replaced[0] = current;
+            created[0] = mappingFunction.apply(k);
+            return created[0] == null ? null : withNewVersion(toStored(k, created[0]));
+        });
+        if (!called[0]) {
+            return decode(key, result);
+        }
+        if (result != null) {
+            onStored(key, replaced[0], result, created[0]);
+            if (created[0].isPersistent()) {
+                writeBehindQueue.enqueueSave(key, created[0]);
+            }
+        } else if (replaced[0] != null) {
+            onRemoved(key, replaced[0]);
+        }
+        return created[0];
+    }
+
+    /**
+     * Replace the object stored under the key, only if there is an object stored
+     *
+     * @param key
+     * @param object
+     * @return the previous object or null if nothing was replaced
+     */
+    public CachingObject replace(String key, CachingObject object) {
+        promoteIfDemoted(key);
+        CachingObject stored = toStored(key, object);
+        CachingObject[] replaced = new CachingObject[1];
+        cachingMap.computeIfPresent(key, (k, current) -> {
+            replaced[0] = current;
+            return withNewVersion(stored);
+        });
+        CachingObject previous = replaced[0];
+        if (previous == null) {
+            release(stored);
+            return null;
+        }
+        CachingObject decoded = decode(key, previous);
+        onStored(key, previous, stored, object);
+        if (object.isPersistent()) {
+            writeBehindQueue.enqueueSave(key, object);
+        }
+        return decoded;
+    }
+
+    /**
+     * Replace the object stored under the key, only if it is still the expected object
+     *
+     * @param key
+     * @param expected
+     * @param object
+     * @return true if the object is replaced
+     */
+    public boolean replace(String key, CachingObject expected, CachingObject object) {
+        promoteIfDemoted(key);
+        CachingObject stored = toStored(key, object);
+        CachingObject[] previous = new CachingObject[1];
+        cachingMap.computeIfPresent(key, (k, current) -> {
+            boolean same = current.equals(expected)
+                    || (current instanceof OffHeapEntry && ((OffHeapEntry) current).isCopy(expected));
+            if (!same) {
+                return current;
             }
+            previous[0] = current;
+            return withNewVersion(stored);
+        });
+        if (previous[0] == null) {
+            release(stored);
+            return false;
         }
-        cachingMap.put(key, object);
+        onStored(key, previous[0], stored, object);
         if (object.isPersistent()) {
-            object.saveToDisk();
+            writeBehindQueue.enqueueSave(key, object);
         }
+        return true;
     }
 
-    public CachingFileSystem getCachingFileSystem() {
-        return cachingFileSystem;
+    /**
+     * Store the object only if the stored object still has the expected version, so an update based on an object
+     * read with {@link #getVersioned(String)} is never lost. The check and the store only lock the key, retry with a
+     * fresh read when it returns false.
+     * <pre>
+     * VersionedObject current;
+     * do {
+     *     current = cachingManager.getVersioned(key);
+     * } while (!cachingManager.compareAndSet(key, current.getVersion(), withPoints(current.getObject(), 10)));
+     * </pre>
+     *
+     * The object must be a new one, the object returned by {@link #getVersioned(String)} is the stored object itself
+     * and other threads see a change to it before the check.
+     *
+     * @param key
+     * @param expectedVersion the version of the stored object, or 0 to only store when no valid object is stored
+     * @param object
+     * @return true if the object is stored
+     * @throws IllegalArgumentException if the object is the stored object
+     */
+    public boolean compareAndSet(String key, long expectedVersion, CachingObject object) {
+        promoteOrLoad(key);
+        if (cachingMap.get(key) == object) {
+            throw new IllegalArgumentException("Pass a new object, the object " + key + " is already stored");
+        }
+        CachingObject stored = toStored(key, object);
+        CachingObject[] previous = new CachingObject[1];
+        boolean[] set = new boolean[1];
+        cachingMap.compute(key, (k, current) -> {
+            long version = current != null && current.isValid() ? current.getVersion() : 0;
+            if (version != expectedVersion) {
+                return current;
+            }
+            previous[0] = current;
+            set[0] = true;
+            return withNewVersion(stored);
+        });
+        if (!set[0]) {
+            release(stored);
+            return false;
+        }
+        onStored(key, previous[0], stored, object);
+        if (object.isPersistent()) {
+            writeBehindQueue.enqueueSave(key, object);
+        }
+        return true;
+    }
+
+    /**
+     * Store the value, or the result of the function of the stored object and the value when a valid object is
+     * stored, like {@link ConcurrentHashMap#merge(Object, Object, BiFunction)}. The function runs while the key is
+     * locked, so concurrent merges of a key never lose an update while other keys are not blocked. Keep it short,
+     * and return a new object instead of changing the stored one.
+     * <pre>
+     * cachingManager.merge("clan-points:" + clan, new ClanPoints(clan, 10),
+     *         (current, added) -&gt; ((ClanPoints) current).plus((ClanPoints) added));
+     * </pre>
+     *
+     * @param key
+     * @param value the object to store or merge
+     * @param remappingFunction returns the merged object, or null to remove the stored object
+     * @return the stored object, or null if it is removed
+     */
+    public CachingObject merge(String key, CachingObject value,
+                               BiFunction<? super CachingObject, ? super CachingObject, ? extends CachingObject>
+                                       remappingFunction) {
+        if (value == null) {
+            throw new NullPointerException("The value is null");
+        }
+        promoteOrLoad(key);
+        CachingObject[] previous = new CachingObject[1];
+        CachingObject[] merged = new CachingObject[1];
+        CachingObject result = cachingMap.compute(key, (k, current) -> {
+            previous[0] = current;
+            CachingObject currentValue = current != null && current.isValid() ? decode(k, current) : null;
+            merged[0] = currentValue == null ? value : remappingFunction.apply(currentValue, value);
+            return merged[0] == null ? null : withNewVersion(toStored(k, merged[0]));
+        });
+        if (result != null) {
+            onStored(key, previous[0], result, merged[0]);
+            if (merged[0].isPersistent()) {
+                writeBehindQueue.enqueueSave(key, merged[0]);
+            }
+        } else if (previous[0] != null) {
+            onRemoved(key, previous[0]);
+            stats.recordRemoval(RemovalCause.EXPLICIT);
+            if (previous[0].isPersistent()) {
+                writeBehindQueue.enqueueRemove(previous[0]);
+            }
+        }
+        return merged[0];
+    }
+
+    /**
+     * Remove the object stored under the key from the cache and the file system
+     *
+     * @param key
+     * @return the removed object or null if there was nothing stored
+     */
+    public CachingObject removeCachingObject(String key) {
+        promoteIfDemoted(key);
+        CachingObject removed = cachingMap.remove(key);
+        if (removed == null) {
+            return null;
+        }
+        CachingObject decoded = decode(key, removed);
+        onRemoved(key, removed);
+        stats.recordRemoval(RemovalCause.EXPLICIT);
+        if (removed.isPersistent()) {
+            writeBehindQueue.enqueueRemove(removed);
+        }
+        return decoded;
+    }
+
+    /**
+     * Get the valid objects of all keys. Objects that are not in memory are loaded from a lazy file system with one
+     * {@link CachingFileSystem#loadAll(Collection)}, instead of one load per key.
+     *
+     * @param keys
+     * @return the found objects by their key, keys without a valid object are left out
+     */
+    public Map<String, CachingObject> getAll(Collection<String> keys) {
+        Map<String, CachingObject> found = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            CachingObject object = lookup(key, false, false);
+            if (object != null) {
+                found.put(key, object);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty() && cachingFileSystem.isLazy()) {
+            Map<String, CachingObject> loaded = new LinkedHashMap<>();
+            List<String> onDisk = new ArrayList<>();
+            for (String key : missing) {
+                if (writeBehindQueue.isPending(key)) {
+                    CachingObject pendingSave = writeBehindQueue.getPendingSave(key);
+                    if (pendingSave != null) {
+                        loaded.put(key, pendingSave);
+                    }
+                } else {
+                    onDisk.add(key);
+                }
+            }
+            if (!onDisk.isEmpty()) {
+                CompletableFuture<Map<String, CachingObject>> load = cachingFileSystem.loadAll(onDisk);
+                if (load.isDone()) {
+                    loaded.putAll(load.join());
+                } else {
+                    // Loaded over the network, these keys miss now and are stored when they arrive
+                    load.thenAccept(objects -> objects.forEach(this::storeLazy));
+                }
+            }
+            for (Map.Entry<String, CachingObject> entry : loaded.entrySet()) {
+                CachingObject stored = storeLazy(entry.getKey(), entry.getValue());
+                if (stored == null) {
+                    continue;
+                }
+                found.put(entry.getKey(), stored);
+                if (bounded) {
+                    recordAccess(entry.getKey());
+                }
+            }
+        }
+        HotKeyRecorder recorder = hotKeyRecorder;
+        for (String key : keys) {
+            if (recorder != null) {
+                recorder.record(key);
+            }
+            if (found.containsKey(key)) {
+                stats.recordHit();
+            } else {
+                stats.recordMiss();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Store all objects, objects that are already stored under the keys are replaced. The persistent objects are
+     * queued together, so the {@link WriteBehindQueue} saves them in one batch.
+     *
+     * @param objects the objects by their key
+     */
+    public void putAll(Map<String, ? extends CachingObject> objects) {
+        Map<String, CachingObject> persistent = new LinkedHashMap<>();
+        objects.forEach((key, object) -> {
+            CachingObject stored = withNewVersion(toStored(key, object));
+            CachingObject previous = cachingMap.put(key, stored);
+            onStored(key, previous, stored, object);
+            if (object.isPersistent()) {
+                persistent.put(key, object);
+            }
+        });
+        if (!persistent.isEmpty()) {
+            writeBehindQueue.enqueueSaveAll(persistent);
+        }
+    }
+
+    /**
+     * Remove the objects stored under the keys from the cache and the file system. The removes of the persistent
+     * objects are queued together, so the {@link WriteBehindQueue} removes them in one batch.
+     *
+     * @param keys
+     * @return the amount of removed objects
+     */
+    public int invalidateAll(Collection<String> keys) {
+        List<CachingObject> persistent = new ArrayList<>();
+        int removedCount = 0;
+        for (String key : keys) {
+            promoteIfDemoted(key);
+            CachingObject removed = cachingMap.remove(key);
+            if (removed == null) {
+                continue;
+            }
+            onRemoved(key, removed);
+            stats.recordRemoval(RemovalCause.EXPLICIT);
+            removedCount++;
+            if (removed.isPersistent()) {
+                persistent.add(removed);
+            }
+        }
+        if (!persistent.isEmpty()) {
+            writeBehindQueue.enqueueRemoveAll(persistent);
+        }
+        return removedCount;
+    }
+
+    /**
+     * Keep large objects off the heap in the store, they are serialized when they are stored and decoded every time
+     * they are read. Only objects that are stored after this call are moved. Use it for large objects that are not
+     * read on every tick, like serialized inventories.
+     *
+     * @param offHeapStore the store, or null to keep new objects on the heap
+     */
+    public void setOffHeapStore(OffHeapStore offHeapStore) {
+        this.offHeapStore = offHeapStore;
+    }
+
+    public OffHeapStore getOffHeapStore() {
+        return offHeapStore;
+    }
+
+    /**
+     * Demote the entries that are evicted from memory to the disk tier instead of dropping them, a read of a demoted
+     * entry promotes it back into memory. Only useful together with {@link #setMaximumSize(long)} or
+     * {@link #setMaximumWeight(long, Weigher)}. Set it before the cache fills up, the entries of a tier that is
+     * replaced are not promoted anymore.
+     *
+     * @param diskTier the tier, or null to drop evicted entries
+     */
+    public void setDiskTier(DiskTier diskTier) {
+        this.diskTier = diskTier;
+    }
+
+    public DiskTier getDiskTier() {
+        return diskTier;
+    }
+
+    /**
+     * Keep the entry in memory until it is unpinned, the eviction skips pinned entries. Expired entries are still
+     * removed. Pins are counted, every pin needs its own {@link #unpin(String)}.
+     *
+     * @param key
+     */
+    public void pin(String key) {
+        pins.merge(key, 1, Integer::sum);
+    }
+
+    /**
+     * Release one pin of the entry, once all pins are released it can be evicted again
+     *
+     * @param key
+     */
+    public void unpin(String key) {
+        pins.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    public boolean isPinned(String key) {
+        return pins.containsKey(key);
+    }
+
+    /**
+     * Get or create the region with the name. A region holds values of one type with its own expiry, size bound and
+     * file system, see {@link CacheRegion}.
+     *
+     * @param name
+     * @param type the type of the values
+     * @return the region
+     * @throws IllegalArgumentException if the region already exists with another type
+     */
+    @SuppressWarnings("unchecked")
+    public <V> CacheRegion<V> region(String name, Class<V> type) {
+        CacheRegion<?> region = regions.computeIfAbsent(name, n -> new CacheRegion<>(n, type));
+        if (region.getType() != type) {
+            throw new IllegalArgumentException("The region " + name + " holds " + region.getType().getName()
+                    + " values, not " + type.getName());
+        }
+        return (CacheRegion<V>) region;
+    }
+
+    /**
+     * Returns all regions that are created
+     *
+     * @return
+     */
+    public Collection<CacheRegion<?>> getRegions() {
+        return regions.values();
+    }
+
+    /**
+     * Index the objects of the type by the value the extractor returns, see {@link CacheIndex}. The objects that are
+     * already stored are indexed before this returns, objects for which the extractor returns null are not indexed.
+     *
+     * @param name
+     * @param type the type of the indexed objects, other objects are skipped
+     * @param extractor returns the indexed value of an object, it must not change while the object is stored
+     * @return the index
+     * @throws IllegalArgumentException if an index with the name already exists
+     */
+    public <T extends CachingObject, K> CacheIndex<T, K> addIndex(String name, Class<T> type,
+                                                                  Function<? super T, ? extends K> extractor) {
+        CacheIndex<T, K> index = new CacheIndex<>(name, type, extractor, this);
+        if (indexes.putIfAbsent(name, index) != null) {
+            throw new IllegalArgumentException("The index " + name + " already exists");
+        }
+        // Writes from now on update the index themselves, the index skips the objects they replace
+        for (Map.Entry<String, CachingObject> entry : cachingMap.entrySet()) {
+            CachingObject object = decode(entry.getKey(), entry.getValue());
+            if (object != null) {
+                index.update(entry.getKey(), entry.getValue(), object);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index with the name
+     *
+     * @param name
+     * @return the index or null if it doesn't exist
+     */
+    public CacheIndex<?, ?> getIndex(String name) {
+        return indexes.get(name);
+    }
+
+    /**
+     * Stop maintaining the index with the name
+     *
+     * @param name
+     */
+    public void removeIndex(String name) {
+        indexes.remove(name);
+    }
+
+    /**
+     * Returns the object stored under the key for an index lookup, without counting a hit or a miss
+     */
+    CachingObject getIndexed(String key) {
+        return lookup(key, false, false);
+    }
+
+    /**
+     * Returns true when the object is the one stored under the key, or with a null object when anything is stored
+     */
+    boolean isStored(String key, CachingObject object) {
+        CachingObject current = cachingMap.get(key);
+        return object == null ? current != null : current == object;
+    }
+
+    /**
+     * Set the maximum amount of entries that are kept in memory, 0 disables the bound
+     *
+     * @param maximumSize
+     */
+    public void setMaximumSize(long maximumSize) {
+        evictionLock.lock();
+        try {
+            this.maximumSize = Math.max(0, maximumSize);
+            evictionPolicy.setCapacity(getEffectiveMaximumSize());
+            updateBounded();
+        } finally {
+            evictionLock.unlock();
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Set the maximum total weight of the entries that are kept in memory, 0 disables the bound
+     *
+     * @param maximumWeight
+     * @param weigher calculates the weight of a single entry
+     */
+    public void setMaximumWeight(long maximumWeight, Weigher weigher) {
+        evictionLock.lock();
+        try {
+            this.maximumWeight = Math.max(0, maximumWeight);
+            this.weigher = this.maximumWeight > 0 ? weigher : null;
+            updateBounded();
+        } finally {
+            evictionLock.unlock();
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Set the policy that decides which entry is evicted, the default is {@link TinyLfuEvictionPolicy}
+     *
+     * @param evictionPolicy
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        evictionLock.lock();
+        try {
+            this.evictionPolicy.clear();
+            this.evictionPolicy = evictionPolicy;
+            evictionPolicy.setCapacity(getEffectiveMaximumSize());
+            if (bounded) {
+                cachingMap.keySet().forEach(evictionPolicy::onInsert);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Returns the maximum size that is used right now, smaller than the maximum size while the heap is under pressure
+     *
+     * @return
+     */
+    public long getEffectiveMaximumSize() {
+        return maximumSize > 0 ? Math.max(1, (long) (maximumSize * capacityFactor)) : 0;
+    }
+
+    /**
+     * Returns the maximum weight that is used right now, smaller than the maximum weight while the heap is under
+     * pressure
+     *
+     * @return
+     */
+    public long getEffectiveMaximumWeight() {
+        return maximumWeight > 0 ? Math.max(1, (long) (maximumWeight * capacityFactor)) : 0;
+    }
+
+    /**
+     * Shrink the bounds of the cache when the heap fills up and grow them back when it has room again, see
+     * {@link HeapPressureMonitor}. Only a cache with a maximum size or weight is resized.
+     *
+     * @param highWatermark the fraction of the old generation above which the cache shrinks, like 0.85
+     * @param lowWatermark the fraction of the old generation below which the cache grows back, like 0.6
+     * @return the monitor
+     */
+    public synchronized HeapPressureMonitor enableHeapPressureEviction(double highWatermark, double lowWatermark) {
+        if (heapPressureMonitor != null) {
+            heapPressureMonitor.stop();
+        }
+        heapPressureMonitor = new HeapPressureMonitor(this, highWatermark, lowWatermark);
+        heapPressureMonitor.start();
+        return heapPressureMonitor;
+    }
+
+    /**
+     * Stop resizing the cache for the heap usage and restore the configured bounds
+     */
+    public synchronized void disableHeapPressureEviction() {
+        if (heapPressureMonitor != null) {
+            heapPressureMonitor.stop();
+            heapPressureMonitor = null;
+            setCapacityFactor(1);
+        }
+    }
+
+    public HeapPressureMonitor getHeapPressureMonitor() {
+        return heapPressureMonitor;
+    }
+
+    /**
+     * Sample the keys that are read and write the hottest of them to the file, so {@link #warmUp(File)} can load them
+     * on the next start. See {@link HotKeyRecorder}.
+     *
+     * @param file
+     * @return the recorder
+     */
+    public HotKeyRecorder enableHotKeyRecording(File file) {
+        return enableHotKeyRecording(new HotKeyRecorder(file));
+    }
+
+    /**
+     * Sample the keys that are read with the recorder, a recorder that was enabled before is stopped
+     *
+     * @param recorder
+     * @return the recorder
+     */
+    public synchronized HotKeyRecorder enableHotKeyRecording(HotKeyRecorder recorder) {
+        if (hotKeyRecorder != null) {
+            hotKeyRecorder.stop();
+        }
+        recorder.start();
+        hotKeyRecorder = recorder;
+        return recorder;
+    }
+
+    /**
+     * Stop sampling the keys, the hot keys are written one last time
+     */
+    public synchronized void disableHotKeyRecording() {
+        if (hotKeyRecorder != null) {
+            hotKeyRecorder.stop();
+            hotKeyRecorder = null;
+        }
+    }
+
+    public HotKeyRecorder getHotKeyRecorder() {
+        return hotKeyRecorder;
+    }
+
+    /**
+     * Load the keys that a {@link HotKeyRecorder} wrote to the file in the background, hottest first, see
+     * {@link #warmUp(List)}. Nothing is loaded when the file doesn't exist.
+     *
+     * @param file
+     * @return a future that completes with the amount of loaded objects
+     */
+    public CompletableFuture<Integer> warmUp(File file) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> warmUp(HotKeyRecorder.read(file), 0, 0, result)).exceptionally(throwable -> {
+            result.completeExceptionally(throwable);
+            return null;
+        });
+        return result;
+    }
+
+    /**
+     * Load the objects of the keys from the file system in the background, in batches of 256 keys in the order of the
+     * list, so the hottest keys are in memory first. Keys that are in memory already are skipped and an object that
+     * is stored in the meantime is never replaced. The warm-up stops when the cache reaches its maximum size, so it
+     * never evicts the hotter keys it loaded first.
+     * <p>
+     * Meant for a lazy file system like {@link nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType},
+     * the others load every object when the manager starts.
+     *
+     * @param keys the keys, hottest first
+     * @return a future that completes with the amount of loaded objects
+     */
+    public CompletableFuture<Integer> warmUp(List<String> keys) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> warmUp(keys, 0, 0, result)).exceptionally(throwable -> {
+            result.completeExceptionally(throwable);
+            return null;
+        });
+        return result;
+    }
+
+    private void warmUp(List<String> keys, int start, int loaded, CompletableFuture<Integer> result) {
+        if (start >= keys.size() || isFull()) {
+            result.complete(loaded);
+            return;
+        }
+        int end = Math.min(keys.size(), start + WARM_UP_BATCH);
+        List<String> batch = new ArrayList<>(end - start);
+        for (String key : keys.subList(start, end)) {
+            if (!cachingMap.containsKey(key)) {
+                batch.add(key);
+            }
+        }
+        cachingFileSystem.loadAll(batch).whenComplete((found, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            int count = loaded;
+            for (String key : batch) {
+                CachingObject object = found.get(key);
+                if (object != null && object.isValid() && !isFull() && putIfAbsent(key, object) == null) {
+                    count++;
+                }
+            }
+            warmUp(keys, end, count, result);
+        });
+    }
+
+    private boolean isFull() {
+        long sizeBound = getEffectiveMaximumSize();
+        return sizeBound > 0 && cachingMap.size() >= sizeBound;
+    }
+
+    /**
+     * Scale the maximum size and weight, called by the {@link HeapPressureMonitor}
+     *
+     * @param capacityFactor the fraction of the configured bounds, between 0 and 1
+     */
+    void setCapacityFactor(double capacityFactor) {
+        evictionLock.lock();
+        try {
+            this.capacityFactor = capacityFactor;
+            evictionPolicy.setCapacity(getEffectiveMaximumSize());
+        } finally {
+            evictionLock.unlock();
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Returns the total weight of the stored entries, only tracked when a maximum weight is set
+     *
+     * @return
+     */
+    public long getTotalWeight() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void updateBounded() {
+        boolean wasBounded = bounded;
+        bounded = maximumSize > 0 || maximumWeight > 0;
+        totalWeight = 0;
+        if (weigher != null) {
+            cachingMap.forEach((key, object) -> totalWeight += weigher.weigh(key, object));
+        }
+        if (bounded && !wasBounded) {
+            cachingMap.keySet().forEach(evictionPolicy::onInsert);
+        } else if (!bounded && wasBounded) {
+            evictionPolicy.clear();
+        }
+    }
+
+    /**
+     * Reads only record the access when the lock is free, under contention the access is dropped instead of
+     * blocking the reading thread. The policy only needs an approximation of the access pattern.
+     */
+    private void recordAccess(String key) {
+        if (evictionLock.tryLock()) {
+            try {
+                evictionPolicy.onAccess(key);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Start a load of the key, or join the load that is already running. When previous is set this is a refresh of
+     * that object, otherwise a miss.
+     */
+    private CompletableFuture<CachingObject> load(String key,
+                                                  Function<String, CompletableFuture<? extends CachingObject>> loader,
+                                                  CachingObject previous) {
+        CompletableFuture<CachingObject> load = new CompletableFuture<>();
+        CompletableFuture<CachingObject> running = loads.putIfAbsent(key, load);
+        if (running != null) {
+            return running;
+        }
+        if (previous == null) {
+            // Another load may have finished between the first lookup and claiming the key
+            CachingObject cached = lookup(key, false);
+            if (cached != null) {
+                loads.remove(key, load);
+                load.complete(cached);
+                return load;
+            }
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<? extends CachingObject> loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (RuntimeException e) {
+            stats.recordLoadFailure(System.nanoTime() - start);
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+            return load;
+        }
+        loaded.whenComplete((object, throwable) -> {
+            long loadTime = System.nanoTime() - start;
+            if (throwable != null || object == null) {
+                stats.recordLoadFailure(loadTime);
+            } else {
+                stats.recordLoadSuccess(loadTime);
+            }
+            try {
+                if (throwable != null) {
+                    load.completeExceptionally(throwable);
+                } else {
+                    load.complete(storeLoaded(key, previous, object));
+                }
+            } catch (RuntimeException e) {
+                load.completeExceptionally(e);
+            } finally {
+                loads.remove(key, load);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Store the result of a load
+     *
+     * @return the object that is stored under the key now
+     */
+    private CachingObject storeLoaded(String key, CachingObject previous, CachingObject object) {
+        if (object == null) {
+            long ttl = notFoundTtlMillis;
+            if (ttl > 0) {
+                long expireAt = CacheClock.currentTimeMillis() + ttl;
+                notFound.put(key, expireAt);
+                expiryService.schedule(key, expireAt);
+            }
+            // A refresh that found nothing keeps the old object until it expires
+            return previous;
+        }
+        if (previous != null && replace(key, previous, object)) {
+            return object;
+        }
+        CachingObject existing = putIfAbsent(key, object);
+        if (existing != null) {
+            return existing;
+        }
+        if (object.isPersistent()) {
+            writeBehindQueue.enqueueSave(key, object);
+        }
+        return object;
+    }
+
+    private boolean isNotFound(String key) {
+        Long expireAt = notFound.get(key);
+        if (expireAt == null) {
+            return false;
+        }
+        if (CacheClock.currentTimeMillis() <= expireAt) {
+            return true;
+        }
+        notFound.remove(key, expireAt);
+        return false;
+    }
+
+    /**
+     * Returns the object to put in the map, moved off the heap when an off-heap store is set and the object is large
+     * enough. It gets its version from {@link #withNewVersion(CachingObject)} once it is sure to be stored, so a
+     * write that loses never changes the version of the object that stays.
+     */
+    private CachingObject toStored(String key, CachingObject object) {
+        OffHeapStore store = offHeapStore;
+        CachingObject stored = object;
+        if (store != null && !(object instanceof OffHeapEntry)) {
+            OffHeapEntry entry = store.store(key, object);
+            if (entry != null) {
+                stored = entry;
+            }
+        }
+        return stored;
+    }
+
+    private CachingObject withNewVersion(CachingObject stored) {
+        stored.setVersion(versions.incrementAndGet());
+        return stored;
+    }
+
+    /**
+     * Returns the object itself, or the decoded object when it is stored off the heap. When the handle is released
+     * by a concurrent write the current object of the key is returned.
+     */
+    private CachingObject decode(String key, CachingObject stored) {
+        while (stored instanceof OffHeapEntry) {
+            CachingObject decoded = ((OffHeapEntry) stored).decode();
+            if (decoded != null) {
+                return decoded;
+            }
+            CachingObject current = cachingMap.get(key);
+            if (current == stored) {
+                return null;
+            }
+            stored = current;
+        }
+        return stored;
+    }
+
+    private void release(CachingObject stored) {
+        if (stored instanceof OffHeapEntry) {
+            OffHeapEntry entry = (OffHeapEntry) stored;
+            entry.getStore().release(entry);
+        }
+    }
+
+    /**
+     * Move the entry from the disk tier back into memory, unless another thread stored one first
+     */
+    private CachingObject promote(String key) {
+        DiskTier tier = diskTier;
+        CachingObject demoted = tier == null ? null : tier.get(key);
+        if (demoted == null) {
+            return null;
+        }
+        // Storing the entry removes it from the tier
+        CachingObject existing = storeIfAbsent(key, demoted);
+        return existing != null ? existing : demoted;
+    }
+
+    /**
+     * Writes that only act on a stored entry must see a demoted entry too
+     */
+    private void promoteIfDemoted(String key) {
+        DiskTier tier = diskTier;
+        if (tier != null && !cachingMap.containsKey(key) && tier.contains(key)) {
+            promote(key);
+        }
+    }
+
+    /**
+     * Writes that build on the stored object must see an object that is demoted or not loaded from a lazy file system
+     */
+    private void promoteOrLoad(String key) {
+        promoteIfDemoted(key);
+        if (!cachingMap.containsKey(key) && cachingFileSystem.isLazy()) {
+            // Also waits for a file system that loads over the network, the write must not replace the saved object
+            loadLazyAsync(key).join();
+        }
+    }
+
+    /**
+     * Load the object from a lazy file system and store it, a load that is not finished right away is a miss and the
+     * object is stored when it arrives
+     */
+    private CachingObject loadLazy(String key) {
+        return loadLazyAsync(key).getNow(null);
+    }
+
+    /**
+     * Load the object from a lazy file system and store it, unless another thread stored one first. Concurrent loads
+     * of the same key share one load. The loaded object is not saved again, so a server that shares the file system
+     * never writes back an object another server changed in the meantime.
+     */
+    private CompletableFuture<CachingObject> loadLazyAsync(String key) {
+        if (writeBehindQueue.isPending(key)) {
+            return CompletableFuture.completedFuture(storeLazy(key, writeBehindQueue.getPendingSave(key)));
+        }
+        CompletableFuture<CachingObject> load = new CompletableFuture<>();
+        CompletableFuture<CachingObject> running = lazyLoads.putIfAbsent(key, load);
+        if (running != null) {
+            return running;
+        }
+        CompletableFuture<CachingObject> loaded;
+        try {
+            loaded = cachingFileSystem.load(key);
+        } catch (RuntimeException e) {
+            lazyLoads.remove(key, load);
+            throw e;
+        }
+        loaded.whenComplete((object, throwable) -> {
+            lazyLoads.remove(key, load);
+            if (throwable != null) {
+                CoreLogger.warning("Could not load " + key + " from the file system", throwable);
+                load.completeExceptionally(throwable);
+                return;
+            }
+            try {
+                load.complete(storeLazy(key, object));
+            } catch (RuntimeException e) {
+                load.completeExceptionally(e);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Store an object that was loaded from a lazy file system. When a write of the key is not flushed yet the file
+     * system still holds the old value, then a pending save is stored instead and a pending remove is a miss.
+     *
+     * @return the object that is stored under the key now, or null if the loaded object is not valid
+     */
+    private CachingObject storeLazy(String key, CachingObject loaded) {
+        if (writeBehindQueue.isPending(key)) {
+            loaded = writeBehindQueue.getPendingSave(key);
+        }
+        if (loaded == null || !loaded.isValid()) {
+            return null;
+        }
+        CachingObject existing = putIfAbsent(key, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    /**
+     * Remove the object stored under the key if it is expired, called by the {@link ExpiryService}
+     *
+     * @param key
+     * @return the removed object, or null if the stored object is replaced by a valid one
+     */
+    private CachingObject expire(String key) {
+        DiskTier tier = diskTier;
+        if (tier != null) {
+            tier.expire(key);
+        }
+        Long notFoundUntil = notFound.get(key);
+        if (notFoundUntil != null && CacheClock.currentTimeMillis() > notFoundUntil) {
+            notFound.remove(key, notFoundUntil);
+        }
+        CachingObject object = cachingMap.get(key);
+        if (object == null) {
+            return null;
+        }
+        if (object.isValid()) {
+            // An object with a time to idle that was used since the check was scheduled gets a later check
+            scheduleExpiry(key, object);
+            return null;
+        }
+        if (!cachingMap.remove(key, object)) {
+            return null;
+        }
+        onRemoved(key, object);
+        stats.recordRemoval(RemovalCause.EXPIRED);
+        return object;
+    }
+
+    private void onStored(String key, CachingObject previous, CachingObject object, CachingObject value) {
+        DiskTier tier = diskTier;
+        if (tier != null) {
+            tier.invalidate(key);
+        }
+        if (previous != null) {
+            release(previous);
+        }
+        if (!indexes.isEmpty()) {
+            for (CacheIndex<?, ?> index : indexes.values()) {
+                index.update(key, object, value);
+            }
+        }
+        if (!notFound.isEmpty()) {
+            notFound.remove(key);
+        }
+        object.touch(CacheClock.currentTimeMillis());
+        scheduleExpiry(key, object);
+        if (!bounded) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            if (weigher != null) {
+                totalWeight += weigher.weigh(key, object);
+                if (previous != null) {
+                    totalWeight -= weigher.weigh(key, previous);
+                }
+            }
+            if (previous == null) {
+                evictionPolicy.onInsert(key);
+            } else {
+                evictionPolicy.onAccess(key);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        evictIfNeeded();
+    }
+
+    private void scheduleExpiry(String key, CachingObject object) {
+        long deadline = object.getDeadline();
+        if (deadline >= 0 && object.scheduleExpiryCheck(deadline)) {
+            expiryService.schedule(key, deadline);
+        }
+    }
+
+    private void onRemoved(String key, CachingObject removed) {
+        release(removed);
+        DiskTier tier = diskTier;
+        if (tier != null) {
+            tier.invalidate(key);
+        }
+        removeFromIndexes(key);
+        if (!bounded) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            if (weigher != null) {
+                totalWeight -= weigher.weigh(key, removed);
+            }
+            evictionPolicy.onRemove(key);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void removeFromIndexes(String key) {
+        if (!indexes.isEmpty()) {
+            for (CacheIndex<?, ?> index : indexes.values()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private void evictIfNeeded() {
+        if (!bounded) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            int skipped = 0;
+            long sizeBound = getEffectiveMaximumSize();
+            long weightBound = getEffectiveMaximumWeight();
+            while ((sizeBound > 0 && cachingMap.size() > sizeBound)
+                    || (weightBound > 0 && totalWeight > weightBound)) {
+                String victim = evictionPolicy.victim();
+                if (victim == null) {
+                    return;
+                }
+                if (!pins.isEmpty() && pins.containsKey(victim)) {
+                    // Let the policy offer another victim, the bound is exceeded while only pinned entries are left
+                    evictionPolicy.onAccess(victim);
+                    if (++skipped > pins.size()) {
+                        return;
+                    }
+                    continue;
+                }
+                evictionPolicy.onRemove(victim);
+                CachingObject evicted = cachingMap.remove(victim);
+                if (evicted != null) {
+                    DiskTier tier = diskTier;
+                    CachingObject demoted = tier == null ? null : decode(victim, evicted);
+                    if (demoted != null) {
+                        tier.demote(victim, demoted);
+                    }
+                    release(evicted);
+                    removeFromIndexes(victim);
+                    stats.recordRemoval(RemovalCause.SIZE);
+                    if (weigher != null) {
+                        totalWeight -= weigher.weigh(victim, evicted);
+                    }
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a view of the keys that are stored in memory, expired objects that are not cleaned up yet are included
+     *
+     * @return
+     */
+    public Set<String> getKeys() {
+        return cachingMap.keySet();
+    }
+
+    /**
+     * Returns the hit, miss, load and removal counters of the manager, regions have their own
+     * {@link CacheRegion#getStats()}
+     *
+     * @return
+     */
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Estimate the heap used by the entries of the manager, regions are not included. The estimate is based on a
+     * sample of the entries, see {@link MemoryEstimator}.
+     *
+     * @return the estimated bytes
+     */
+    public long estimateMemory() {
+        return MemoryEstimator.estimate(cachingMap);
+    }
+
+    /**
+     * Returns the amount of objects that are stored in memory
+     *
+     * @return
+     */
+    public int size() {
+        return cachingMap.size();
+    }
+
+    public CachingFileSystem getCachingFileSystem() {
+        return cachingFileSystem;
+    }
+
+    public ExpiryService getExpiryService() {
+        return expiryService;
+    }
+
+    public WriteBehindQueue getWriteBehindQueue() {
+        return writeBehindQueue;
+    }
+
+    /**
+     * Write all pending changes to disk and wait until they are written
+     */
+    public void flush() {
+        writeBehindQueue.flush();
+        regions.values().forEach(CacheRegion::flush);
+    }
+
+    /**
+     * Flush the pending changes and stop the background threads of the manager, call this when the plugin is disabled
+     */
+    public void shutdown() {
+        if (heapPressureMonitor != null) {
+            heapPressureMonitor.stop();
+        }
+        if (hotKeyRecorder != null) {
+            hotKeyRecorder.stop();
+        }
+        expiryService.shutdown();
+        writeBehindQueue.shutdown();
+        cachingFileSystem.close();
+        if (diskTier != null) {
+            diskTier.close();
+        }
+        regions.values().forEach(CacheRegion::shutdown);
     }
 
 }
@@ -1,10 +1,14 @@
 package nl.thedutchruben.mccore.global.caching;
 
 import nl.thedutchruben.mccore.Mccore;
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
 
 import java.util.Date;
 
 public abstract class CachingObject {
+    private transient volatile long lastAccess;
+    private transient volatile long expiryCheckAt;
+    private transient volatile long version;
 
     /**
      * Returns the key/identifier of the caching object
@@ -34,6 +38,28 @@ public abstract class CachingObject {
      */
     public abstract Date getExpireDate();
 
+    /**
+     * Returns the expire date in epoch millis, or -1 if the object never expires. Override it to return a stored
+     * long, so checking the expiry doesn't need a {@link Date}.
+     *
+     * @return
+     */
+    public long getExpireAt() {
+        Date expireDate = getExpireDate();
+        return expireDate == null ? -1 : expireDate.getTime();
+    }
+
+    /**
+     * Returns how many milliseconds the object stays valid after it was last read or stored by the
+     * {@link CachingManager}, or -1 if it doesn't expire when it is not used. The object expires on whichever comes
+     * first, this or the expire date. The last access is not saved, a loaded object starts as just accessed.
+     *
+     * @return
+     */
+    public long getTimeToIdleMillis() {
+        return -1;
+    }
+
     /**
      * Returns the data that was saved
      * 
@@ -41,25 +67,103 @@ public abstract class CachingObject {
      */
     public abstract Object getData();
 
+    /**
+     * Returns true if the object is not expired. This is only a check, expired objects are removed from memory
+     * and disk by the {@link nl.thedutchruben.mccore.global.caching.expiry.ExpiryService}
+     *
+     * @return
+     */
     public boolean isValid() {
-        if (getExpireDate() == null) {
-            return true;
+        long now = CacheClock.currentTimeMillis();
+        long expireAt = getExpireAt();
+        if (expireAt >= 0 && now > expireAt) {
+            return false;
         }
-        if (new Date().after(getExpireDate())) {
-            if(isPersistent()){
-                Mccore.getInstance().getCachingManager().getCachingFileSystem().remove(this);
-            }
+        long timeToIdle = getTimeToIdleMillis();
+        long accessed = lastAccess;
+        return timeToIdle < 0 || accessed == 0 || now - accessed <= timeToIdle;
+    }
+
+    /**
+     * Returns true if the object passed the given fraction of its lifetime, objects without an expire date are never
+     * due. Used by the {@link CachingManager} to reload an object before it expires.
+     *
+     * @param refreshAheadFactor the fraction of the lifetime, between 0 and 1
+     * @return
+     */
+    public boolean isRefreshDue(double refreshAheadFactor) {
+        long expireAt = getExpireAt();
+        Date createDate = getCreateDate();
+        if (expireAt < 0 || createDate == null) {
             return false;
         }
+        long created = createDate.getTime();
+        long refreshAt = created + (long) ((expireAt - created) * refreshAheadFactor);
+        return CacheClock.currentTimeMillis() >= refreshAt;
+    }
+
+    /**
+     * Returns the version the {@link CachingManager} gave the object when it was stored, or 0 if it is not stored.
+     * Every store gets a new version, see {@link CachingManager#compareAndSet(String, long, CachingObject)}.
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Mark the object as used, only writes when the clock moved since the last access
+     *
+     * @param now the time of the {@link CacheClock}
+     */
+    void touch(long now) {
+        if (lastAccess != now) {
+            lastAccess = now;
+        }
+    }
 
+    /**
+     * Returns the epoch millis on which the object expires if it is not used anymore, or -1 if it never expires
+     *
+     * @return
+     */
+    long getDeadline() {
+        long expireAt = getExpireAt();
+        long timeToIdle = getTimeToIdleMillis();
+        if (timeToIdle < 0) {
+            return expireAt;
+        }
+        long accessed = lastAccess == 0 ? CacheClock.currentTimeMillis() : lastAccess;
+        long idleAt = accessed + timeToIdle;
+        return expireAt < 0 ? idleAt : Math.min(expireAt, idleAt);
+    }
+
+    /**
+     * Remember that an expiry check of the object is scheduled
+     *
+     * @param time the epoch millis of the check
+     * @return false if a check on or after that time is scheduled already
+     */
+    boolean scheduleExpiryCheck(long time) {
+        if (time <= expiryCheckAt) {
+            return false;
+        }
+        expiryCheckAt = time;
         return true;
     }
 
     /**
-     * Save the object
+     * Save the object through the caching manager of {@link Mccore}, the write is queued on its
+     * {@link WriteBehindQueue} and coalesced with other writes of the key. The writes of a {@link CachingManager} go to
+     * its own queue, this is only for objects that are changed outside of the manager.
      */
     public void saveToDisk() {
-        Mccore.getInstance().getCachingManager().getCachingFileSystem().save(getKey(), this);
+        Mccore.getInstance().getCachingManager().getWriteBehindQueue().enqueueSave(getKey(), this);
     }
 
 }
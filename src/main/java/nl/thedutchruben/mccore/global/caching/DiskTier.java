@@ -0,0 +1,171 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The disk tier behind the memory of the {@link CachingManager}. Entries that are evicted from memory are demoted to
+ * the file system of the tier instead of being dropped, and the next read promotes them back into memory.
+ * <p>
+ * The tier keeps the keys it holds and their expire time in memory, so a key that is not on disk costs no I/O.
+ * A demoted entry is also kept in memory until its write is finished, so a read right after the eviction never
+ * misses. Use a file system that can look up one key without loading everything, like the
+ * {@link nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType} or the
+ * {@link nl.thedutchruben.mccore.global.caching.fileSystemTypes.SegmentedLogFileType}, and don't share it with
+ * the file system of the manager. Non persistent entries are demoted as well, the tier is a cache and not a backup.
+ */
+public class DiskTier {
+    private final CachingFileSystem fileSystem;
+    private final ConcurrentMap<String, Long> keys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CachingObject> writing = new ConcurrentHashMap<>();
+    private final LongAdder demotions = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+    private final CompletableFuture<Void> readyFuture;
+
+    /**
+     * Create a tier on the file system, the objects that are already saved there are indexed in the background
+     *
+     * @param fileSystem
+     */
+    public DiskTier(CachingFileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+        this.readyFuture = fileSystem.streamAll(object -> keys.putIfAbsent(object.getKey(), object.getExpireAt()))
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        CoreLogger.severe("Could not read the keys of the disk tier", throwable);
+                    }
+                });
+    }
+
+    /**
+     * Write an evicted entry to disk
+     *
+     * @param key
+     * @param object the decoded object
+     */
+    void demote(String key, CachingObject object) {
+        if (!object.isValid()) {
+            return;
+        }
+        writing.put(key, object);
+        keys.put(key, object.getExpireAt());
+        demotions.increment();
+        fileSystem.save(key, object).whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                CoreLogger.warning("Could not move " + key + " to the disk tier", throwable);
+                keys.remove(key);
+            }
+            writing.remove(key, object);
+        });
+    }
+
+    /**
+     * Read a demoted entry, it stays on disk until the manager stored it in memory and calls
+     * {@link #invalidate(String)}
+     *
+     * @param key
+     * @return the object or null if the key is not on disk or expired
+     */
+    CachingObject get(String key) {
+        Long expireAt = keys.get(key);
+        if (expireAt == null) {
+            return null;
+        }
+        if (expireAt >= 0 && CacheClock.currentTimeMillis() > expireAt) {
+            invalidate(key);
+            return null;
+        }
+        CachingObject object = writing.get(key);
+        if (object == null) {
+            try {
+                object = fileSystem.load(key).join();
+            } catch (RuntimeException e) {
+                CoreLogger.warning("Could not read " + key + " from the disk tier", e);
+                return null;
+            }
+        }
+        if (object == null || !object.isValid()) {
+            keys.remove(key, expireAt);
+            return null;
+        }
+        promotions.increment();
+        return object;
+    }
+
+    /**
+     * Remove the key from the tier, called when the key is stored in memory again or removed
+     *
+     * @param key
+     */
+    void invalidate(String key) {
+        if (keys.remove(key) == null) {
+            return;
+        }
+        writing.remove(key);
+        fileSystem.remove(new RemovedCachingObject(key));
+    }
+
+    /**
+     * Remove the key from the tier if it is expired, called by the {@link CachingManager} when the key expires
+     *
+     * @param key
+     */
+    void expire(String key) {
+        Long expireAt = keys.get(key);
+        if (expireAt != null && expireAt >= 0 && CacheClock.currentTimeMillis() > expireAt) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Returns true if the key is on disk, expired entries that are not read yet are included
+     *
+     * @param key
+     * @return
+     */
+    public boolean contains(String key) {
+        return keys.containsKey(key);
+    }
+
+    /**
+     * Returns the amount of entries on disk
+     *
+     * @return
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    public long getDemotionCount() {
+        return demotions.sum();
+    }
+
+    public long getPromotionCount() {
+        return promotions.sum();
+    }
+
+    /**
+     * Returns a future that completes when the objects that were already on disk are indexed
+     *
+     * @return
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return readyFuture;
+    }
+
+    public CachingFileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    /**
+     * Finish the pending writes and close the file system
+     */
+    public void close() {
+        fileSystem.close();
+    }
+}
@@ -0,0 +1,208 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Shrinks the bounds of the {@link CachingManager} when the heap fills up, and grows them back when it has room again.
+ * <p>
+ * The monitor sets a threshold on the heap pools that support one, normally the old generation, and listens to the
+ * threshold notifications of the {@link java.lang.management.MemoryMXBean}. Pools that can report their usage after
+ * a collection get a collection usage threshold, so garbage that is about to be collected doesn't count. A
+ * notification halves the capacity right away. Every poll interval the usage after the last collection is checked:
+ * above the high watermark the capacity is halved again, below the low watermark it grows back in steps of a tenth.
+ * The capacity never drops below a tenth of the configured bounds, and every resize is logged.
+ * <p>
+ * The thresholds are global to the JVM, so the monitor puts back the thresholds it found when it is stopped.
+ */
+public class HeapPressureMonitor {
+    private static final double MIN_FACTOR = 0.1;
+    private static final double GROW_STEP = 0.1;
+    private static final long POLL_MILLIS = 5000;
+
+    private final CachingManager cachingManager;
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final Consumer<String> logger;
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final Map<MemoryPoolMXBean, Long> previousThresholds = new HashMap<>();
+    private final NotificationListener listener = this::onNotification;
+    private ScheduledExecutorService scheduler;
+    private double capacityFactor = 1;
+    private long lastShrink;
+
+    /**
+     * Create a monitor that logs through the {@link CoreLogger}
+     *
+     * @param cachingManager the manager that is resized
+     * @param highWatermark the fraction of the pool above which the cache shrinks
+     * @param lowWatermark the fraction of the pool below which the cache grows back
+     */
+    public HeapPressureMonitor(CachingManager cachingManager, double highWatermark, double lowWatermark) {
+        this(cachingManager, highWatermark, lowWatermark, CoreLogger::info);
+    }
+
+    /**
+     * Create a monitor
+     *
+     * @param cachingManager the manager that is resized
+     * @param highWatermark the fraction of the pool above which the cache shrinks
+     * @param lowWatermark the fraction of the pool below which the cache grows back
+     * @param logger receives a message for every resize
+     */
+    public HeapPressureMonitor(CachingManager cachingManager, double highWatermark, double lowWatermark,
+                               Consumer<String> logger) {
+        if (lowWatermark <= 0 || lowWatermark >= highWatermark || highWatermark >= 1) {
+            throw new IllegalArgumentException("The watermarks must be 0 < low < high < 1");
+        }
+        this.cachingManager = cachingManager;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.logger = logger;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getUsage().getMax() > 0
+                    && (pool.isCollectionUsageThresholdSupported() || pool.isUsageThresholdSupported())) {
+                pools.add(pool);
+            }
+        }
+    }
+
+    /**
+     * Set the thresholds on the heap pools and start polling
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        for (MemoryPoolMXBean pool : pools) {
+            long threshold = (long) (pool.getUsage().getMax() * highWatermark);
+            if (pool.isCollectionUsageThresholdSupported()) {
+                previousThresholds.put(pool, pool.getCollectionUsageThreshold());
+                pool.setCollectionUsageThreshold(threshold);
+            } else {
+                previousThresholds.put(pool, pool.getUsageThreshold());
+                pool.setUsageThreshold(threshold);
+            }
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mccore-cache-heap");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> update(readUsage()), POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop listening and polling and put back the previous thresholds, the capacity stays as it is
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+        } catch (ListenerNotFoundException e) {
+            CoreLogger.warning("The heap pressure listener was already removed", e);
+        }
+        for (Map.Entry<MemoryPoolMXBean, Long> entry : previousThresholds.entrySet()) {
+            MemoryPoolMXBean pool = entry.getKey();
+            if (pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold(entry.getValue());
+            } else {
+                pool.setUsageThreshold(entry.getValue());
+            }
+        }
+        previousThresholds.clear();
+    }
+
+    /**
+     * Resize the cache for the usage, called every poll interval
+     *
+     * @param heapUsage the used fraction of the fullest heap pool, between 0 and 1
+     */
+    public synchronized void update(double heapUsage) {
+        if (heapUsage >= highWatermark) {
+            // A collection may not have run since the last shrink, give it time before shrinking again
+            if (System.currentTimeMillis() - lastShrink >= POLL_MILLIS) {
+                shrink(heapUsage);
+            }
+        } else if (heapUsage < lowWatermark && capacityFactor < 1) {
+            // Rounded to whole percents, so the steps add up to exactly 1
+            resize(Math.min(1, Math.round((capacityFactor + GROW_STEP) * 100) / 100.0), heapUsage, "grown");
+        }
+    }
+
+    /**
+     * Returns the fraction of the configured bounds that is used right now
+     *
+     * @return
+     */
+    public synchronized double getCapacityFactor() {
+        return capacityFactor;
+    }
+
+    /**
+     * Returns the used fraction of the fullest heap pool, measured after the last collection when it is available
+     *
+     * @return
+     */
+    public double readUsage() {
+        double usage = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage memoryUsage = pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsage() : null;
+            if (memoryUsage == null || memoryUsage.getMax() <= 0) {
+                memoryUsage = pool.getUsage();
+            }
+            if (memoryUsage.getMax() > 0) {
+                usage = Math.max(usage, (double) memoryUsage.getUsed() / memoryUsage.getMax());
+            }
+        }
+        return usage;
+    }
+
+    private void onNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+            synchronized (this) {
+                shrink(readUsage());
+            }
+        }
+    }
+
+    private void shrink(double heapUsage) {
+        lastShrink = System.currentTimeMillis();
+        if (capacityFactor > MIN_FACTOR) {
+            resize(Math.max(MIN_FACTOR, capacityFactor / 2), heapUsage, "reduced");
+        }
+    }
+
+    private void resize(double factor, double heapUsage, String action) {
+        capacityFactor = factor;
+        cachingManager.setCapacityFactor(factor);
+        long maximumSize = cachingManager.getEffectiveMaximumSize();
+        logger.accept(String.format("Heap usage is %d%%, the cache capacity is %s to %d%%%s",
+                Math.round(heapUsage * 100), action, Math.round(factor * 100),
+                maximumSize > 0 ? " (" + maximumSize + " entries)" : ""));
+    }
+}
@@ -0,0 +1,247 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a small sample of the keys that are read the most, so the next start can load those before the players ask
+ * for them, see {@link CachingManager#warmUp(File)}.
+ * <p>
+ * One in every sample rate reads is counted, so recording costs a random number on most reads. The counts are kept
+ * for at most twice the capacity of keys, when that fills up the coldest keys are dropped. After every sixteen
+ * times the capacity of counted reads, and at least 4096, all counts are halved, so keys that were hot an hour ago
+ * make room for the keys that are hot now. The hot keys are written to the file every five minutes and when the
+ * recorder stops, hottest first, through a temporary file so a crash never leaves half a file.
+ * <pre>
+ * [int version][int count]([utf key])*
+ * </pre>
+ */
+public class HotKeyRecorder {
+    private static final int VERSION = 1;
+    private static final long SAVE_MINUTES = 5;
+
+    private final File file;
+    private final int capacity;
+    private final int sampleRate;
+    private final long agePeriod;
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final AtomicLong samples = new AtomicLong();
+    private final ReentrantLock pruneLock = new ReentrantLock();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a recorder that keeps the 4096 hottest keys and counts one in every four reads
+     *
+     * @param file the file the hot keys are written to
+     */
+    public HotKeyRecorder(File file) {
+        this(file, 4096, 4);
+    }
+
+    /**
+     * Create a recorder
+     *
+     * @param file the file the hot keys are written to
+     * @param capacity the amount of keys that is written
+     * @param sampleRate one in this many reads is counted, 1 counts every read
+     */
+    public HotKeyRecorder(File file, int capacity, int sampleRate) {
+        this.file = file;
+        this.capacity = Math.max(1, capacity);
+        this.sampleRate = Math.max(1, sampleRate);
+        this.agePeriod = Math.max(4096, this.capacity * 16L);
+    }
+
+    /**
+     * Start writing the hot keys to the file every five minutes
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mccore-cache-hotkeys");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::trySave, SAVE_MINUTES, SAVE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop the background writes and write the hot keys one last time
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        trySave();
+    }
+
+    /**
+     * Count a read of the key, one in every sample rate reads is kept
+     *
+     * @param key
+     */
+    public void record(String key) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= capacity * 2) {
+                prune();
+            }
+            count = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+        if (samples.incrementAndGet() % agePeriod == 0) {
+            age();
+        }
+    }
+
+    /**
+     * Returns the hottest keys, hottest first
+     *
+     * @return at most the capacity of keys
+     */
+    public List<String> getHotKeys() {
+        List<Map.Entry<String, Long>> entries = snapshot();
+        List<String> keys = new ArrayList<>(Math.min(capacity, entries.size()));
+        for (int i = 0; i < entries.size() && i < capacity; i++) {
+            keys.add(entries.get(i).getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Write the hot keys to the file
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        List<String> keys = getHotKeys();
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        Path temp = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                out.writeUTF(key);
+            }
+        }
+        try {
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Read the keys that a recorder wrote
+     *
+     * @param file
+     * @return the keys hottest first, empty if the file doesn't exist or can't be read
+     */
+    public static List<String> read(File file) {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != VERSION) {
+                return Collections.emptyList();
+            }
+            int count = in.readInt();
+            List<String> keys = new ArrayList<>(Math.min(count, 65536));
+            for (int i = 0; i < count; i++) {
+                keys.add(in.readUTF());
+            }
+            return keys;
+        } catch (EOFException e) {
+            return Collections.emptyList();
+        } catch (IOException e) {
+            CoreLogger.warning("Could not read the hot keys from " + file, e);
+            return Collections.emptyList();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Drop the coldest keys down to the capacity, one thread prunes while the others keep recording
+     */
+    private void prune() {
+        if (!pruneLock.tryLock()) {
+            return;
+        }
+        try {
+            if (counts.size() < capacity * 2) {
+                return;
+            }
+            List<Map.Entry<String, Long>> entries = snapshot();
+            for (int i = capacity; i < entries.size(); i++) {
+                counts.remove(entries.get(i).getKey());
+            }
+        } finally {
+            pruneLock.unlock();
+        }
+    }
+
+    /**
+     * Halve all counts
+     */
+    private void age() {
+        pruneLock.lock();
+        try {
+            for (LongAdder count : counts.values()) {
+                count.add(-(count.sum() / 2));
+            }
+        } finally {
+            pruneLock.unlock();
+        }
+    }
+
+    private List<Map.Entry<String, Long>> snapshot() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> entries.add(new AbstractMap.SimpleEntry<>(key, count.sum())));
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return entries;
+    }
+
+    private void trySave() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            // Never let an exception cancel the repeating task
+            CoreLogger.warning("Could not save the hot keys to " + file, e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import com.google.gson.JsonElement;
+
+import java.util.Date;
+
+/**
+ * The form in which a value of a {@link CacheRegion} is handed to a {@link CachingFileSystem}.
+ * It only exists while the value is written or read, in memory the region keeps the value itself.
+ */
+public class RegionCachingObject extends CachingObject {
+    private String key;
+    private String region;
+    private Date createDate;
+    private Date expireDate;
+    private JsonElement data;
+
+    private RegionCachingObject() {
+    }
+
+    public RegionCachingObject(String key, String region, Date createDate, Date expireDate, JsonElement data) {
+        this.key = key;
+        this.region = region;
+        this.createDate = createDate;
+        this.expireDate = expireDate;
+        this.data = data;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public Boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    @Override
+    public Date getExpireDate() {
+        return expireDate;
+    }
+
+    /**
+     * Returns the value as json, the region turns it back into its own type
+     *
+     * @return
+     */
+    @Override
+    public JsonElement getData() {
+        return data;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+}
@@ -0,0 +1,40 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import java.util.Date;
+
+/**
+ * Only carries the key of an object that is removed from a {@link CachingFileSystem}, when the object itself is not
+ * available anymore
+ */
+class RemovedCachingObject extends CachingObject {
+    private final String key;
+
+    RemovedCachingObject(String key) {
+        this.key = key;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public Boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public Date getCreateDate() {
+        return null;
+    }
+
+    @Override
+    public Date getExpireDate() {
+        return null;
+    }
+
+    @Override
+    public Object getData() {
+        return null;
+    }
+}
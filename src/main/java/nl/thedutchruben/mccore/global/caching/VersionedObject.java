@@ -0,0 +1,30 @@
+package nl.thedutchruben.mccore.global.caching;
+
+/**
+ * A caching object together with the version it was stored with, returned by
+ * {@link CachingManager#getVersioned(String)}. Pass the version to
+ * {@link CachingManager#compareAndSet(String, long, CachingObject)} to only store a new object when nobody else
+ * stored one since it was read.
+ */
+public final class VersionedObject {
+    private final CachingObject object;
+    private final long version;
+
+    VersionedObject(CachingObject object, long version) {
+        this.object = object;
+        this.version = version;
+    }
+
+    public CachingObject getObject() {
+        return object;
+    }
+
+    /**
+     * Returns the version of the object, versions only grow and are never given twice by one manager
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,403 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CachingCodec;
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Logs the writes of the {@link WriteBehindQueue} before they are flushed, so a crash doesn't lose the writes that
+ * were still pending.
+ * <p>
+ * Writes are appended by one background thread. It takes every write that is queued, appends them in one go and
+ * forces them to disk with one fsync, so a burst of writes costs one fsync instead of one per write (group commit).
+ * The future of a logged write completes once it is on disk. The write-behind queue doesn't wait for it, so a write
+ * never blocks on an fsync, and a crash loses the writes that were not forced yet, at most one group commit.
+ * Every record has a crc32, a record that was only partly written when the server crashed ends the replay.
+ * <p>
+ * The log is split in generations. The write-behind queue starts a new generation before it flushes a batch and
+ * deletes the older generations once the batch is written to the {@link CachingFileSystem}. A batch that fails is
+ * logged again in a later generation, so the next checkpoint may delete it as well. The generations that
+ * are left when the server starts are replayed into the file system by {@link #replay(CachingFileSystem)}.
+ * A write counts as done once the future of the file system completes.
+ * <p>
+ * Record layout: {@code [int length][int crc32][byte op][utf key][payload]}, the payload is written by the
+ * {@link CachingCodec}.
+ */
+public class WriteAheadLog {
+    private static final byte OP_SAVE = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int MAX_BATCH = 1024;
+
+    private final File directory;
+    private final CachingCodec codec;
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final long firstGeneration;
+    private final Object appendLock = new Object();
+    private long generation;
+    private long writerGeneration;
+    private FileChannel channel;
+    private volatile boolean closed;
+
+    /**
+     * Open the log in the directory, the generations that are already there are kept for the replay
+     *
+     * @param directory
+     */
+    public WriteAheadLog(File directory) {
+        this(directory, new BinaryCodec());
+    }
+
+    /**
+     * Open the log in the directory, the generations that are already there are kept for the replay
+     *
+     * @param directory
+     * @param codec the codec of the logged objects
+     */
+    public WriteAheadLog(File directory, CachingCodec codec) {
+        this.directory = directory;
+        this.codec = codec;
+        directory.mkdirs();
+        TreeMap<Long, File> existing = listGenerations();
+        this.firstGeneration = existing.isEmpty() ? 1 : existing.lastKey() + 1;
+        this.generation = firstGeneration;
+        this.writerGeneration = firstGeneration;
+        this.writer = new Thread(this::run, "mccore-cache-wal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Log a save of the object
+     *
+     * @param key
+     * @param cachingObject
+     * @return a future that completes when the record is on disk
+     */
+    public CompletableFuture<Void> logSave(String key, CachingObject cachingObject) {
+        return add(new Task(OP_SAVE, key, cachingObject, 0));
+    }
+
+    /**
+     * Log a remove of the object
+     *
+     * @param cachingObject
+     * @return a future that completes when the record is on disk
+     */
+    public CompletableFuture<Void> logRemove(CachingObject cachingObject) {
+        return add(new Task(OP_REMOVE, cachingObject.getKey(), cachingObject, 0));
+    }
+
+    /**
+     * Start a new generation, the writes that are logged before this call are in the returned generation or older
+     *
+     * @return the generation that is closed
+     */
+    public long rotate() {
+        synchronized (appendLock) {
+            long closed = generation++;
+            queue.add(new Task(Task.ROTATE, null, null, generation));
+            return closed;
+        }
+    }
+
+    /**
+     * Delete the generation and the older ones, their writes are in the file system now
+     *
+     * @param generation
+     */
+    public void checkpoint(long generation) {
+        add(new Task(Task.CHECKPOINT, null, null, generation));
+    }
+
+    /**
+     * Write the generations that were left by the previous run to the file system and delete them. Only the last
+     * write of every key is replayed. Call this before the objects of the file system are loaded.
+     *
+     * @param cachingFileSystem
+     * @return the amount of keys that are replayed
+     */
+    public int replay(CachingFileSystem cachingFileSystem) {
+        TreeMap<Long, File> generations = listGenerations();
+        Map<String, Record> latest = new LinkedHashMap<>();
+        for (Map.Entry<Long, File> entry : generations.entrySet()) {
+            if (entry.getKey() < firstGeneration) {
+                read(entry.getValue(), cachingFileSystem, latest);
+            }
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<CachingObject> removes = new ArrayList<>();
+        for (Map.Entry<String, Record> entry : latest.entrySet()) {
+            if (entry.getValue().op == OP_SAVE) {
+                futures.add(cachingFileSystem.save(entry.getKey(), entry.getValue().cachingObject));
+            } else {
+                removes.add(entry.getValue().cachingObject);
+            }
+        }
+        if (!removes.isEmpty()) {
+            futures.add(cachingFileSystem.removeAll(removes));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        checkpoint(firstGeneration - 1);
+        return latest.size();
+    }
+
+    /**
+     * Returns the amount of records that wait to be written
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Write the queued records and close the log, the generations that are not checkpointed stay for the replay
+     */
+    public void close() {
+        closed = true;
+        queue.add(new Task(Task.CLOSE, null, null, 0));
+        try {
+            writer.join(30_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Void> add(Task task) {
+        if (closed) {
+            task.future.completeExceptionally(new IllegalStateException("The write-ahead log is closed"));
+            return task.future;
+        }
+        synchronized (appendLock) {
+            queue.add(task);
+        }
+        return task.future;
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>();
+        List<Task> written = new ArrayList<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (int i = 0; i < batch.size(); i++) {
+                Task task = batch.get(i);
+                if (task.op == OP_SAVE || task.op == OP_REMOVE) {
+                    try {
+                        encode(buffer, task);
+                        written.add(task);
+                    } catch (RuntimeException | IOException e) {
+                        task.future.completeExceptionally(e);
+                    }
+                    continue;
+                }
+                // Everything before the control task goes into the current generation
+                commit(buffer, written);
+                if (task.op == Task.ROTATE) {
+                    closeChannel();
+                    writerGeneration = task.generation;
+                } else if (task.op == Task.CHECKPOINT) {
+                    deleteGenerations(task.generation);
+                } else if (task.op == Task.CLOSE) {
+                    closeChannel();
+                    task.future.complete(null);
+                    failPending(batch.subList(i + 1, batch.size()));
+                    return;
+                }
+                task.future.complete(null);
+            }
+            commit(buffer, written);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Append the encoded records with one write and one fsync, then complete their futures
+     */
+    private void commit(ByteArrayOutputStream buffer, List<Task> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(getFile(writerGeneration).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            ByteBuffer data = ByteBuffer.wrap(buffer.toByteArray());
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+            written.forEach(task -> task.future.complete(null));
+        } catch (IOException e) {
+            written.forEach(task -> task.future.completeExceptionally(e));
+        } finally {
+            buffer.reset();
+            written.clear();
+        }
+    }
+
+    private void encode(ByteArrayOutputStream buffer, Task task) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(task.op);
+        out.writeUTF(task.key);
+        out.write(codec.encode(task.cachingObject));
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeInt(bytes.length);
+        record.writeInt((int) crc.getValue());
+        record.write(bytes);
+    }
+
+    /**
+     * Read the records of one generation, a record with a wrong length or crc ends the generation
+     */
+    private void read(File file, CachingFileSystem cachingFileSystem, Map<String, Record> latest) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                int crc = in.readInt();
+                if (length <= 0 || length > file.length()) {
+                    return;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                CRC32 check = new CRC32();
+                check.update(bytes, 0, length);
+                if ((int) check.getValue() != crc) {
+                    return;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+                byte op = record.readByte();
+                String key = record.readUTF();
+                byte[] payload = new byte[record.available()];
+                record.readFully(payload);
+                CachingObject cachingObject = codec.decode(payload, cachingFileSystem::resolveType);
+                if (cachingObject == null && op == OP_REMOVE) {
+                    // A remove only needs the key
+                    cachingObject = new RemovedCachingObject(key);
+                }
+                latest.remove(key);
+                if (cachingObject != null) {
+                    latest.put(key, new Record(op, cachingObject));
+                }
+            }
+        } catch (EOFException e) {
+            // The server stopped while the last record was written
+        } catch (IOException | RuntimeException e) {
+            CoreLogger.severe("Could not replay the rest of the write-ahead log " + file, e);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            CoreLogger.warning("Could not close the write-ahead log in " + directory, e);
+        }
+        channel = null;
+    }
+
+    private void deleteGenerations(long upTo) {
+        for (Map.Entry<Long, File> entry : listGenerations().entrySet()) {
+            long id = entry.getKey();
+            if (id <= upTo && id < writerGeneration) {
+                entry.getValue().delete();
+            }
+        }
+    }
+
+    private void failPending(List<Task> unprocessed) {
+        List<Task> tasks = new ArrayList<>(unprocessed);
+        queue.drainTo(tasks);
+        for (Task task : tasks) {
+            task.future.completeExceptionally(new IllegalStateException("The write-ahead log is closed"));
+        }
+    }
+
+    private TreeMap<Long, File> listGenerations() {
+        TreeMap<Long, File> generations = new TreeMap<>();
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("wal-") && name.endsWith(".log"));
+        if (files != null) {
+            for (File file : files) {
+                try {
+                    generations.put(Long.parseLong(file.getName().substring(4, file.getName().length() - 4)), file);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return generations;
+    }
+
+    private File getFile(long generation) {
+        return new File(directory, String.format("wal-%016d.log", generation));
+    }
+
+    private static final class Record {
+        private final byte op;
+        private final CachingObject cachingObject;
+
+        private Record(byte op, CachingObject cachingObject) {
+            this.op = op;
+            this.cachingObject = cachingObject;
+        }
+    }
+
+    private static final class Task {
+        private static final byte ROTATE = 10;
+        private static final byte CHECKPOINT = 11;
+        private static final byte CLOSE = 12;
+
+        private final byte op;
+        private final String key;
+        private final CachingObject cachingObject;
+        private final long generation;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Task(byte op, String key, CachingObject cachingObject, long generation) {
+            this.op = op;
+            this.key = key;
+            this.cachingObject = cachingObject;
+            this.generation = generation;
+        }
+    }
+}
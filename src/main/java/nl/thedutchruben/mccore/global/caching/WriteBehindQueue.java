@@ -0,0 +1,387 @@
+package nl.thedutchruben.mccore.global.caching;
+
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Collects the writes to the {@link CachingFileSystem} and flushes them in batches.
+ * <p>
+ * Only the last write of a key is kept, so ten updates of one key between two flushes cost one save, and a save
+ * followed by a remove only costs the remove. Batches are flushed every flush interval, or earlier when too many keys
+ * are pending, on one dedicated thread with a bounded queue. The saves and removes of a batch are handed to the file
+ * system with one {@link CachingFileSystem#saveAll(Map)} and one {@link CachingFileSystem#removeAll(Collection)}.
+ * A batch waits until the file system finished it before the next batch starts, so two writes of the same key never
+ * race each other. When the file system fails a batch its writes are tried one at a time, and the ones that fail
+ * again are queued again, unless a newer write of the key is pending, and the next flush tries them again. A write
+ * that failed {@link #MAX_ATTEMPTS} flushes is dropped and logged, so an object the file system can't store or a
+ * file system that stays down never blocks the queue, but a file system that is down for that long loses the writes.
+ * A write stays visible through {@link #isPending(String)} and
+ * {@link #getPendingSave(String)} until the file system finished it, so a read that misses the cache never loads the
+ * old value from the file system in the meantime.
+ * <p>
+ * With a {@link WriteAheadLog} every write is also logged, so the writes that are still pending when the server
+ * crashes are replayed on the next start. See the log for the writes a crash can still lose.
+ */
+public class WriteBehindQueue {
+    private static final int MAX_QUEUED_FLUSHES = 4;
+    /**
+     * The amount of flushes a write may fail before it is dropped
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    private final ConcurrentHashMap<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PendingWrite> flushing = new ConcurrentHashMap<>();
+    private final Supplier<CachingFileSystem> fileSystem;
+    private final WriteAheadLog writeAheadLog;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private ScheduledFuture<?> scheduledFlush;
+    private long flushIntervalMillis;
+    private int maxPending;
+
+    /**
+     * Create and start a write-behind queue
+     *
+     * @param fileSystem the file system the writes are flushed to
+     * @param flushIntervalMillis the time between two flushes
+     * @param maxPending the amount of pending keys that triggers a flush before the interval passed
+     */
+    public WriteBehindQueue(Supplier<CachingFileSystem> fileSystem, long flushIntervalMillis, int maxPending) {
+        this(fileSystem, flushIntervalMillis, maxPending, null);
+    }
+
+    /**
+     * Create and start a write-behind queue that logs every write
+     *
+     * @param fileSystem the file system the writes are flushed to
+     * @param flushIntervalMillis the time between two flushes
+     * @param maxPending the amount of pending keys that triggers a flush before the interval passed
+     * @param writeAheadLog the log the writes are logged to, or null
+     */
+    public WriteBehindQueue(Supplier<CachingFileSystem> fileSystem, long flushIntervalMillis, int maxPending,
+                            WriteAheadLog writeAheadLog) {
+        this.fileSystem = fileSystem;
+        this.writeAheadLog = writeAheadLog;
+        this.maxPending = maxPending;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_FLUSHES), runnable -> {
+            Thread thread = new Thread(runnable, "mccore-cache-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mccore-cache-write-behind-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        setFlushInterval(flushIntervalMillis);
+    }
+
+    /**
+     * Queue a save of the object, replaces the pending write of the key
+     *
+     * @param key
+     * @param cachingObject
+     */
+    public void enqueueSave(String key, CachingObject cachingObject) {
+        pending.put(key, new PendingWrite(cachingObject, false));
+        // Logged after it is pending, so a flush that misses the write never checkpoints its record
+        if (writeAheadLog != null) {
+            writeAheadLog.logSave(key, cachingObject);
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Queue a save of every object, replaces the pending writes of the keys
+     *
+     * @param cachingObjects the objects by their key
+     */
+    public void enqueueSaveAll(Map<String, ? extends CachingObject> cachingObjects) {
+        cachingObjects.forEach((key, cachingObject) -> {
+            pending.put(key, new PendingWrite(cachingObject, false));
+            if (writeAheadLog != null) {
+                writeAheadLog.logSave(key, cachingObject);
+            }
+        });
+        flushIfFull();
+    }
+
+    /**
+     * Queue a remove of the object, replaces the pending write of the key
+     *
+     * @param cachingObject
+     */
+    public void enqueueRemove(CachingObject cachingObject) {
+        pending.put(cachingObject.getKey(), new PendingWrite(cachingObject, true));
+        if (writeAheadLog != null) {
+            writeAheadLog.logRemove(cachingObject);
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Queue a remove of every object
+     *
+     * @param cachingObjects
+     */
+    public void enqueueRemoveAll(Collection<CachingObject> cachingObjects) {
+        for (CachingObject cachingObject : cachingObjects) {
+            pending.put(cachingObject.getKey(), new PendingWrite(cachingObject, true));
+            if (writeAheadLog != null) {
+                writeAheadLog.logRemove(cachingObject);
+            }
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Flush all pending writes in the background
+     *
+     * @return a future that completes when the pending writes are on disk
+     */
+    public CompletableFuture<Void> flushAsync() {
+        try {
+            return CompletableFuture.runAsync(this::flushPending, executor);
+        } catch (RejectedExecutionException e) {
+            // The flush thread is busy or stopped, batches are still flushed one at a time
+            return CompletableFuture.runAsync(this::flushPending);
+        }
+    }
+
+    /**
+     * Flush all pending writes and wait until they are on disk, use this when the plugin is disabled
+     */
+    public void flush() {
+        flushAsync().join();
+    }
+
+    /**
+     * Change the time between two flushes
+     *
+     * @param flushIntervalMillis
+     */
+    public synchronized void setFlushInterval(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = scheduler.scheduleWithFixedDelay(this::requestFlush, flushIntervalMillis,
+                flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public long getFlushInterval() {
+        return flushIntervalMillis;
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Returns the amount of keys that wait to be written
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns true if a write of the key waits to be flushed or is being flushed, until it is finished the file system
+     * may still hold the old value
+     *
+     * @param key
+     * @return
+     */
+    public boolean isPending(String key) {
+        return pending.containsKey(key) || flushing.containsKey(key);
+    }
+
+    /**
+     * Returns the object of the save of the key that is not finished yet
+     *
+     * @param key
+     * @return the object, or null if the last write of the key is a remove or nothing is pending
+     */
+    public CachingObject getPendingSave(String key) {
+        // A write is added to the flushing writes before it leaves the pending ones, so it is always in one of them
+        PendingWrite write = pending.get(key);
+        if (write == null) {
+            write = flushing.get(key);
+        }
+        return write == null || write.remove ? null : write.cachingObject;
+    }
+
+    public WriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    /**
+     * Flush the pending writes and stop the threads
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flush();
+        executor.shutdown();
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
+        }
+    }
+
+    private void flushIfFull() {
+        if (pending.size() >= maxPending && flushQueued.compareAndSet(false, true)) {
+            requestFlush();
+        }
+    }
+
+    /**
+     * Flush in the background, when enough flushes are queued already they pick up the pending writes
+     */
+    private void requestFlush() {
+        try {
+            executor.execute(this::flushPending);
+        } catch (RejectedExecutionException e) {
+            flushQueued.set(false);
+        }
+    }
+
+    private synchronized void flushPending() {
+        flushQueued.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+        // Every write that is pending now is logged in this generation or an older one
+        long generation = writeAheadLog != null ? writeAheadLog.rotate() : 0;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        Map<String, PendingWrite> batch = new LinkedHashMap<>();
+        Map<String, CachingObject> saves = new LinkedHashMap<>();
+        List<CachingObject> removes = new ArrayList<>();
+        CachingFileSystem cachingFileSystem = fileSystem.get();
+        for (Map.Entry<String, PendingWrite> entry : pending.entrySet()) {
+            PendingWrite write = entry.getValue();
+            flushing.put(entry.getKey(), write);
+            // Only take the write if it was not replaced in the meantime, a newer one goes in the next batch
+            if (!pending.remove(entry.getKey(), write)) {
+                flushing.remove(entry.getKey(), write);
+                continue;
+            }
+            batch.put(entry.getKey(), write);
+            if (write.remove) {
+                removes.add(write.cachingObject);
+            } else {
+                saves.put(entry.getKey(), write.cachingObject);
+            }
+        }
+        try {
+            if (!saves.isEmpty()) {
+                futures.add(cachingFileSystem.saveAll(saves));
+            }
+            if (!removes.isEmpty()) {
+                futures.add(cachingFileSystem.removeAll(removes));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            if (writeAheadLog != null) {
+                writeAheadLog.checkpoint(generation);
+            }
+        } catch (RuntimeException e) {
+            retrySeparately(cachingFileSystem, batch, e);
+        } finally {
+            // The batch is on disk or queued again, every write of the batch is flushed only by this thread
+            flushing.clear();
+        }
+    }
+
+    /**
+     * Write the writes of a failed batch one at a time, so one write the file system can't take doesn't hold back
+     * the rest of the batch. The writes that fail again are queued again, a write that failed
+     * {@link #MAX_ATTEMPTS} flushes in a row is dropped and reported.
+     */
+    private void retrySeparately(CachingFileSystem cachingFileSystem, Map<String, PendingWrite> batch,
+                                 RuntimeException cause) {
+        List<String> dropped = new ArrayList<>();
+        int failed = 0;
+        for (Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+            PendingWrite write = entry.getValue();
+            if (batch.size() > 1) {
+                try {
+                    (write.remove ? cachingFileSystem.remove(write.cachingObject)
+                            : cachingFileSystem.save(entry.getKey(), write.cachingObject)).join();
+                    continue;
+                } catch (RuntimeException e) {
+                    cause.addSuppressed(e);
+                }
+            }
+            failed++;
+            if (write.attempts + 1 >= MAX_ATTEMPTS) {
+                dropped.add(entry.getKey());
+            } else {
+                requeue(entry.getKey(), new PendingWrite(write.cachingObject, write.remove, write.attempts + 1));
+            }
+        }
+        if (failed > dropped.size()) {
+            CoreLogger.warning("Could not write " + (failed - dropped.size())
+                    + " cache entries, they are tried again on the next flush", cause);
+        }
+        if (!dropped.isEmpty()) {
+            CoreLogger.severe("Dropped the writes of " + dropped.size() + " cache entries after " + MAX_ATTEMPTS
+                    + " failed flushes: " + describe(dropped), cause);
+        }
+    }
+
+    private static String describe(List<String> keys) {
+        return keys.size() <= 10 ? String.join(", ", keys)
+                : String.join(", ", keys.subList(0, 10)) + " and " + (keys.size() - 10) + " more";
+    }
+
+    /**
+     * Queue a failed write again, and log it again so the failed generation can be deleted by the checkpoint of a
+     * later flush. A key that got a newer write in the meantime keeps the newer one.
+     */
+    private void requeue(String key, PendingWrite write) {
+        pending.computeIfAbsent(key, k -> {
+            // Logged while the key is locked, so a newer write of the key is always logged after this one
+            if (writeAheadLog != null) {
+                if (write.remove) {
+                    writeAheadLog.logRemove(write.cachingObject);
+                } else {
+                    writeAheadLog.logSave(k, write.cachingObject);
+                }
+            }
+            return write;
+        });
+    }
+
+    private static final class PendingWrite {
+        private final CachingObject cachingObject;
+        private final boolean remove;
+        private final int attempts;
+
+        private PendingWrite(CachingObject cachingObject, boolean remove) {
+            this(cachingObject, remove, 0);
+        }
+
+        private PendingWrite(CachingObject cachingObject, boolean remove, int attempts) {
+            this.cachingObject = cachingObject;
+            this.remove = remove;
+            this.attempts = attempts;
+        }
+    }
+}
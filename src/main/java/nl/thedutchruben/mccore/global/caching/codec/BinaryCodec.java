@@ -0,0 +1,327 @@
+package nl.thedutchruben.mccore.global.caching.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A compact binary form of the json tree of an object.
+ * <p>
+ * Every string, field names included, is written once in a string table at the start and referred to by its index,
+ * so the field names of a list of objects cost one byte each. Integers are zigzag varints, and dates are stored as
+ * epoch millis instead of text, so they keep their milliseconds.
+ * <pre>
+ * [byte version][varint stringCount]([varint length][utf-8])*[varint typeIndex][value]
+ * value  [byte tag] followed by: int [zigzag varint] | double [8 bytes] | string and number [varint index]
+ *        | array [varint size][value]* | object [varint size]([varint nameIndex][value])*
+ * </pre>
+ */
+public class BinaryCodec implements CachingCodec {
+    private static final byte VERSION = 1;
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_FALSE = 1;
+    private static final byte TAG_TRUE = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_NUMBER = 6;
+    private static final byte TAG_ARRAY = 7;
+    private static final byte TAG_OBJECT = 8;
+    private static final double MAX_EXACT_DOUBLE = 1L << 53;
+
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping()
+            .registerTypeAdapter(Date.class, new EpochMillisAdapter().nullSafe()).create();
+
+    @Override
+    public byte[] encode(CachingObject cachingObject) {
+        Map<String, Integer> strings = new HashMap<>();
+        ByteWriter table = new ByteWriter(64);
+        ByteWriter body = new ByteWriter(256);
+        body.writeVarint(index(strings, table, cachingObject.getClass().getName()));
+        writeValue(body, strings, table, gson.toJsonTree(cachingObject));
+
+        ByteWriter out = new ByteWriter(6 + table.size + body.size);
+        out.writeByte(VERSION);
+        out.writeVarint(strings.size());
+        out.writeBytes(table.data, table.size);
+        out.writeBytes(body.data, body.size);
+        return out.toByteArray();
+    }
+
+    @Override
+    public CachingObject decode(byte[] data, Function<String, Class<? extends CachingObject>> typeResolver) {
+        ByteReader in = new ByteReader(data);
+        try {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unknown binary codec version " + data[0]);
+            }
+            String[] strings = new String[in.readCount()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = in.readCount();
+                strings[i] = new String(data, in.position, length, StandardCharsets.UTF_8);
+                in.position += length;
+            }
+            Class<? extends CachingObject> type = typeResolver.apply(strings[in.readVarint()]);
+            if (type == null) {
+                return null;
+            }
+            return gson.fromJson(readValue(in, strings), type);
+        } catch (ArrayIndexOutOfBoundsException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("The binary data is truncated or corrupt", e);
+        }
+    }
+
+    private void writeValue(ByteWriter out, Map<String, Integer> strings, ByteWriter table, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            out.writeByte(TAG_NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            out.writeByte(TAG_OBJECT);
+            out.writeVarint(object.size());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                out.writeVarint(index(strings, table, entry.getKey()));
+                writeValue(out, strings, table, entry.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            out.writeByte(TAG_ARRAY);
+            out.writeVarint(array.size());
+            for (JsonElement value : array) {
+                writeValue(out, strings, table, value);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                out.writeByte(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+            } else if (primitive.isString()) {
+                out.writeByte(TAG_STRING);
+                out.writeVarint(index(strings, table, primitive.getAsString()));
+            } else {
+                writeNumber(out, strings, table, primitive.getAsNumber());
+            }
+        }
+    }
+
+    private void writeNumber(ByteWriter out, Map<String, Integer> strings, ByteWriter table, Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short
+                || number instanceof Byte) {
+            out.writeByte(TAG_INT);
+            out.writeZigzag(number.longValue());
+        } else if (number instanceof Double || number instanceof Float) {
+            double value = number.doubleValue();
+            boolean negativeZero = value == 0 && Double.doubleToRawLongBits(value) != 0;
+            if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT_DOUBLE && !negativeZero) {
+                out.writeByte(TAG_INT);
+                out.writeZigzag((long) value);
+            } else {
+                out.writeByte(TAG_DOUBLE);
+                out.writeLong(Double.doubleToRawLongBits(value));
+            }
+        } else {
+            // BigDecimal, BigInteger and other numbers keep their exact text
+            out.writeByte(TAG_NUMBER);
+            out.writeVarint(index(strings, table, number.toString()));
+        }
+    }
+
+    private JsonElement readValue(ByteReader in, String[] strings) {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return JsonNull.INSTANCE;
+            case TAG_FALSE:
+                return new JsonPrimitive(false);
+            case TAG_TRUE:
+                return new JsonPrimitive(true);
+            case TAG_INT:
+                return new JsonPrimitive(in.readZigzag());
+            case TAG_DOUBLE:
+                return new JsonPrimitive(Double.longBitsToDouble(in.readLong()));
+            case TAG_STRING:
+                return new JsonPrimitive(strings[in.readVarint()]);
+            case TAG_NUMBER:
+                return new JsonPrimitive(new BigDecimal(strings[in.readVarint()]));
+            case TAG_ARRAY: {
+                int size = in.readCount();
+                JsonArray array = new JsonArray(size);
+                for (int i = 0; i < size; i++) {
+                    array.add(readValue(in, strings));
+                }
+                return array;
+            }
+            case TAG_OBJECT: {
+                int size = in.readCount();
+                JsonObject object = new JsonObject();
+                for (int i = 0; i < size; i++) {
+                    String name = strings[in.readVarint()];
+                    object.add(name, readValue(in, strings));
+                }
+                return object;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown binary codec tag " + tag);
+        }
+    }
+
+    private static int index(Map<String, Integer> strings, ByteWriter table, String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            table.writeVarint(bytes.length);
+            table.writeBytes(bytes, bytes.length);
+        }
+        return index;
+    }
+
+    /**
+     * Writes dates as epoch millis, json text would lose the milliseconds and cost 20 bytes more
+     */
+    private static final class EpochMillisAdapter extends TypeAdapter<Date> {
+        @Override
+        public void write(JsonWriter out, Date value) throws IOException {
+            out.value(value.getTime());
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.NUMBER) {
+                throw new IOException("Expected the epoch millis of a date");
+            }
+            return new Date(in.nextLong());
+        }
+    }
+
+    private static final class ByteWriter {
+        private byte[] data;
+        private int size;
+
+        private ByteWriter(int capacity) {
+            this.data = new byte[capacity];
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            data[size++] = (byte) value;
+        }
+
+        private void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private void writeZigzag(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                data[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            data[size++] = (byte) zigzag;
+        }
+
+        private void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                data[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeBytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, data, size, length);
+            size += length;
+        }
+
+        private byte[] toByteArray() {
+            return size == data.length ? data : Arrays.copyOf(data, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class ByteReader {
+        private final byte[] data;
+        private int position;
+
+        private ByteReader(byte[] data) {
+            this.data = data;
+        }
+
+        private byte readByte() {
+            return data[position++];
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint is too long");
+        }
+
+        /**
+         * Read a count of entries or bytes that follow, every entry takes at least one byte, so a count that is
+         * larger than the rest of the data is corrupt and never allocated
+         */
+        private int readCount() {
+            int count = readVarint();
+            if (count < 0 || count > data.length - position) {
+                throw new IllegalArgumentException("The binary data is truncated or corrupt, a count of " + count
+                        + " is larger than the " + (data.length - position) + " bytes that are left");
+            }
+            return count;
+        }
+
+        private long readZigzag() {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return (value >>> 1) ^ -(value & 1);
+                }
+            }
+            throw new IllegalArgumentException("Varint is too long");
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (data[position++] & 0xFF);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package nl.thedutchruben.mccore.global.caching.codec;
+
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+
+import java.util.function.Function;
+
+/**
+ * Turns a caching object into bytes and back. The bytes hold the type of the object, so a file system can store
+ * objects of different classes without keeping the class itself.
+ * <p>
+ * {@link BinaryCodec} is compact and the default of the file systems, {@link JsonCodec} is readable and meant for
+ * debugging. {@link CompressingCodec} compresses the large entries of another codec.
+ */
+public interface CachingCodec {
+
+    /**
+     * Encode the object and its type
+     *
+     * @param cachingObject
+     * @return the bytes
+     */
+    byte[] encode(CachingObject cachingObject);
+
+    /**
+     * Decode an object that was encoded by this codec
+     *
+     * @param data
+     * @param typeResolver finds the class by the stored class name, returns null if it does not exist
+     * @return the object, or null if the class can't be found
+     * @throws IllegalArgumentException if the data is not written by this codec
+     */
+    CachingObject decode(byte[] data, Function<String, Class<? extends CachingObject>> typeResolver);
+}
@@ -0,0 +1,242 @@
+package nl.thedutchruben.mccore.global.caching.codec;
+
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.stats.CompressionStats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the output of another codec with deflate when it is larger than a threshold. Pass it to a file system
+ * like any other codec.
+ * <p>
+ * Small entries cost more CPU than they save, they are stored as the wrapped codec wrote them. Larger entries are
+ * deflated, with the {@link CompressionDictionary} when one is set, and stored as they are when they don't get
+ * smaller. The first byte tells how an entry is stored, and it never is a first byte of the {@link BinaryCodec} or
+ * the {@link JsonCodec}, so entries written before the compression was turned on are still read.
+ * <pre>
+ * [0xC0][data] | [0xC1][varint length][deflated] | [0xC2][int dictionaryId][varint length][deflated]
+ * </pre>
+ * Every deflater and inflater is reused by its thread. The size, ratio and time of every entry are recorded in the
+ * {@link #getStats()}.
+ */
+public class CompressingCodec implements CachingCodec {
+    private static final byte STORED = (byte) 0xC0;
+    private static final byte DEFLATED = (byte) 0xC1;
+    private static final byte DEFLATED_DICTIONARY = (byte) 0xC2;
+    private static final int DEFAULT_THRESHOLD = 256;
+    private static final int MIN_THRESHOLD = 16;
+
+    private final CachingCodec codec;
+    private final int threshold;
+    private final int level;
+    private final CompressionStats stats = new CompressionStats();
+    private final Map<Integer, CompressionDictionary> dictionaries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private volatile CompressionDictionary dictionary;
+
+    /**
+     * Compress the entries of the {@link BinaryCodec} of 256 bytes and larger
+     */
+    public CompressingCodec() {
+        this(new BinaryCodec(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Compress the entries of the codec
+     *
+     * @param codec the codec that writes the entries
+     * @param threshold the size in bytes from which an entry is compressed, at least 16
+     */
+    public CompressingCodec(CachingCodec codec, int threshold) {
+        this(codec, threshold, Deflater.DEFAULT_COMPRESSION, null);
+    }
+
+    /**
+     * Compress the entries of the codec
+     *
+     * @param codec the codec that writes the entries
+     * @param threshold the size in bytes from which an entry is compressed, at least 16
+     * @param level the deflate level, 1 is the fastest and 9 the smallest
+     * @param dictionary the dictionary of new entries, may be null
+     */
+    public CompressingCodec(CachingCodec codec, int threshold, int level, CompressionDictionary dictionary) {
+        if (codec instanceof CompressingCodec) {
+            throw new IllegalArgumentException("The codec is already compressed");
+        }
+        this.codec = codec;
+        this.threshold = Math.max(MIN_THRESHOLD, threshold);
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(this.level, true));
+        if (dictionary != null) {
+            setDictionary(dictionary);
+        }
+    }
+
+    /**
+     * Train a dictionary on the objects and use it for the entries that are written from now on
+     *
+     * @param samples objects like the ones that are stored
+     * @param size the maximum size of the dictionary in bytes, at most 32 KB
+     * @return the dictionary, store its bytes to read the entries back after a restart
+     */
+    public CompressionDictionary trainDictionary(Collection<? extends CachingObject> samples, int size) {
+        List<byte[]> encoded = new ArrayList<>(samples.size());
+        for (CachingObject sample : samples) {
+            encoded.add(codec.encode(sample));
+        }
+        CompressionDictionary trained = CompressionDictionary.train(encoded, size);
+        setDictionary(trained);
+        return trained;
+    }
+
+    /**
+     * Use the dictionary for the entries that are written from now on. Entries of the dictionaries that were set
+     * before can still be read.
+     *
+     * @param dictionary
+     */
+    public void setDictionary(CompressionDictionary dictionary) {
+        dictionaries.put(dictionary.getId(), dictionary);
+        this.dictionary = dictionary;
+    }
+
+    public CompressionDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public byte[] encode(CachingObject cachingObject) {
+        byte[] data = codec.encode(cachingObject);
+        if (data.length < threshold) {
+            stats.recordSkipped(data.length);
+            return isMarker(data) ? stored(data) : data;
+        }
+        long start = System.nanoTime();
+        CompressionDictionary current = dictionary;
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (current != null) {
+            deflater.setDictionary(current.bytes());
+        }
+        deflater.setInput(data);
+        deflater.finish();
+
+        // Only worth it when it gets smaller than the data itself, so the output never has to grow
+        byte[] out = new byte[data.length];
+        int position = 0;
+        out[position++] = current == null ? DEFLATED : DEFLATED_DICTIONARY;
+        if (current != null) {
+            int id = current.getId();
+            out[position++] = (byte) (id >>> 24);
+            out[position++] = (byte) (id >>> 16);
+            out[position++] = (byte) (id >>> 8);
+            out[position++] = (byte) id;
+        }
+        position = writeVarint(out, position, data.length);
+        while (!deflater.finished() && position < out.length) {
+            position += deflater.deflate(out, position, out.length - position);
+        }
+        long nanos = System.nanoTime() - start;
+        if (!deflater.finished() || position >= data.length) {
+            stats.recordIncompressible(data.length, nanos);
+            return isMarker(data) ? stored(data) : data;
+        }
+        stats.recordCompressed(data.length, position, nanos);
+        return Arrays.copyOf(out, position);
+    }
+
+    @Override
+    public CachingObject decode(byte[] data, Function<String, Class<? extends CachingObject>> typeResolver) {
+        if (!isMarker(data)) {
+            return codec.decode(data, typeResolver);
+        }
+        if (data[0] == STORED) {
+            return codec.decode(Arrays.copyOfRange(data, 1, data.length), typeResolver);
+        }
+        long start = System.nanoTime();
+        int position = 1;
+        CompressionDictionary used = null;
+        if (data[0] == DEFLATED_DICTIONARY) {
+            if (data.length < 5) {
+                throw new IllegalArgumentException("The data is cut off");
+            }
+            int id = (data[1] & 0xFF) << 24 | (data[2] & 0xFF) << 16 | (data[3] & 0xFF) << 8 | (data[4] & 0xFF);
+            used = dictionaries.get(id);
+            if (used == null) {
+                throw new IllegalArgumentException("The data is compressed with an unknown dictionary "
+                        + Integer.toHexString(id));
+            }
+            position = 5;
+        }
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (position >= data.length || shift > 28) {
+                throw new IllegalArgumentException("The data has no valid length");
+            }
+            b = data[position++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if (used != null) {
+            inflater.setDictionary(used.bytes());
+        }
+        inflater.setInput(data, position, data.length - position);
+        byte[] inflated = new byte[length];
+        try {
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int count = inflater.inflate(inflated, read, length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != length) {
+                throw new IllegalArgumentException("The data is cut off");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("The data is not valid deflate data", e);
+        }
+        stats.recordDecompressed(System.nanoTime() - start);
+        return codec.decode(inflated, typeResolver);
+    }
+
+    private static boolean isMarker(byte[] data) {
+        return data.length > 0 && (data[0] == STORED || data[0] == DEFLATED || data[0] == DEFLATED_DICTIONARY);
+    }
+
+    private static byte[] stored(byte[] data) {
+        byte[] out = new byte[data.length + 1];
+        out[0] = STORED;
+        System.arraycopy(data, 0, out, 1, data.length);
+        return out;
+    }
+
+    private static int writeVarint(byte[] out, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,202 @@
+package nl.thedutchruben.mccore.global.caching.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.zip.Adler32;
+
+/**
+ * A preset dictionary for the {@link CompressingCodec}, trained on sample entries.
+ * <p>
+ * Deflate finds repeats within the last 32 KB it has seen, so a small entry has nothing to refer back to. A dictionary
+ * is that history for every entry: the field names and values that most entries share, like the item names of an
+ * inventory snapshot. Training counts every 8 byte sequence once per sample, and keeps picking the 64 byte piece of a
+ * sample that holds the most sequences that are in other samples too and not in the dictionary yet. The best piece
+ * goes last, deflate codes nearby matches in fewer bits.
+ * <p>
+ * The stored entries need the same dictionary to be read back, so keep its bytes next to the data and create the
+ * dictionary from them on the next start. Every entry stores the {@link #getId()} of its dictionary.
+ */
+public class CompressionDictionary {
+    private static final int SEQUENCE_BYTES = 8;
+    private static final int PIECE_BYTES = 64;
+    private static final int PIECE_STEP = 8;
+    private static final int MAX_SIZE = 32 * 1024;
+
+    private final byte[] data;
+    private final int id;
+
+    /**
+     * Create a dictionary from the bytes of a trained one
+     *
+     * @param data
+     */
+    public CompressionDictionary(byte[] data) {
+        if (data.length == 0 || data.length > MAX_SIZE) {
+            throw new IllegalArgumentException("A dictionary holds 1 to " + MAX_SIZE + " bytes");
+        }
+        this.data = data.clone();
+        Adler32 adler32 = new Adler32();
+        adler32.update(this.data);
+        this.id = (int) adler32.getValue();
+    }
+
+    /**
+     * Train a dictionary on samples of the stored data. Training reads all samples into memory, a few hundred
+     * samples are enough.
+     *
+     * @param samples encoded entries
+     * @param size the maximum size of the dictionary in bytes, at most 32 KB
+     * @return the dictionary
+     * @throws IllegalArgumentException if the samples have nothing in common
+     */
+    public static CompressionDictionary train(Collection<byte[]> samples, int size) {
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("The size must be 1 to " + MAX_SIZE + " bytes");
+        }
+        List<byte[]> list = new ArrayList<>(samples);
+        Map<Long, Integer> frequencies = countSequences(list);
+
+        PriorityQueue<Piece> queue = new PriorityQueue<>();
+        Set<Long> covered = new HashSet<>();
+        for (int sample = 0; sample < list.size(); sample++) {
+            byte[] bytes = list.get(sample);
+            for (int offset = 0; offset + PIECE_BYTES <= bytes.length; offset += PIECE_STEP) {
+                int score = score(bytes, offset, frequencies, covered);
+                if (score > 0) {
+                    queue.add(new Piece(sample, offset, score));
+                }
+            }
+        }
+
+        // Scores only drop as the dictionary grows, so a piece that keeps its score after a rescore is the best one
+        List<Piece> chosen = new ArrayList<>();
+        int total = 0;
+        while (total < size && !queue.isEmpty()) {
+            Piece piece = queue.poll();
+            byte[] bytes = list.get(piece.sample);
+            int score = score(bytes, piece.offset, frequencies, covered);
+            if (score <= 0) {
+                continue;
+            }
+            if (score < piece.score) {
+                queue.add(new Piece(piece.sample, piece.offset, score));
+                continue;
+            }
+            chosen.add(piece);
+            total += PIECE_BYTES;
+            for (int i = piece.offset; i + SEQUENCE_BYTES <= piece.offset + PIECE_BYTES; i++) {
+                covered.add(sequence(bytes, i));
+            }
+        }
+        if (chosen.isEmpty()) {
+            throw new IllegalArgumentException("The samples have no data in common");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(total);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            Piece piece = chosen.get(i);
+            out.write(list.get(piece.sample), piece.offset, PIECE_BYTES);
+        }
+        byte[] dictionary = out.toByteArray();
+        // The weakest pieces are at the start, cut those when the last piece went over the size
+        return new CompressionDictionary(Arrays.copyOfRange(dictionary, Math.max(0, dictionary.length - size),
+                dictionary.length));
+    }
+
+    /**
+     * Returns the checksum of the dictionary, it tells which dictionary an entry needs
+     *
+     * @return
+     */
+    public int getId() {
+        return id;
+    }
+
+    public int size() {
+        return data.length;
+    }
+
+    /**
+     * Returns a copy of the bytes, store them to create the same dictionary later
+     *
+     * @return
+     */
+    public byte[] toByteArray() {
+        return data.clone();
+    }
+
+    byte[] bytes() {
+        return data;
+    }
+
+    /**
+     * Count in how many samples every sequence occurs
+     */
+    private static Map<Long, Integer> countSequences(List<byte[]> samples) {
+        Map<Long, Integer> frequencies = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        for (byte[] bytes : samples) {
+            seen.clear();
+            for (int i = 0; i + SEQUENCE_BYTES <= bytes.length; i++) {
+                Long sequence = sequence(bytes, i);
+                if (seen.add(sequence)) {
+                    frequencies.merge(sequence, 1, Integer::sum);
+                }
+            }
+        }
+        return frequencies;
+    }
+
+    /**
+     * Returns the summed sample counts of the sequences in the piece that occur in more than one sample and are not
+     * in the dictionary yet
+     */
+    private static int score(byte[] bytes, int offset, Map<Long, Integer> frequencies, Set<Long> covered) {
+        Set<Long> counted = new HashSet<>();
+        int score = 0;
+        for (int i = offset; i + SEQUENCE_BYTES <= offset + PIECE_BYTES; i++) {
+            Long sequence = sequence(bytes, i);
+            if (covered.contains(sequence) || !counted.add(sequence)) {
+                continue;
+            }
+            int frequency = frequencies.getOrDefault(sequence, 0);
+            if (frequency > 1) {
+                score += frequency;
+            }
+        }
+        return score;
+    }
+
+    private static long sequence(byte[] bytes, int offset) {
+        long sequence = 0;
+        for (int i = 0; i < SEQUENCE_BYTES; i++) {
+            sequence = (sequence << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return sequence;
+    }
+
+    private static final class Piece implements Comparable<Piece> {
+        private final int sample;
+        private final int offset;
+        private final int score;
+
+        private Piece(int sample, int offset, int score) {
+            this.sample = sample;
+            this.offset = offset;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Piece other) {
+            return Integer.compare(other.score, score);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package nl.thedutchruben.mccore.global.caching.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Stores the class name on the first line and the json of the object after it, so the stored data can be read
+ * with any text tool. Use it to look into the cache, the {@link BinaryCodec} is smaller and faster.
+ */
+public class JsonCodec implements CachingCodec {
+    private final Gson gson;
+
+    public JsonCodec() {
+        this(false);
+    }
+
+    /**
+     * Create a json codec
+     *
+     * @param prettyPrinting if true the json is indented
+     */
+    public JsonCodec(boolean prettyPrinting) {
+        GsonBuilder builder = new GsonBuilder().disableHtmlEscaping();
+        if (prettyPrinting) {
+            builder.setPrettyPrinting();
+        }
+        this.gson = builder.create();
+    }
+
+    @Override
+    public byte[] encode(CachingObject cachingObject) {
+        return (cachingObject.getClass().getName() + "\n" + gson.toJson(cachingObject))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CachingObject decode(byte[] data, Function<String, Class<? extends CachingObject>> typeResolver) {
+        String text = new String(data, StandardCharsets.UTF_8);
+        int split = text.indexOf('\n');
+        if (split < 0) {
+            throw new IllegalArgumentException("The data has no type line");
+        }
+        Class<? extends CachingObject> type = typeResolver.apply(text.substring(0, split));
+        if (type == null) {
+            return null;
+        }
+        return gson.fromJson(text.substring(split + 1), type);
+    }
+}
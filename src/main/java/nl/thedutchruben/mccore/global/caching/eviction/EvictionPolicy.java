@@ -0,0 +1,49 @@
+package nl.thedutchruben.mccore.global.caching.eviction;
+
+/**
+ * Decides which key leaves the {@link nl.thedutchruben.mccore.global.caching.CachingManager} when it is over its bound.
+ * The manager calls the policy while holding its eviction lock, so implementations do not need to be thread safe.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called when a new key is stored
+     *
+     * @param key
+     */
+    void onInsert(String key);
+
+    /**
+     * Called when a stored key is read or replaced
+     *
+     * @param key
+     */
+    void onAccess(String key);
+
+    /**
+     * Called when a key is removed for any reason
+     *
+     * @param key
+     */
+    void onRemove(String key);
+
+    /**
+     * Returns the key that should be evicted next, or null if the policy does not track any key
+     *
+     * @return
+     */
+    String victim();
+
+    /**
+     * Called when the maximum amount of entries of the manager changes
+     *
+     * @param capacity the maximum amount of entries, 0 when only the weight is bounded
+     */
+    default void setCapacity(long capacity) {
+    }
+
+    /**
+     * Forget all tracked keys
+     */
+    void clear();
+}
@@ -0,0 +1,87 @@
+package nl.thedutchruben.mccore.global.caching.eviction;
+
+/**
+ * Count-min sketch that estimates how often a key was used, with small saturating counters.
+ * All counters are halved after a sample period so old popularity fades out.
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private byte[][] table;
+    private int mask;
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch(long capacity) {
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * Resize the sketch for the given amount of entries, the collected frequencies are lost
+     *
+     * @param capacity
+     */
+    void ensureCapacity(long capacity) {
+        int width = Integer.highestOneBit((int) Math.max(16, Math.min(capacity, 1 << 24)) - 1) << 1;
+        if (table != null && table[0].length == width) {
+            return;
+        }
+        table = new byte[DEPTH][width];
+        mask = width - 1;
+        sampleSize = width * 10;
+        additions = 0;
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table[i][index(hash, i)]);
+        }
+        return frequency;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(hash, i);
+            if (table[i][index] < MAX_COUNT) {
+                table[i][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    void clear() {
+        for (byte[] row : table) {
+            java.util.Arrays.fill(row, (byte) 0);
+        }
+        additions = 0;
+    }
+
+    private void reset() {
+        for (byte[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (byte) (row[i] >>> 1);
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return (h ^ (h >>> 15)) & mask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45D9F3B;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,37 @@
+package nl.thedutchruben.mccore.global.caching.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the key that has not been used for the longest time
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+    private final LinkedHashMap<String, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void onInsert(String key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void onAccess(String key) {
+        order.get(key);
+    }
+
+    @Override
+    public void onRemove(String key) {
+        order.remove(key);
+    }
+
+    @Override
+    public String victim() {
+        Iterator<String> iterator = order.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    public void clear() {
+        order.clear();
+    }
+}
@@ -0,0 +1,119 @@
+package nl.thedutchruben.mccore.global.caching.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * W-TinyLFU eviction policy.
+ * <p>
+ * New keys enter a small LRU window. When the window overflows its oldest key has to compete with the oldest key
+ * of the main space, and only the key that is used most often (estimated with a {@link FrequencySketch}) stays.
+ * The main space is a segmented LRU, keys that are used again while on probation are moved to the protected segment.
+ * This keeps frequently used keys resident while a burst of one-time keys only flushes the window.
+ */
+public class TinyLfuEvictionPolicy implements EvictionPolicy {
+    private static final double WINDOW_PERCENTAGE = 0.01;
+    private static final double PROTECTED_PERCENTAGE = 0.8;
+
+    private final LinkedHashMap<String, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Boolean> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long capacity;
+
+    public TinyLfuEvictionPolicy() {
+        this.sketch = new FrequencySketch(16);
+    }
+
+    @Override
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+        sketch.ensureCapacity(capacity);
+    }
+
+    @Override
+    public void onInsert(String key) {
+        sketch.increment(key);
+        if (probation.containsKey(key) || protectedSegment.containsKey(key)) {
+            onAccess(key);
+            return;
+        }
+        window.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void onAccess(String key) {
+        sketch.increment(key);
+        if (window.get(key) != null || protectedSegment.get(key) != null) {
+            return;
+        }
+        if (probation.remove(key) != null) {
+            protectedSegment.put(key, Boolean.TRUE);
+            long maxProtected = (long) ((effectiveCapacity() - windowSize()) * PROTECTED_PERCENTAGE);
+            while (protectedSegment.size() > Math.max(1, maxProtected)) {
+                String demoted = eldest(protectedSegment);
+                protectedSegment.remove(demoted);
+                probation.put(demoted, Boolean.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public void onRemove(String key) {
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    @Override
+    public String victim() {
+        while (window.size() > windowSize()) {
+            String candidate = eldest(window);
+            window.remove(candidate);
+            // Only compete for a place when the main space is full, without a capacity the manager is always full
+            boolean mainFull = capacity <= 0 || probation.size() + protectedSegment.size() >= capacity - windowSize();
+            String mainVictim = mainFull ? eldest(probation) : null;
+            if (mainFull && mainVictim == null) {
+                mainVictim = eldest(protectedSegment);
+            }
+            probation.put(candidate, Boolean.TRUE);
+            if (!mainFull) {
+                continue;
+            }
+            if (mainVictim == null) {
+                return candidate;
+            }
+            // The candidate is only admitted if it is used more often than the key it would replace
+            return sketch.frequency(candidate) > sketch.frequency(mainVictim) ? mainVictim : candidate;
+        }
+        String victim = eldest(probation);
+        if (victim == null) {
+            victim = eldest(protectedSegment);
+        }
+        return victim != null ? victim : eldest(window);
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        sketch.clear();
+    }
+
+    private long effectiveCapacity() {
+        if (capacity > 0) {
+            return capacity;
+        }
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    private long windowSize() {
+        return Math.max(1, (long) (effectiveCapacity() * WINDOW_PERCENTAGE));
+    }
+
+    private static String eldest(LinkedHashMap<String, Boolean> map) {
+        Iterator<String> iterator = map.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
@@ -0,0 +1,20 @@
+package nl.thedutchruben.mccore.global.caching.eviction;
+
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+
+/**
+ * Calculates the weight of a cached entry, used to bound the cache by something else than the amount of entries.
+ * The weight of an entry must not change while it is stored.
+ */
+@FunctionalInterface
+public interface Weigher {
+
+    /**
+     * Returns the weight of the entry
+     *
+     * @param key
+     * @param object
+     * @return a weight of zero or higher
+     */
+    int weigh(String key, CachingObject object);
+}
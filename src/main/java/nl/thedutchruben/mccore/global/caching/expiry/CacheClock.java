@@ -0,0 +1,64 @@
+package nl.thedutchruben.mccore.global.caching.expiry;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The clock of the expiry checks, updated once per server tick by a background thread.
+ * <p>
+ * Reading the time is one volatile read, so checking if an entry is expired never calls
+ * {@link System#currentTimeMillis()}. The time lags at most one tick behind and never goes back. The
+ * {@link ExpiryService} advances with the same clock, so an entry is never removed in the background while a read
+ * still sees it as valid. Tests can replace the system time with {@link #setTimeSource(LongSupplier)} to move the
+ * time forward without waiting.
+ */
+public final class CacheClock {
+    public static final long TICK_MILLIS = 50;
+
+    private static volatile LongSupplier timeSource = System::currentTimeMillis;
+    private static volatile long now = System.currentTimeMillis();
+
+    static {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mccore-cache-clock");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(CacheClock::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private CacheClock() {
+    }
+
+    /**
+     * Returns the time of the last tick in epoch millis
+     *
+     * @return
+     */
+    public static long currentTimeMillis() {
+        return now;
+    }
+
+    /**
+     * Update the clock right away instead of waiting for the next tick
+     */
+    public static synchronized void tick() {
+        long time = timeSource.getAsLong();
+        if (time > now) {
+            now = time;
+        }
+    }
+
+    /**
+     * Follow another time source than the system time, for tests. The clock jumps to the time of the source right
+     * away, also when that is earlier, so a test can put back {@link System#currentTimeMillis()} when it is done.
+     *
+     * @param timeSource returns the time in epoch millis
+     */
+    public static synchronized void setTimeSource(LongSupplier timeSource) {
+        CacheClock.timeSource = timeSource;
+        now = timeSource.getAsLong();
+    }
+}
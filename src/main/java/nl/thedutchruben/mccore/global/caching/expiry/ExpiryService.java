@@ -0,0 +1,121 @@
+package nl.thedutchruben.mccore.global.caching.expiry;
+
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Removes cached entries when their expire date passes, also when they are never read again.
+ * <p>
+ * Keys are scheduled from any thread, a single background thread moves them into a {@link TimingWheel} and advances
+ * the wheel every tick with the {@link CacheClock}. All persistent entries that expired in one tick are handed to the disk remover in one batch.
+ */
+public class ExpiryService {
+    private final ConcurrentLinkedQueue<Scheduled> pending = new ConcurrentLinkedQueue<>();
+    private final Function<String, CachingObject> expirer;
+    private final Consumer<Collection<CachingObject>> diskRemover;
+    private final long tickMillis;
+    private final TimingWheel timingWheel;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Create and start the expiry service
+     *
+     * @param expirer removes the key if the stored object is expired and returns the removed object, or null
+     * @param diskRemover removes a batch of expired persistent entries from disk
+     * @param tickMillis the precision of the expiry in milliseconds
+     * @param wheelSize the amount of ticks in one wheel
+     */
+    public ExpiryService(Function<String, CachingObject> expirer, Consumer<Collection<CachingObject>> diskRemover,
+                         long tickMillis, int wheelSize) {
+        this.expirer = expirer;
+        this.diskRemover = diskRemover;
+        this.tickMillis = tickMillis;
+        this.timingWheel = new TimingWheel(tickMillis, wheelSize, CacheClock.currentTimeMillis());
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mccore-cache-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule the key to be checked when the expire time passes
+     *
+     * @param key
+     * @param expireAt the epoch millis on which the key expires
+     */
+    public void schedule(String key, long expireAt) {
+        pending.add(new Scheduled(key, expireAt));
+    }
+
+    /**
+     * Returns the amount of keys that are waiting to expire
+     *
+     * @return
+     */
+    public int getScheduledCount() {
+        return timingWheel.size() + pending.size();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Stop the background thread, scheduled keys are dropped
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void tick() {
+        try {
+            List<String> due = new ArrayList<>();
+            Scheduled scheduled;
+            while ((scheduled = pending.poll()) != null) {
+                if (!timingWheel.add(scheduled.key, scheduled.expireAt)) {
+                    due.add(scheduled.key);
+                }
+            }
+            timingWheel.advance(CacheClock.currentTimeMillis(), due::add);
+            if (due.isEmpty()) {
+                return;
+            }
+
+            List<CachingObject> removeFromDisk = new ArrayList<>();
+            for (String key : due) {
+                CachingObject removed = expirer.apply(key);
+                if (removed != null && removed.isPersistent()) {
+                    removeFromDisk.add(removed);
+                }
+            }
+            if (!removeFromDisk.isEmpty()) {
+                diskRemover.accept(removeFromDisk);
+            }
+        } catch (Exception e) {
+            // Never let an exception cancel the repeating task
+            CoreLogger.warning("Could not expire the due cache entries", e);
+        }
+    }
+
+    private static final class Scheduled {
+        private final String key;
+        private final long expireAt;
+
+        private Scheduled(String key, long expireAt) {
+            this.key = key;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package nl.thedutchruben.mccore.global.caching.expiry;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel that groups keys by the tick in which they expire.
+ * <p>
+ * The lowest wheel has buckets of one tick, every overflow wheel has buckets as large as the whole wheel below it.
+ * Adding a key and advancing one tick are both O(1), keys from an overflow bucket move down once their bucket starts.
+ * A key never expires before its expire time, and at most one tick after it.
+ * The wheel is not thread safe, the {@link ExpiryService} only touches it from its own thread.
+ */
+public class TimingWheel {
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long interval;
+    private final boolean overflowLevel;
+    private final ArrayDeque<Entry>[] buckets;
+    private long currentTime;
+    private TimingWheel overflowWheel;
+    private int size;
+
+    /**
+     * Create a timing wheel
+     *
+     * @param tickMillis the length of one tick in milliseconds
+     * @param wheelSize the amount of buckets per wheel
+     * @param startTime the current time in milliseconds
+     */
+    public TimingWheel(long tickMillis, int wheelSize, long startTime) {
+        this(tickMillis, wheelSize, startTime, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TimingWheel(long tickMillis, int wheelSize, long startTime, boolean overflowLevel) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.interval = tickMillis * wheelSize;
+        this.overflowLevel = overflowLevel;
+        this.currentTime = startTime - (startTime % tickMillis);
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Add a key to the wheel
+     *
+     * @param key
+     * @param expireAt the epoch millis on which the key expires
+     * @return false if the key is already due and is not added
+     */
+    public boolean add(String key, long expireAt) {
+        if (!place(new Entry(key, expireAt))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    private boolean place(Entry entry) {
+        if (entry.expireAt < currentTime) {
+            return false;
+        }
+        long bucketId = entry.expireAt / tickMillis;
+        if (bucketId < currentTime / tickMillis + wheelSize) {
+            buckets[(int) (bucketId % wheelSize)].add(entry);
+        } else {
+            if (overflowWheel == null) {
+                overflowWheel = new TimingWheel(interval, wheelSize, currentTime, true);
+            }
+            overflowWheel.place(entry);
+        }
+        return true;
+    }
+
+    /**
+     * Move the wheel forward to the given time
+     *
+     * @param now the current time in milliseconds
+     * @param expired receives every key that expired
+     */
+    public void advance(long now, Consumer<String> expired) {
+        advanceLevel(now, entry -> {
+            if (!place(entry)) {
+                size--;
+                expired.accept(entry.key);
+            }
+        });
+    }
+
+    private void advanceLevel(long now, Flush flush) {
+        while (currentTime + tickMillis <= now) {
+            // The lowest wheel drains a bucket when its tick is over, overflow wheels when their bucket starts
+            int index = (int) (((overflowLevel ? currentTime + tickMillis : currentTime) / tickMillis) % wheelSize);
+            ArrayDeque<Entry> bucket = buckets[index];
+            currentTime += tickMillis;
+            if (!bucket.isEmpty()) {
+                // Swap the bucket out first, flushed keys can be added to the same index again
+                buckets[index] = new ArrayDeque<>();
+                for (Entry entry : bucket) {
+                    flush.accept(entry);
+                }
+            }
+            if (overflowWheel != null) {
+                overflowWheel.advanceLevel(currentTime, flush);
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of keys in the wheel
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    private interface Flush {
+        void accept(Entry entry);
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final long expireAt;
+
+        private Entry(String key, long expireAt) {
+            this.key = key;
+            this.expireAt = expireAt;
+        }
+    }
+}
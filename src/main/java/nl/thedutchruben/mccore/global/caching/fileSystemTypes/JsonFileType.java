@@ -3,48 +3,191 @@ package nl.thedutchruben.mccore.global.caching.fileSystemTypes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import nl.thedutchruben.mccore.Mccore;
+import nl.thedutchruben.mccore.global.caching.CacheWarmUpLoader;
 import nl.thedutchruben.mccore.global.caching.CachingFileSystem;
 import nl.thedutchruben.mccore.global.caching.CachingObject;
-import nl.thedutchruben.mccore.utils.config.FileManager;
+import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+/**
+ * Saves every caching object in its own file under {@code caching/<key>.json}.
+ * The file holds the class of the object next to the json, so it can be loaded back as the right type.
+ * A file is written to a temporary file first, forced to disk and then moved over the old one, so a crash never
+ * leaves a half written file behind. A write that fails fails the future of the save, so the write-behind queue
+ * keeps the write instead of dropping it.
+ */
 public class JsonFileType extends CachingFileSystem {
-    private final FileManager fileManager = new FileManager(Mccore.getInstance().getJavaPlugin());
     private final Gson gson = new GsonBuilder()
             .disableHtmlEscaping().setPrettyPrinting().create();
 
     @Override
     public CompletableFuture<Void> save(String key, CachingObject cachingObject) {
-        return CompletableFuture.supplyAsync(() -> {
-            fileManager.getConfig("caching/" + key + ".json").get().set("", gson.toJson(cachingObject));
-            fileManager.getConfig("caching/" + key + ".json").save();
-            return null;
+        return CompletableFuture.runAsync(() -> write(key, cachingObject));
+    }
+
+    /**
+     * Write the files one after another in one task, so a large batch doesn't take every thread of the common pool.
+     * A file that can't be written doesn't stop the others, the future fails after all files are tried.
+     */
+    @Override
+    public CompletableFuture<Void> saveAll(Map<String, CachingObject> cachingObjects) {
+        return CompletableFuture.runAsync(() -> {
+            RuntimeException failure = null;
+            for (Map.Entry<String, CachingObject> entry : cachingObjects.entrySet()) {
+                try {
+                    write(entry.getKey(), entry.getValue());
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
         });
     }
 
     @Override
     public CompletableFuture<Void> remove(CachingObject cachingObject) {
         return CompletableFuture.supplyAsync(() -> {
-            fileManager.getConfig("caching/" + cachingObject.getKey() + ".json").file.delete();
+            getFile(cachingObject.getKey()).delete();
             return null;
         });
     }
 
     @Override
-    public CompletableFuture<List<CachingObject>> loadALl() {
-        return CompletableFuture.supplyAsync(() -> {
-            List<CachingObject> list = new ArrayList<>();
-            if(Mccore.getInstance().getJavaPlugin() == null) return list;
-            for (File file : new File(Mccore.getInstance().getJavaPlugin().getDataFolder(), "caching/").listFiles()) {
-                list.add(gson.fromJson(fileManager.getConfig("caching/" + file.getName() + ".json").get().getString(""),
-                        CachingObject.class));
+    public CompletableFuture<Void> removeAll(Collection<CachingObject> cachingObjects) {
+        return CompletableFuture.runAsync(() -> {
+            for (CachingObject cachingObject : cachingObjects) {
+                getFile(cachingObject.getKey()).delete();
             }
-            return list;
         });
     }
 
+    @Override
+    public CompletableFuture<CachingObject> load(String key) {
+        return CompletableFuture.supplyAsync(() -> {
+            File file = getFile(key);
+            return file.exists() ? decode(file) : null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<CachingObject>> loadALl() {
+        List<CachingObject> list = Collections.synchronizedList(new ArrayList<>());
+        return streamAll(list::add).thenApply(ignored -> list);
+    }
+
+    @Override
+    public CompletableFuture<Void> streamAll(Consumer<CachingObject> consumer) {
+        if (Mccore.getInstance().getJavaPlugin() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        File[] files = getDirectory().listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return new CacheWarmUpLoader<File>().load(Arrays.asList(files), this::decode, consumer)
+                .thenApply(count -> null);
+    }
+
+    /**
+     * Read one saved file, files without a type are written by an older version and are skipped
+     *
+     * @param file
+     * @return the object or null if it can't be loaded
+     */
+    private CachingObject decode(File file) {
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        String type = config.getString("type");
+        String data = config.getString("data");
+        if (type == null || data == null) {
+            return null;
+        }
+        Class<? extends CachingObject> clazz = resolveType(type);
+        if (clazz == null) {
+            return null;
+        }
+        return gson.fromJson(data, clazz);
+    }
+
+    private void write(String key, CachingObject cachingObject) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("type", cachingObject.getClass().getName());
+        config.set("data", gson.toJson(cachingObject));
+        File file = getFile(key);
+        try {
+            writeAtomic(file, config.saveToString());
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write the cache file " + file, e);
+        }
+    }
+
+    /**
+     * Write the content to a temporary file, force it to disk and move it over the file. The directory is forced
+     * after the move so the new name survives a crash as well.
+     */
+    private void writeAtomic(File file, String content) throws IOException {
+        Path target = file.toPath();
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer data = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        forceDirectory(target.getParent());
+    }
+
+    private void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows can't open a directory, there the move is only as durable as the platform makes it
+        }
+    }
+
+    private File getDirectory() {
+        return new File(Mccore.getInstance().getJavaPlugin().getDataFolder(), "caching/");
+    }
+
+    private File getFile(String key) {
+        File directory = getDirectory();
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return new File(directory, key + ".json");
+    }
+
 }
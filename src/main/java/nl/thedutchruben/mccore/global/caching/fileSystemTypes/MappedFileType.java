@@ -0,0 +1,603 @@
+package nl.thedutchruben.mccore.global.caching.fileSystemTypes;
+
+import nl.thedutchruben.mccore.Mccore;
+import nl.thedutchruben.mccore.global.caching.CachingFileSystem;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CachingCodec;
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stores the caching objects in one memory-mapped file, so a restart only has to map the file.
+ * Objects are decoded the first time they are requested, see {@link #isLazy()}.
+ * <p>
+ * The file starts with a fixed header, followed by an open addressing hash index and the data region:
+ * <pre>
+ * header  [int magic][int version][int slotCount][int liveCount][int usedSlots][long dataEnd][long liveBytes]
+ * slot    [long keyHash][long dataOffset][long expireAt][int length][byte state]
+ * record  [short keyLength][key][payload]
+ * </pre>
+ * The key length is an unsigned short, so keys longer than 65535 UTF-8 bytes are rejected.
+ * The payload is written by the {@link CachingCodec}, the {@link BinaryCodec} by default.
+ * Lookups read the index straight from the mapping, writes are done on one background thread.
+ * When the index gets too full, or the file would have to grow while most of the data is superseded, the file is
+ * rewritten with only the live records. The old mapping is unmapped before the rewritten file replaces it, a mapped
+ * file can't be replaced on Windows. If the file can't be mapped again after a rebuild, every later call fails with an
+ * {@link IllegalStateException}.
+ * The whole file has to fit in one mapping, so it is limited to 2GB.
+ */
+public class MappedFileType extends CachingFileSystem {
+    private static final int MAGIC = 0x54445243;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final byte SLOT_EMPTY = 0;
+    private static final byte SLOT_LIVE = 1;
+    private static final byte SLOT_DELETED = 2;
+    private static final double MAX_LOAD = 0.7;
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+
+    private final CachingCodec codec;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mccore-cache-mapped");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final File file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int slotCount;
+
+    public MappedFileType() {
+        this(new File(Mccore.getInstance().getJavaPlugin().getDataFolder(), "caching.dat"), 1024);
+    }
+
+    /**
+     * Open or create a mapped cache file
+     *
+     * @param file the file to map
+     * @param initialSlots the amount of index slots of a new file, rounded up to a power of two
+     */
+    public MappedFileType(File file, int initialSlots) {
+        this(file, initialSlots, new BinaryCodec());
+    }
+
+    /**
+     * Open or create a mapped cache file
+     *
+     * @param file the file to map
+     * @param initialSlots the amount of index slots of a new file, rounded up to a power of two
+     * @param codec the codec of the stored objects
+     */
+    public MappedFileType(File file, int initialSlots, CachingCodec codec) {
+        this.file = file;
+        this.codec = codec;
+        try {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            boolean exists = file.exists() && file.length() >= HEADER_SIZE;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (exists) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                this.slotCount = buffer.getInt(8);
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Unknown cache file format " + file);
+                }
+                if (buffer.getInt(4) != VERSION) {
+                    throw new IOException("The cache file " + file + " is written by version " + buffer.getInt(4)
+                            + ", delete it to start a new cache");
+                }
+            } else {
+                int slots = Integer.highestOneBit(Math.max(16, initialSlots) - 1) << 1;
+                this.buffer = format(channel, slots, HEADER_SIZE + (long) slots * SLOT_SIZE + 64 * 1024);
+                this.slotCount = slots;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the cache file " + file, e);
+        }
+    }
+
+    @Override
+    public boolean isLazy() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String key, CachingObject cachingObject) {
+        return CompletableFuture.runAsync(() -> put(key, cachingObject), writer);
+    }
+
+    /**
+     * Write all objects in one task, every object is encoded before the lock is taken so readers only wait for the
+     * copy into the mapping. An object that can't be written doesn't stop the others, the future fails afterwards.
+     */
+    @Override
+    public CompletableFuture<Void> saveAll(Map<String, CachingObject> cachingObjects) {
+        return CompletableFuture.runAsync(() -> {
+            RuntimeException failure = null;
+            for (Map.Entry<String, CachingObject> entry : cachingObjects.entrySet()) {
+                try {
+                    put(entry.getKey(), entry.getValue());
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }, writer);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(CachingObject cachingObject) {
+        return CompletableFuture.runAsync(() -> delete(cachingObject.getKey()), writer);
+    }
+
+    /**
+     * Remove all objects in one task under one write lock
+     */
+    @Override
+    public CompletableFuture<Void> removeAll(Collection<CachingObject> cachingObjects) {
+        return CompletableFuture.runAsync(() -> {
+            lock.writeLock().lock();
+            try {
+                for (CachingObject cachingObject : cachingObjects) {
+                    delete(cachingObject.getKey());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }, writer);
+    }
+
+    @Override
+    public CompletableFuture<CachingObject> load(String key) {
+        lock.readLock().lock();
+        try {
+            if (buffer == null) {
+                CompletableFuture<CachingObject> future = new CompletableFuture<>();
+                future.completeExceptionally(notMapped());
+                return future;
+            }
+            int slot = findSlot(key, hash(key));
+            if (slot < 0 || state(slot) != SLOT_LIVE || isExpired(slot)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.completedFuture(decode(slot));
+        } catch (RuntimeException e) {
+            CoreLogger.warning("Could not read " + key + " from " + file, e);
+            return CompletableFuture.completedFuture(null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Look up all keys under one read lock, the returned future is already completed
+     */
+    @Override
+    public CompletableFuture<Map<String, CachingObject>> loadAll(Collection<String> keys) {
+        Map<String, CachingObject> found = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (buffer == null) {
+                CompletableFuture<Map<String, CachingObject>> future = new CompletableFuture<>();
+                future.completeExceptionally(notMapped());
+                return future;
+            }
+            for (String key : keys) {
+                int slot = findSlot(key, hash(key));
+                if (slot < 0 || state(slot) != SLOT_LIVE || isExpired(slot)) {
+                    continue;
+                }
+                try {
+                    CachingObject object = decode(slot);
+                    if (object != null) {
+                        found.put(key, object);
+                    }
+                } catch (RuntimeException e) {
+                    CoreLogger.warning("Could not read " + key + " from " + file + ", it is skipped", e);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return CompletableFuture.completedFuture(found);
+    }
+
+    @Override
+    public CompletableFuture<List<CachingObject>> loadALl() {
+        return CompletableFuture.supplyAsync(() -> {
+            List<CachingObject> list = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                checkMapped();
+                for (int slot = 0; slot < slotCount; slot++) {
+                    if (state(slot) == SLOT_LIVE && !isExpired(slot)) {
+                        try {
+                            CachingObject object = decode(slot);
+                            if (object != null) {
+                                list.add(object);
+                            }
+                        } catch (RuntimeException e) {
+                            CoreLogger.warning("Could not read a record of " + file + ", it is skipped", e);
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return list;
+        }, writer);
+    }
+
+    /**
+     * Returns the amount of live objects in the file
+     *
+     * @return
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            checkMapped();
+            return buffer.getInt(12);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+            channel.close();
+        } catch (IOException e) {
+            CoreLogger.warning("Could not close the cache file " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(String key, CachingObject cachingObject) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("The key " + key.substring(0, 32) + "... is longer than "
+                    + MAX_KEY_BYTES + " bytes");
+        }
+        byte[] payload = codec.encode(cachingObject);
+        int length = 2 + keyBytes.length + payload.length;
+        long expireAt = cachingObject.getExpireAt();
+        long hash = hash(key);
+
+        lock.writeLock().lock();
+        try {
+            checkMapped();
+            long dataStart = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+            boolean mostlyGarbage = buffer.getLong(28) < (buffer.getLong(20) - dataStart) / 2;
+            if (buffer.getInt(16) + 1 > slotCount * MAX_LOAD
+                    || (buffer.getLong(20) + length > buffer.capacity() && mostlyGarbage)) {
+                rebuild();
+            }
+            long offset = buffer.getLong(20);
+            ensureCapacity(offset + length);
+            ByteBuffer data = buffer.duplicate();
+            data.position((int) offset);
+            data.putShort((short) keyBytes.length).put(keyBytes);
+            data.put(payload);
+            buffer.putLong(20, offset + length);
+
+            // The old record stays in the data region until the next rebuild
+            int slot = findSlot(key, hash);
+            if (slot < 0) {
+                slot = freeSlot(hash);
+                buffer.putInt(12, buffer.getInt(12) + 1);
+                if (state(slot) == SLOT_EMPTY) {
+                    buffer.putInt(16, buffer.getInt(16) + 1);
+                }
+            } else {
+                buffer.putLong(28, buffer.getLong(28) - buffer.getInt(slotPosition(slot) + 24));
+            }
+            writeSlot(slot, hash, offset, expireAt, length, SLOT_LIVE);
+            buffer.putLong(28, buffer.getLong(28) + length);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the cache file " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void delete(String key) {
+        lock.writeLock().lock();
+        try {
+            checkMapped();
+            int slot = findSlot(key, hash(key));
+            if (slot >= 0) {
+                buffer.put(slotPosition(slot) + 28, SLOT_DELETED);
+                buffer.putInt(12, buffer.getInt(12) - 1);
+                buffer.putLong(28, buffer.getLong(28) - buffer.getInt(slotPosition(slot) + 24));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the slot that holds the key, or -1
+     */
+    private int findSlot(String key, long hash) {
+        int mask = slotCount - 1;
+        for (int i = 0, slot = (int) (hash & mask); i < slotCount; i++, slot = (slot + 1) & mask) {
+            byte state = state(slot);
+            if (state == SLOT_EMPTY) {
+                return -1;
+            }
+            if (state == SLOT_LIVE && buffer.getLong(slotPosition(slot)) == hash && key.equals(readKey(slot))) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int freeSlot(long hash) {
+        int mask = slotCount - 1;
+        int slot = (int) (hash & mask);
+        while (state(slot) == SLOT_LIVE) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private CachingObject decode(int slot) {
+        int position = slotPosition(slot);
+        int length = buffer.getInt(position + 24);
+        ByteBuffer data = buffer.duplicate();
+        data.position((int) buffer.getLong(position + 8));
+        int keyLength = data.getShort() & 0xFFFF;
+        data.position(data.position() + keyLength);
+        byte[] payload = new byte[length - 2 - keyLength];
+        data.get(payload);
+        return codec.decode(payload, this::resolveType);
+    }
+
+    private String readKey(int slot) {
+        ByteBuffer data = buffer.duplicate();
+        data.position((int) buffer.getLong(slotPosition(slot) + 8));
+        byte[] keyBytes = new byte[data.getShort() & 0xFFFF];
+        data.get(keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean isExpired(int slot) {
+        long expireAt = buffer.getLong(slotPosition(slot) + 16);
+        return expireAt >= 0 && CacheClock.currentTimeMillis() > expireAt;
+    }
+
+    private byte state(int slot) {
+        return buffer.get(slotPosition(slot) + 28);
+    }
+
+    private void writeSlot(int slot, long hash, long offset, long expireAt, int length, byte state) {
+        int position = slotPosition(slot);
+        buffer.putLong(position, hash);
+        buffer.putLong(position + 8, offset);
+        buffer.putLong(position + 16, expireAt);
+        buffer.putInt(position + 24, length);
+        buffer.put(position + 28, state);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        long size = buffer.capacity();
+        while (size < required) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The cache file " + file + " is larger than 2GB");
+        }
+        buffer.force();
+        MappedByteBuffer old = buffer;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        unmap(old);
+    }
+
+    /**
+     * Rewrite the file with only the live records, and twice the slots if more than half of them are live. The new
+     * file holds the live records and room for 64KB more, so the space of the superseded records is given back.
+     */
+    private void rebuild() throws IOException {
+        int live = buffer.getInt(12);
+        int slots = live * 2 > slotCount * MAX_LOAD ? slotCount * 2 : slotCount;
+        File temp = new File(file.getPath() + ".tmp");
+        long now = CacheClock.currentTimeMillis();
+        long liveBytes = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (state(slot) == SLOT_LIVE && !isExpired(slot)) {
+                liveBytes += buffer.getInt(slotPosition(slot) + 24);
+            }
+        }
+        try (FileChannel tempChannel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = HEADER_SIZE + (long) slots * SLOT_SIZE + liveBytes + 64 * 1024;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The cache file " + file + " is larger than 2GB");
+            }
+            MappedByteBuffer target = format(tempChannel, slots, size);
+            long offset = HEADER_SIZE + (long) slots * SLOT_SIZE;
+            int count = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (state(slot) != SLOT_LIVE) {
+                    continue;
+                }
+                int position = slotPosition(slot);
+                long expireAt = buffer.getLong(position + 16);
+                if (expireAt >= 0 && now > expireAt) {
+                    continue;
+                }
+                long hash = buffer.getLong(position);
+                int length = buffer.getInt(position + 24);
+                ByteBuffer record = buffer.duplicate();
+                record.position((int) buffer.getLong(position + 8)).limit((int) buffer.getLong(position + 8) + length);
+                ByteBuffer data = target.duplicate();
+                data.position((int) offset);
+                data.put(record);
+
+                int mask = slots - 1;
+                int targetSlot = (int) (hash & mask);
+                while (target.get(slotPosition(targetSlot) + 28) != SLOT_EMPTY) {
+                    targetSlot = (targetSlot + 1) & mask;
+                }
+                int targetPosition = slotPosition(targetSlot);
+                target.putLong(targetPosition, hash);
+                target.putLong(targetPosition + 8, offset);
+                target.putLong(targetPosition + 16, expireAt);
+                target.putInt(targetPosition + 24, length);
+                target.put(targetPosition + 28, SLOT_LIVE);
+                offset += length;
+                count++;
+            }
+            target.putInt(12, count);
+            target.putInt(16, count);
+            target.putLong(20, offset);
+            target.putLong(28, offset - HEADER_SIZE - (long) slots * SLOT_SIZE);
+            target.force();
+            unmap(target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+
+        buffer.force();
+        // Cleared before it is unmapped, when the file can't be mapped again no call may read the unmapped memory
+        MappedByteBuffer old = buffer;
+        buffer = null;
+        unmap(old);
+        channel.close();
+        boolean moved = false;
+        try {
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            // When the move failed the old file is untouched, it is mapped again so the cache keeps working
+            if (!moved) {
+                Files.deleteIfExists(temp.toPath());
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        slotCount = slots;
+    }
+
+    private void checkMapped() {
+        if (buffer == null) {
+            throw notMapped();
+        }
+    }
+
+    private IllegalStateException notMapped() {
+        return new IllegalStateException("The cache file " + file + " could not be mapped again after a rebuild");
+    }
+
+    /**
+     * Unmap the buffer now instead of when it is garbage collected, the buffer must not be used after this. There is
+     * no public api for it, so it is done through the cleaner of the buffer, or left to the garbage collector when
+     * the running Java version doesn't allow that.
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(mapped);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), mapped);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The mapping is released when the buffer is garbage collected
+        }
+    }
+
+    private static MappedByteBuffer format(FileChannel channel, int slots, long size) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, VERSION);
+        mapped.putInt(8, slots);
+        mapped.putInt(12, 0);
+        mapped.putInt(16, 0);
+        mapped.putLong(20, HEADER_SIZE + (long) slots * SLOT_SIZE);
+        mapped.putLong(28, 0);
+        return mapped;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
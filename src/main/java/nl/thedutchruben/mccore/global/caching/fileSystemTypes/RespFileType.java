@@ -0,0 +1,287 @@
+package nl.thedutchruben.mccore.global.caching.fileSystemTypes;
+
+import nl.thedutchruben.mccore.Mccore;
+import nl.thedutchruben.mccore.global.caching.CachingFileSystem;
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CachingCodec;
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+import nl.thedutchruben.mccore.global.caching.resp.RespClient;
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Stores the caching objects in a server that speaks the Redis protocol, so multiple servers can share one cache.
+ * <p>
+ * Every object is one string value under {@code <namespace><key>}, written by the {@link CachingCodec}. Objects
+ * with an expire date get a matching expiry on the server. Writes are pipelined and spread over a pool of connections
+ * by the {@link RespClient}, batches are sent as one MSET, MGET or DEL per connection. Loading all objects walks the
+ * namespace with SCAN and fetches every page with one MGET.
+ * <p>
+ * The file system is lazy, a server doesn't load the namespace when it starts but reads an object the first time it
+ * is requested. Read with {@link CachingManager#getCachingObjectAsync(String)}, so the main thread never waits for
+ * the network. {@link CachingManager#getCachingObject(String)} only returns objects that are in memory, a miss starts
+ * the load and a later read finds the object. Writes that build on the stored object, like merge and
+ * computeIfAbsent, wait for the load of a key that is not in memory.
+ * <p>
+ * Every server keeps the objects it read or wrote in memory and serves them from there. A write of another server is
+ * seen once the object left the memory of this server: when it expires, is evicted, or is dropped with
+ * {@link CachingManager#evict(String)}. A loaded object is never saved back, so a server never overwrites a newer
+ * write of another server with an object it only read. Give objects that several servers change an expire date, and
+ * evict keys that belong to one server at a time, like the data of a player, when that server lets go of them.
+ */
+public class RespFileType extends CachingFileSystem {
+    private static final int SCAN_COUNT = 512;
+
+    private final CachingCodec codec;
+    private final RespClient client;
+    private final String namespace;
+
+    /**
+     * Connect to a server without a password, the keys are stored under the name of the plugin
+     *
+     * @param host
+     * @param port
+     */
+    public RespFileType(String host, int port) {
+        this(host, port, null, 4, "mccore:" + Mccore.getInstance().getJavaPlugin().getName() + ":");
+    }
+
+    /**
+     * Connect to a server
+     *
+     * @param host
+     * @param port
+     * @param password the password, or null
+     * @param poolSize the amount of connections
+     * @param namespace the prefix of every key, servers with the same namespace share their objects
+     */
+    public RespFileType(String host, int port, String password, int poolSize, String namespace) {
+        this(host, port, password, poolSize, namespace, new BinaryCodec());
+    }
+
+    /**
+     * Connect to a server
+     *
+     * @param host
+     * @param port
+     * @param password the password, or null
+     * @param poolSize the amount of connections
+     * @param namespace the prefix of every key, servers with the same namespace share their objects
+     * @param codec the codec of the stored objects, every server of the namespace must use the same codec
+     */
+    public RespFileType(String host, int port, String password, int poolSize, String namespace,
+                        CachingCodec codec) {
+        this.client = new RespClient(host, port, password, poolSize);
+        this.namespace = namespace;
+        this.codec = codec;
+    }
+
+    @Override
+    public boolean isLazy() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String key, CachingObject cachingObject) {
+        long expireAt = cachingObject.getExpireAt();
+        if (expireAt < 0) {
+            return client.send(key, bytes("SET"), bytes(namespace + key), encode(cachingObject))
+                    .thenApply(reply -> null);
+        }
+        long ttl = expireAt - CacheClock.currentTimeMillis();
+        if (ttl <= 0) {
+            return client.send(key, bytes("DEL"), bytes(namespace + key)).thenApply(reply -> null);
+        }
+        return client.send(key, bytes("SET"), bytes(namespace + key), encode(cachingObject), bytes("PX"),
+                bytes(Long.toString(ttl))).thenApply(reply -> null);
+    }
+
+    /**
+     * Objects without an expire date are written with one MSET per connection, the others need their own SET for
+     * the expiry but are pipelined on the same connection
+     */
+    @Override
+    public CompletableFuture<Void> saveAll(Map<String, CachingObject> cachingObjects) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (List<String> keys : byConnection(cachingObjects.keySet())) {
+            List<byte[]> args = new ArrayList<>();
+            args.add(bytes("MSET"));
+            for (String key : keys) {
+                CachingObject cachingObject = cachingObjects.get(key);
+                if (cachingObject.getExpireAt() < 0) {
+                    args.add(bytes(namespace + key));
+                    args.add(encode(cachingObject));
+                } else {
+                    futures.add(save(key, cachingObject));
+                }
+            }
+            if (args.size() > 1) {
+                futures.add(client.send(keys.get(0), args.toArray(new byte[0][])));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(CachingObject cachingObject) {
+        String key = cachingObject.getKey();
+        return client.send(key, bytes("DEL"), bytes(namespace + key)).thenApply(reply -> null);
+    }
+
+    /**
+     * Remove the objects with one DEL per connection
+     */
+    @Override
+    public CompletableFuture<Void> removeAll(Collection<CachingObject> cachingObjects) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (CachingObject cachingObject : cachingObjects) {
+            keys.add(cachingObject.getKey());
+        }
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (List<String> group : byConnection(keys)) {
+            futures.add(client.send(group.get(0), command("DEL", group)));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    @Override
+    public CompletableFuture<CachingObject> load(String key) {
+        return client.send(key, bytes("GET"), bytes(namespace + key)).thenApply(reply -> decode((byte[]) reply));
+    }
+
+    /**
+     * Fetch the objects with one MGET per connection
+     */
+    @Override
+    public CompletableFuture<Map<String, CachingObject>> loadAll(Collection<String> keys) {
+        Map<String, CachingObject> found = new ConcurrentHashMap<>();
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (List<String> group : byConnection(new LinkedHashSet<>(keys))) {
+            futures.add(client.send(group.get(0), command("MGET", group)).thenAccept(reply -> {
+                List<?> values = (List<?>) reply;
+                for (int i = 0; i < group.size(); i++) {
+                    CachingObject cachingObject = decode((byte[]) values.get(i));
+                    if (cachingObject != null) {
+                        found.put(group.get(i), cachingObject);
+                    }
+                }
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> found);
+    }
+
+    @Override
+    public CompletableFuture<List<CachingObject>> loadALl() {
+        List<CachingObject> list = Collections.synchronizedList(new ArrayList<>());
+        return streamAll(list::add).thenApply(ignored -> list);
+    }
+
+    @Override
+    public CompletableFuture<Void> streamAll(Consumer<CachingObject> consumer) {
+        return scan("0", consumer);
+    }
+
+    /**
+     * Send the queued commands and close the connections
+     */
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    /**
+     * Load one page of keys, the values of the page are fetched while the next page is scanned
+     */
+    private CompletableFuture<Void> scan(String cursor, Consumer<CachingObject> consumer) {
+        return client.command("SCAN", cursor, "MATCH", namespace + "*", "COUNT", Integer.toString(SCAN_COUNT))
+                .thenCompose(reply -> {
+                    List<?> page = (List<?>) reply;
+                    String next = new String((byte[]) page.get(0), StandardCharsets.UTF_8);
+                    List<?> keys = (List<?>) page.get(1);
+                    CompletableFuture<Void> values = keys.isEmpty() ? CompletableFuture.completedFuture(null)
+                            : fetch(keys, consumer);
+                    if (next.equals("0")) {
+                        return values;
+                    }
+                    return CompletableFuture.allOf(values, scan(next, consumer));
+                });
+    }
+
+    private CompletableFuture<Void> fetch(List<?> keys, Consumer<CachingObject> consumer) {
+        byte[][] args = new byte[keys.size() + 1][];
+        args[0] = bytes("MGET");
+        for (int i = 0; i < keys.size(); i++) {
+            args[i + 1] = (byte[]) keys.get(i);
+        }
+        // Decode off the connection thread, so the connection can go on with the next page
+        return client.send(null, args).thenAcceptAsync(reply -> {
+            for (Object value : (List<?>) reply) {
+                CachingObject cachingObject = decode((byte[]) value);
+                if (cachingObject != null) {
+                    consumer.accept(cachingObject);
+                }
+            }
+        });
+    }
+
+    /**
+     * Split the keys by the connection their single key commands are sent on, so a batch stays in order with the
+     * single key commands of the same keys
+     */
+    private Collection<List<String>> byConnection(Collection<String> keys) {
+        Map<Integer, List<String>> groups = new HashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(client.connectionOf(key), connection -> new ArrayList<>()).add(key);
+        }
+        return groups.values();
+    }
+
+    private byte[][] command(String command, List<String> keys) {
+        byte[][] args = new byte[keys.size() + 1][];
+        args[0] = bytes(command);
+        for (int i = 0; i < keys.size(); i++) {
+            args[i + 1] = bytes(namespace + keys.get(i));
+        }
+        return args;
+    }
+
+    private byte[] encode(CachingObject cachingObject) {
+        return codec.encode(cachingObject);
+    }
+
+    /**
+     * Read one stored value, values of unknown classes are skipped
+     *
+     * @param value
+     * @return the object or null if it can't be loaded
+     */
+    private CachingObject decode(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return codec.decode(value, this::resolveType);
+        } catch (RuntimeException e) {
+            CoreLogger.warning("Could not decode an object of the cache server, it is skipped", e);
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+}
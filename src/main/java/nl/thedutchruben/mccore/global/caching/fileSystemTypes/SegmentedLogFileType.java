@@ -0,0 +1,575 @@
+package nl.thedutchruben.mccore.global.caching.fileSystemTypes;
+
+import nl.thedutchruben.mccore.Mccore;
+import nl.thedutchruben.mccore.global.caching.CachingFileSystem;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CachingCodec;
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the caching objects as records that are appended to rolling segment files.
+ * <p>
+ * Every save or remove is one sequential append to the active segment, a batch of them is appended with one write
+ * and one fsync. An in-memory index points every key to its latest record. Once the active segment is full a new
+ * one is started, and a background compaction copies the records that are still live out of the older segments and
+ * deletes them when most of their bytes are superseded or expired. The copies are forced to disk before the old
+ * segments are deleted.
+ * <p>
+ * A torn record at the end of the last segment is cut off when the log is opened. A bad record anywhere else means
+ * the log is corrupt, then every call fails instead of losing the records after it.
+ * <p>
+ * Record layout: {@code [int length][int crc32][byte op][long expireAt][utf key]([int payloadLength][payload])}
+ * The payload is written by the {@link CachingCodec}, the {@link BinaryCodec} by default.
+ * All file access happens on one thread, so the segments never need locking.
+ */
+public class SegmentedLogFileType extends CachingFileSystem {
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final double COMPACTION_RATIO = 0.5;
+
+    private final CachingCodec codec;
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final ScheduledExecutorService executor;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<String, Location> index = new HashMap<>();
+    private Segment activeSegment;
+    private IOException corruption;
+
+    public SegmentedLogFileType() {
+        this(new File(Mccore.getInstance().getJavaPlugin().getDataFolder(), "caching-log"), 8 * 1024 * 1024);
+    }
+
+    /**
+     * Create a log store
+     *
+     * @param directory the directory the segments are stored in
+     * @param maxSegmentBytes the size after which a new segment is started
+     */
+    public SegmentedLogFileType(File directory, long maxSegmentBytes) {
+        this(directory, maxSegmentBytes, new BinaryCodec());
+    }
+
+    /**
+     * Create a log store
+     *
+     * @param directory the directory the segments are stored in
+     * @param maxSegmentBytes the size after which a new segment is started
+     * @param codec the codec of the stored objects
+     */
+    public SegmentedLogFileType(File directory, long maxSegmentBytes, CachingCodec codec) {
+        this.directory = directory;
+        this.codec = codec;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mccore-cache-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.execute(this::recover);
+        this.executor.scheduleWithFixedDelay(this::compactIfNeeded, 5, 5, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String key, CachingObject cachingObject) {
+        return CompletableFuture.runAsync(() -> append(key, cachingObject), executor);
+    }
+
+    /**
+     * Append the records of all objects with one write
+     */
+    @Override
+    public CompletableFuture<Void> saveAll(Map<String, CachingObject> cachingObjects) {
+        return CompletableFuture.runAsync(() -> appendAll(cachingObjects), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(CachingObject cachingObject) {
+        return CompletableFuture.runAsync(() -> append(cachingObject.getKey(), null), executor);
+    }
+
+    /**
+     * Append the tombstones of all objects with one write
+     */
+    @Override
+    public CompletableFuture<Void> removeAll(Collection<CachingObject> cachingObjects) {
+        Map<String, CachingObject> removes = new LinkedHashMap<>();
+        for (CachingObject cachingObject : cachingObjects) {
+            removes.put(cachingObject.getKey(), null);
+        }
+        return CompletableFuture.runAsync(() -> appendAll(removes), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<CachingObject>> loadALl() {
+        return CompletableFuture.supplyAsync(() -> {
+            checkRecovered();
+            List<CachingObject> list = new ArrayList<>();
+            long now = CacheClock.currentTimeMillis();
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                if (entry.getValue().isExpired(now)) {
+                    continue;
+                }
+                CachingObject object = read(entry.getValue());
+                if (object != null) {
+                    list.add(object);
+                }
+            }
+            return list;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<CachingObject> load(String key) {
+        return CompletableFuture.supplyAsync(() -> {
+            checkRecovered();
+            Location location = index.get(key);
+            if (location == null || location.isExpired(CacheClock.currentTimeMillis())) {
+                return null;
+            }
+            return read(location);
+        }, executor);
+    }
+
+    /**
+     * Read the records of all keys in the order they are stored in, so the segments are read in one forward pass
+     */
+    @Override
+    public CompletableFuture<Map<String, CachingObject>> loadAll(Collection<String> keys) {
+        return CompletableFuture.supplyAsync(() -> {
+            checkRecovered();
+            long now = CacheClock.currentTimeMillis();
+            List<Map.Entry<String, Location>> locations = new ArrayList<>();
+            for (String key : keys) {
+                Location location = index.get(key);
+                if (location != null && !location.isExpired(now)) {
+                    locations.add(new AbstractMap.SimpleImmutableEntry<>(key, location));
+                }
+            }
+            locations.sort(Comparator.comparingInt((Map.Entry<String, Location> entry) -> entry.getValue().segment)
+                    .thenComparingLong(entry -> entry.getValue().offset));
+            Map<String, CachingObject> found = new HashMap<>();
+            for (Map.Entry<String, Location> entry : locations) {
+                CachingObject object = read(entry.getValue());
+                if (object != null) {
+                    found.put(entry.getKey(), object);
+                }
+            }
+            return found;
+        }, executor);
+    }
+
+    /**
+     * Copy the live records out of all full segments and delete them, regardless of how much of them is superseded
+     *
+     * @return
+     */
+    public CompletableFuture<Void> compact() {
+        return CompletableFuture.runAsync(() -> {
+            checkRecovered();
+            compact(true);
+        }, executor);
+    }
+
+    @Override
+    public void close() {
+        executor.execute(() -> {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fail the call when the log could not be recovered, so nothing is written over or compacted away
+     */
+    private void checkRecovered() {
+        if (corruption != null) {
+            throw new IllegalStateException("The cache log in " + directory + " is corrupt", corruption);
+        }
+    }
+
+    private void append(String key, CachingObject cachingObject) {
+        appendAll(Collections.singletonMap(key, cachingObject));
+    }
+
+    /**
+     * Append the records of the writes to the active segment with one write, a null object is a remove. The index
+     * is only updated once the records are written. An object that can't be encoded fails the call after the other
+     * records are written.
+     */
+    private void appendAll(Map<String, CachingObject> writes) {
+        checkRecovered();
+        RuntimeException failure = null;
+        List<String> keys = new ArrayList<>();
+        List<byte[]> records = new ArrayList<>();
+        for (Map.Entry<String, CachingObject> write : writes.entrySet()) {
+            if (write.getValue() == null && !index.containsKey(write.getKey())) {
+                continue;
+            }
+            try {
+                records.add(encode(write.getKey(), write.getValue()));
+                keys.add(write.getKey());
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+            }
+        }
+        if (!records.isEmpty()) {
+            try {
+                write(keys, records, writes);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not append to the cache log in " + directory, e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Write the encoded records as one block and point the index to them once they are written
+     */
+    private void write(List<String> keys, List<byte[]> records, Map<String, CachingObject> writes)
+            throws IOException {
+        int segmentCount = segments.size();
+        if (activeSegment == null || activeSegment.size >= maxSegmentBytes) {
+            roll();
+        }
+        Segment segment = activeSegment;
+        int total = 0;
+        for (byte[] record : records) {
+            total += record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (byte[] record : records) {
+            buffer.put(record);
+        }
+        buffer.flip();
+        long start = segment.size;
+        while (buffer.hasRemaining()) {
+            segment.channel.write(buffer, start + buffer.position());
+        }
+        segment.size += total;
+        segment.channel.force(false);
+
+        long offset = start;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            int length = records.get(i).length;
+            Location previous = index.remove(key);
+            if (previous != null) {
+                segments.get(previous.segment).liveBytes -= previous.length;
+            }
+            CachingObject cachingObject = writes.get(key);
+            if (cachingObject != null) {
+                index.put(key, new Location(segment.id, offset, length, expireAt(cachingObject)));
+                segment.liveBytes += length;
+            }
+            offset += length;
+        }
+        if (segments.size() != segmentCount) {
+            compactIfNeeded();
+        }
+    }
+
+    private Location write(byte[] record, long expireAt) throws IOException {
+        if (activeSegment == null || activeSegment.size >= maxSegmentBytes) {
+            roll();
+        }
+        Segment segment = activeSegment;
+        long offset = segment.size;
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            segment.channel.write(buffer, segment.size + buffer.position());
+        }
+        segment.size += record.length;
+        return new Location(segment.id, offset, record.length, expireAt);
+    }
+
+    private void roll() throws IOException {
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        activeSegment = new Segment(id, new File(directory, String.format("segment-%08d.log", id)));
+        segments.put(id, activeSegment);
+    }
+
+    private void compactIfNeeded() {
+        if (corruption == null) {
+            compact(false);
+        }
+    }
+
+    private void compact(boolean force) {
+        long total = 0;
+        long live = 0;
+        List<Segment> sealed = new ArrayList<>();
+        Set<Integer> sealedIds = new HashSet<>();
+        for (Segment segment : segments.values()) {
+            if (segment != activeSegment) {
+                sealed.add(segment);
+                sealedIds.add(segment.id);
+                total += segment.size;
+                live += segment.liveBytes;
+            }
+        }
+        if (sealed.isEmpty() || (!force && live > total * (1 - COMPACTION_RATIO))) {
+            return;
+        }
+
+        long now = CacheClock.currentTimeMillis();
+        try {
+            List<Map.Entry<String, Location>> moved = new ArrayList<>();
+            Iterator<Map.Entry<String, Location>> iterator = index.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Location> entry = iterator.next();
+                if (!sealedIds.contains(entry.getValue().segment)) {
+                    continue;
+                }
+                if (entry.getValue().isExpired(now)) {
+                    iterator.remove();
+                } else {
+                    moved.add(entry);
+                }
+            }
+            for (Map.Entry<String, Location> entry : moved) {
+                Location location = entry.getValue();
+                Location copy = write(readRaw(location), location.expireAt);
+                entry.setValue(copy);
+                segments.get(copy.segment).liveBytes += copy.length;
+            }
+            // The copies may have rolled into new segments, they must all be on disk before an original is deleted
+            for (Segment segment : segments.values()) {
+                if (!sealedIds.contains(segment.id)) {
+                    segment.channel.force(false);
+                }
+            }
+            // Oldest first, so a crash never leaves a tombstone deleted while an older put still exists
+            for (Segment segment : sealed) {
+                segment.close();
+                segments.remove(segment.id);
+                if (!segment.file.delete()) {
+                    segment.file.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            CoreLogger.warning("Could not compact the segments in " + directory, e);
+        }
+    }
+
+    private void recover() {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".log"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            try {
+                int id = Integer.parseInt(file.getName().substring(8, file.getName().length() - 4));
+                segments.put(id, new Segment(id, file));
+            } catch (NumberFormatException | IOException e) {
+                CoreLogger.warning("Could not open the segment " + file + ", it is skipped", e);
+            }
+        }
+        for (Segment segment : segments.values()) {
+            try {
+                scan(segment);
+            } catch (IOException e) {
+                CoreLogger.severe("The segments in " + directory + " are damaged", e);
+                corruption = e;
+                return;
+            }
+        }
+        if (!segments.isEmpty()) {
+            activeSegment = segments.lastEntry().getValue();
+        }
+    }
+
+    private void scan(Segment segment) throws IOException {
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= segment.size) {
+            header.clear();
+            readFully(segment.channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length <= 0 || position + HEADER_SIZE + length > segment.size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(segment.channel, body, position + HEADER_SIZE);
+            if (checksum(body.array(), 0, length) != crc) {
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()));
+            byte op = in.readByte();
+            long expireAt = in.readLong();
+            String key = in.readUTF();
+            int recordLength = HEADER_SIZE + length;
+
+            Location previous = index.remove(key);
+            if (previous != null) {
+                segments.get(previous.segment).liveBytes -= previous.length;
+            }
+            if (op == OP_PUT) {
+                index.put(key, new Location(segment.id, position, recordLength, expireAt));
+                segment.liveBytes += recordLength;
+            }
+            position += recordLength;
+        }
+        if (position < segment.size) {
+            if (segment.id != segments.lastKey()) {
+                // Only the last append can be torn, a bad record in an older segment is real damage
+                throw new IOException("The segment " + segment.file + " has a bad record at byte " + position);
+            }
+            // A torn write at the end of the last segment, drop it so the next append starts on a record boundary
+            segment.channel.truncate(position);
+            segment.size = position;
+        }
+    }
+
+    private CachingObject read(Location location) {
+        try {
+            byte[] record = readRaw(location);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, HEADER_SIZE,
+                    record.length - HEADER_SIZE));
+            in.readByte();
+            in.readLong();
+            in.readUTF();
+            int payloadLength = in.readInt();
+            if (payloadLength < 0 || payloadLength > in.available()) {
+                return null;
+            }
+            byte[] payload = new byte[payloadLength];
+            in.readFully(payload);
+            return codec.decode(payload, this::resolveType);
+        } catch (IOException | RuntimeException e) {
+            CoreLogger.warning("Could not read a record of the segment " + location.segment, e);
+            return null;
+        }
+    }
+
+    private byte[] readRaw(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        readFully(segments.get(location.segment).channel, buffer, location.offset);
+        return buffer.array();
+    }
+
+    private byte[] encode(String key, CachingObject cachingObject) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(cachingObject == null ? OP_DELETE : OP_PUT);
+        out.writeLong(expireAt(cachingObject));
+        out.writeUTF(key);
+        if (cachingObject != null) {
+            byte[] payload = codec.encode(cachingObject);
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+        byte[] record = bytes.toByteArray();
+        int length = record.length - HEADER_SIZE;
+        ByteBuffer.wrap(record).putInt(length).putInt(checksum(record, HEADER_SIZE, length));
+        return record;
+    }
+
+    private static long expireAt(CachingObject cachingObject) {
+        return cachingObject == null ? -1 : cachingObject.getExpireAt();
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final File file;
+        private final FileChannel channel;
+        private long size;
+        private long liveBytes;
+
+        private Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                CoreLogger.warning("Could not close the segment " + file, e);
+            }
+        }
+    }
+
+    private static final class Location {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final long expireAt;
+
+        private Location(int segment, long offset, int length, long expireAt) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt >= 0 && now > expireAt;
+        }
+    }
+}
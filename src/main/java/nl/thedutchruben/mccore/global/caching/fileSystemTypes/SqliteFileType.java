@@ -0,0 +1,335 @@
+package nl.thedutchruben.mccore.global.caching.fileSystemTypes;
+
+import nl.thedutchruben.mccore.Mccore;
+import nl.thedutchruben.mccore.global.caching.CachingFileSystem;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CachingCodec;
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Stores the caching objects in an SQLite database file, with the driver that is bundled with the server.
+ * <p>
+ * Every object is one row: {@code caching_objects(cache_key TEXT PRIMARY KEY, expire_at INTEGER, data BLOB)}, the
+ * data is written by the {@link CachingCodec}, the {@link BinaryCodec} by default. All statements run on one thread
+ * with one connection and statements that are prepared once. A batch of saves or removes is one transaction, loading
+ * all objects walks a cursor over the table instead of reading it into a list first. Expired rows are deleted every
+ * five minutes.
+ * <p>
+ * The core doesn't shade a driver, this backend only works on servers that bundle {@code org.sqlite.JDBC}, like
+ * Spigot and Paper. On other servers the constructor throws an {@link IllegalStateException}, use the
+ * {@link MappedFileType} there. The tests run against the test scoped sqlite-jdbc dependency.
+ */
+public class SqliteFileType extends CachingFileSystem {
+    private static final int MAX_PARAMETERS = 500;
+
+    private final CachingCodec codec;
+    private final ScheduledExecutorService executor;
+    private final Connection connection;
+    private final PreparedStatement upsert;
+    private final PreparedStatement delete;
+    private final PreparedStatement select;
+    private final PreparedStatement deleteExpired;
+    private PreparedStatement selectChunk;
+
+    public SqliteFileType() {
+        this(new File(Mccore.getInstance().getJavaPlugin().getDataFolder(), "caching.db"));
+    }
+
+    /**
+     * Open or create a database file
+     *
+     * @param file the database file
+     */
+    public SqliteFileType(File file) {
+        this(file, new BinaryCodec());
+    }
+
+    /**
+     * Open or create a database file
+     *
+     * @param file the database file
+     * @param codec the codec of the stored objects
+     */
+    public SqliteFileType(File file, CachingCodec codec) {
+        this.codec = codec;
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The SQLite driver is not available", e);
+        }
+        try {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            this.connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                // The journal lets a crash roll back a half written batch, NORMAL only syncs it at checkpoints
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=NORMAL");
+                statement.execute("CREATE TABLE IF NOT EXISTS caching_objects (cache_key TEXT PRIMARY KEY, "
+                        + "expire_at INTEGER NOT NULL, data BLOB NOT NULL)");
+                statement.execute("CREATE INDEX IF NOT EXISTS caching_objects_expire_at "
+                        + "ON caching_objects (expire_at)");
+            }
+            connection.setAutoCommit(false);
+            this.upsert = connection.prepareStatement(
+                    "INSERT OR REPLACE INTO caching_objects (cache_key, expire_at, data) VALUES (?, ?, ?)");
+            this.delete = connection.prepareStatement("DELETE FROM caching_objects WHERE cache_key = ?");
+            this.select = connection.prepareStatement(
+                    "SELECT data, expire_at FROM caching_objects WHERE cache_key = ?");
+            this.deleteExpired = connection.prepareStatement(
+                    "DELETE FROM caching_objects WHERE expire_at >= 0 AND expire_at < ?");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not open the cache database " + file, e);
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mccore-cache-sqlite");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::deleteExpired, 5, 5, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String key, CachingObject cachingObject) {
+        return saveAll(Collections.singletonMap(key, cachingObject));
+    }
+
+    /**
+     * Write all objects in one transaction
+     */
+    @Override
+    public CompletableFuture<Void> saveAll(Map<String, CachingObject> cachingObjects) {
+        return CompletableFuture.runAsync(() -> transaction(() -> {
+            for (Map.Entry<String, CachingObject> entry : cachingObjects.entrySet()) {
+                upsert.setString(1, entry.getKey());
+                upsert.setLong(2, entry.getValue().getExpireAt());
+                upsert.setBytes(3, codec.encode(entry.getValue()));
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+            return null;
+        }), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(CachingObject cachingObject) {
+        return removeAll(Collections.singletonList(cachingObject));
+    }
+
+    /**
+     * Remove all objects in one transaction
+     */
+    @Override
+    public CompletableFuture<Void> removeAll(Collection<CachingObject> cachingObjects) {
+        return CompletableFuture.runAsync(() -> transaction(() -> {
+            for (CachingObject cachingObject : cachingObjects) {
+                delete.setString(1, cachingObject.getKey());
+                delete.addBatch();
+            }
+            delete.executeBatch();
+            return null;
+        }), executor);
+    }
+
+    @Override
+    public CompletableFuture<CachingObject> load(String key) {
+        return CompletableFuture.supplyAsync(() -> transaction(() -> {
+            select.setString(1, key);
+            try (ResultSet resultSet = select.executeQuery()) {
+                return resultSet.next() ? decode(resultSet) : null;
+            }
+        }), executor);
+    }
+
+    /**
+     * Look up the keys with one query per 500 keys, the query of a full chunk is prepared once
+     */
+    @Override
+    public CompletableFuture<Map<String, CachingObject>> loadAll(Collection<String> keys) {
+        List<String> list = new ArrayList<>(keys);
+        return CompletableFuture.supplyAsync(() -> transaction(() -> {
+            Map<String, CachingObject> found = new HashMap<>();
+            for (int start = 0; start < list.size(); start += MAX_PARAMETERS) {
+                List<String> chunk = list.subList(start, Math.min(list.size(), start + MAX_PARAMETERS));
+                boolean full = chunk.size() == MAX_PARAMETERS;
+                if (full && selectChunk == null) {
+                    selectChunk = prepareSelect(MAX_PARAMETERS);
+                }
+                PreparedStatement statement = full ? selectChunk : prepareSelect(chunk.size());
+                try {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setString(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            CachingObject cachingObject = decode(resultSet);
+                            if (cachingObject != null) {
+                                found.put(resultSet.getString(3), cachingObject);
+                            }
+                        }
+                    }
+                } finally {
+                    if (!full) {
+                        statement.close();
+                    }
+                }
+            }
+            return found;
+        }), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<CachingObject>> loadALl() {
+        List<CachingObject> list = new ArrayList<>();
+        return streamAll(list::add).thenApply(ignored -> list);
+    }
+
+    /**
+     * Walk a cursor over the table, every row is decoded and handed to the consumer before the next one is read
+     */
+    @Override
+    public CompletableFuture<Void> streamAll(Consumer<CachingObject> consumer) {
+        return CompletableFuture.runAsync(() -> transaction(() -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT data, expire_at FROM caching_objects WHERE expire_at < 0 OR expire_at >= ?")) {
+                statement.setLong(1, CacheClock.currentTimeMillis());
+                statement.setFetchSize(256);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        CachingObject cachingObject = decode(resultSet);
+                        if (cachingObject != null) {
+                            consumer.accept(cachingObject);
+                        }
+                    }
+                }
+            }
+            return null;
+        }), executor);
+    }
+
+    /**
+     * Finish the queued statements and close the database
+     */
+    @Override
+    public void close() {
+        executor.execute(() -> {
+            try {
+                upsert.close();
+                delete.close();
+                select.close();
+                deleteExpired.close();
+                if (selectChunk != null) {
+                    selectChunk.close();
+                }
+                connection.close();
+            } catch (SQLException e) {
+                CoreLogger.warning("Could not close the cache database", e);
+            }
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private PreparedStatement prepareSelect(int keys) throws SQLException {
+        return connection.prepareStatement("SELECT data, expire_at, cache_key FROM caching_objects WHERE cache_key IN ("
+                + String.join(", ", Collections.nCopies(keys, "?")) + ")");
+    }
+
+    private void deleteExpired() {
+        try {
+            transaction(() -> {
+                deleteExpired.setLong(1, CacheClock.currentTimeMillis());
+                return deleteExpired.executeUpdate();
+            });
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the repeating task
+            CoreLogger.warning("Could not delete the expired rows of the cache database", e);
+        }
+    }
+
+    /**
+     * Run the statements in one transaction, it is rolled back when one of them fails. Reads are committed too, so
+     * the connection doesn't keep an old snapshot of the database open.
+     */
+    private <T> T transaction(SqlTask<T> task) {
+        try {
+            T result = task.run();
+            connection.commit();
+            return result;
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            throw new IllegalStateException("Could not access the cache database", e);
+        } catch (RuntimeException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            throw e;
+        } finally {
+            clearBatches();
+        }
+    }
+
+    private void clearBatches() {
+        try {
+            upsert.clearBatch();
+            delete.clearBatch();
+        } catch (SQLException e) {
+            CoreLogger.warning("Could not clear the batches of the cache database", e);
+        }
+    }
+
+    /**
+     * Read the object of the current row, rows of unknown classes and expired rows are skipped
+     *
+     * @param resultSet a row with the data and the expire time as the first two columns
+     * @return the object or null if it can't be loaded
+     */
+    private CachingObject decode(ResultSet resultSet) throws SQLException {
+        long expireAt = resultSet.getLong(2);
+        if (expireAt >= 0 && CacheClock.currentTimeMillis() > expireAt) {
+            return null;
+        }
+        try {
+            return codec.decode(resultSet.getBytes(1), this::resolveType);
+        } catch (RuntimeException e) {
+            CoreLogger.warning("Could not decode a row of the cache database, it is skipped", e);
+            return null;
+        }
+    }
+
+    private interface SqlTask<T> {
+        T run() throws SQLException;
+    }
+}
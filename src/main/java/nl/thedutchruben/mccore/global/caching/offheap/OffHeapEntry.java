@@ -0,0 +1,111 @@
+package nl.thedutchruben.mccore.global.caching.offheap;
+
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+
+import java.util.Date;
+
+/**
+ * The handle of an object that is stored off the heap. It only holds the key, the dates and where the serialized
+ * object is, the {@link nl.thedutchruben.mccore.global.caching.CachingManager} decodes the object when it is read.
+ */
+public final class OffHeapEntry extends CachingObject {
+    private final transient OffHeapStore store;
+    final transient Class<? extends CachingObject> type;
+    private final String key;
+    private final boolean persistent;
+    private final long createTime;
+    private final long expireTime;
+    private final long timeToIdle;
+    final long address;
+    final int length;
+    boolean released;
+
+    OffHeapEntry(OffHeapStore store, String key, CachingObject object, long address, int length) {
+        this.store = store;
+        this.type = object.getClass();
+        this.key = key;
+        this.persistent = Boolean.TRUE.equals(object.isPersistent());
+        Date createDate = object.getCreateDate();
+        this.createTime = createDate == null ? -1 : createDate.getTime();
+        this.expireTime = object.getExpireAt();
+        this.timeToIdle = object.getTimeToIdleMillis();
+        this.address = address;
+        this.length = length;
+    }
+
+    /**
+     * Decode the stored object
+     *
+     * @return the object, or null if the entry is released in the meantime
+     */
+    public CachingObject decode() {
+        return store.load(this);
+    }
+
+    /**
+     * Returns true if the object is a decoded copy of this entry, it is compared by its serialized form
+     *
+     * @param object
+     * @return
+     */
+    public boolean isCopy(CachingObject object) {
+        return store.contentEquals(this, object);
+    }
+
+    public OffHeapStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the size of the serialized object in bytes
+     *
+     * @return
+     */
+    public int getSize() {
+        return length;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public Boolean isPersistent() {
+        return persistent;
+    }
+
+    @Override
+    public Date getCreateDate() {
+        return createTime < 0 ? null : new Date(createTime);
+    }
+
+    @Override
+    public Date getExpireDate() {
+        return expireTime < 0 ? null : new Date(expireTime);
+    }
+
+    @Override
+    public long getExpireAt() {
+        return expireTime;
+    }
+
+    @Override
+    public long getTimeToIdleMillis() {
+        return timeToIdle;
+    }
+
+    @Override
+    public Object getData() {
+        CachingObject object = decode();
+        return object == null ? null : object.getData();
+    }
+
+    @Override
+    public void saveToDisk() {
+        CachingObject object = decode();
+        if (object != null) {
+            object.saveToDisk();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package nl.thedutchruben.mccore.global.caching.offheap;
+
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CachingCodec;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Keeps serialized caching objects in direct memory, so large values don't fill the old generation of the heap.
+ * <p>
+ * Only objects of at least the minimum size are moved off the heap, small objects cost less as they are.
+ * When the store is full, or an object is larger than a slab, {@link #store(String, CachingObject)} returns null and
+ * the object stays on the heap.
+ * <p>
+ * Reads don't block each other, they copy the bytes under an optimistic stamp and only take the read lock when a
+ * write happened during the copy. Allocating and freeing take the write lock.
+ */
+public class OffHeapStore {
+    private final CachingCodec codec;
+    private final SlabAllocator allocator;
+    private final StampedLock lock = new StampedLock();
+    private final int minValueBytes;
+
+    /**
+     * Create a store with slabs of 1 MB
+     *
+     * @param capacityBytes the maximum amount of direct memory
+     * @param minValueBytes the minimum serialized size of an object that is moved off the heap
+     */
+    public OffHeapStore(long capacityBytes, int minValueBytes) {
+        this(capacityBytes, 1024 * 1024, minValueBytes);
+    }
+
+    /**
+     * Create a store
+     *
+     * @param capacityBytes the maximum amount of direct memory
+     * @param slabSize the size of one slab, also the largest object that can be stored
+     * @param minValueBytes the minimum serialized size of an object that is moved off the heap
+     */
+    public OffHeapStore(long capacityBytes, int slabSize, int minValueBytes) {
+        this(capacityBytes, slabSize, minValueBytes, new BinaryCodec());
+    }
+
+    /**
+     * Create a store
+     *
+     * @param capacityBytes the maximum amount of direct memory
+     * @param slabSize the size of one slab, also the largest object that can be stored
+     * @param minValueBytes the minimum encoded size of an object that is moved off the heap
+     * @param codec the codec of the stored objects
+     */
+    public OffHeapStore(long capacityBytes, int slabSize, int minValueBytes, CachingCodec codec) {
+        this.codec = codec;
+        this.allocator = new SlabAllocator(slabSize, (int) Math.max(1, capacityBytes / slabSize));
+        this.minValueBytes = minValueBytes;
+    }
+
+    /**
+     * Serialize the object into direct memory
+     *
+     * @param key
+     * @param object
+     * @return the handle, or null if the object should stay on the heap
+     */
+    public OffHeapEntry store(String key, CachingObject object) {
+        byte[] data = codec.encode(object);
+        if (data.length < minValueBytes || data.length > allocator.getMaxValueSize()) {
+            return null;
+        }
+        long stamp = lock.writeLock();
+        try {
+            long address = allocator.allocate(data.length);
+            if (address < 0) {
+                return null;
+            }
+            allocator.write(address, data);
+            return new OffHeapEntry(this, key, object, address, data.length);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Decode the object of the handle
+     *
+     * @param entry
+     * @return the object, or null if the handle is released
+     */
+    public CachingObject load(OffHeapEntry entry) {
+        byte[] data = read(entry);
+        return data == null ? null : codec.decode(data, name -> entry.type);
+    }
+
+    /**
+     * Returns true if the object serializes to the same bytes as the object of the handle
+     *
+     * @param entry
+     * @param object
+     * @return
+     */
+    public boolean contentEquals(OffHeapEntry entry, CachingObject object) {
+        if (object == null || object.getClass() != entry.type) {
+            return false;
+        }
+        byte[] data = codec.encode(object);
+        return data.length == entry.length && Arrays.equals(data, read(entry));
+    }
+
+    private byte[] read(OffHeapEntry entry) {
+        byte[] data = new byte[entry.length];
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            if (entry.released) {
+                return null;
+            }
+            allocator.read(entry.address, data);
+            if (lock.validate(stamp)) {
+                return data;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            if (entry.released) {
+                return null;
+            }
+            allocator.read(entry.address, data);
+            return data;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Free the memory of the handle, the handle can't be decoded after this
+     *
+     * @param entry
+     */
+    public void release(OffHeapEntry entry) {
+        long stamp = lock.writeLock();
+        try {
+            if (!entry.released) {
+                entry.released = true;
+                allocator.free(entry.address, entry.length);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int getMinValueBytes() {
+        return minValueBytes;
+    }
+
+    /**
+     * Returns the bytes of direct memory that hold objects
+     *
+     * @return
+     */
+    public long getUsedBytes() {
+        long stamp = lock.readLock();
+        try {
+            return allocator.getUsedBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the bytes of direct memory that are allocated, used or free
+     *
+     * @return
+     */
+    public long getReservedBytes() {
+        long stamp = lock.readLock();
+        try {
+            return allocator.getReservedBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public long getCapacityBytes() {
+        return allocator.getCapacityBytes();
+    }
+}
@@ -0,0 +1,199 @@
+package nl.thedutchruben.mccore.global.caching.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Hands out chunks of direct memory from a fixed amount of slabs.
+ * <p>
+ * Every request is rounded up to a size class, the classes grow by 25% from 64 bytes up to the slab size. A freed
+ * chunk goes on the free list of its class and is handed out again for the next value of that class. New chunks are
+ * cut from the end of the newest slab, and a new slab is only allocated when that one is full. Slabs are never given
+ * back, so the direct memory of the allocator only grows up to its maximum.
+ * <p>
+ * An address holds the slab index in the upper 32 bits and the offset in the lower 32 bits.
+ * The allocator is not thread safe, the {@link OffHeapStore} locks around it.
+ */
+public class SlabAllocator {
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25;
+
+    private final int slabSize;
+    private final ByteBuffer[] slabs;
+    private final int[] chunkSizes;
+    private final LongStack[] freeLists;
+    private int slabCount;
+    private int slabPosition;
+    private long usedBytes;
+
+    /**
+     * Create an allocator, the slabs are allocated when they are needed
+     *
+     * @param slabSize the size of one slab, also the largest value that can be stored
+     * @param maxSlabs the maximum amount of slabs
+     */
+    public SlabAllocator(int slabSize, int maxSlabs) {
+        if (slabSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("The slab size must be at least " + MIN_CHUNK_SIZE + " bytes");
+        }
+        this.slabSize = slabSize;
+        this.slabs = new ByteBuffer[Math.max(1, maxSlabs)];
+        int[] sizes = new int[64];
+        int count = 0;
+        int size = MIN_CHUNK_SIZE;
+        while (size < slabSize) {
+            if (count == sizes.length) {
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            sizes[count++] = size;
+            size = Math.max(size + 8, ((int) (size * GROWTH_FACTOR) + 7) & ~7);
+        }
+        sizes = Arrays.copyOf(sizes, count + 1);
+        sizes[count] = slabSize;
+        this.chunkSizes = sizes;
+        this.freeLists = new LongStack[sizes.length];
+        for (int i = 0; i < freeLists.length; i++) {
+            freeLists[i] = new LongStack();
+        }
+    }
+
+    /**
+     * Allocate a chunk that fits the size
+     *
+     * @param size the amount of bytes
+     * @return the address, or -1 if the size is larger than a slab or all slabs are in use
+     */
+    public long allocate(int size) {
+        int sizeClass = sizeClass(size);
+        if (sizeClass < 0) {
+            return -1;
+        }
+        int chunkSize = chunkSizes[sizeClass];
+        LongStack freeList = freeLists[sizeClass];
+        if (!freeList.isEmpty()) {
+            usedBytes += chunkSize;
+            return freeList.pop();
+        }
+        if (slabCount == 0 || slabPosition + chunkSize > slabSize) {
+            if (slabCount == slabs.length) {
+                return -1;
+            }
+            if (slabCount > 0) {
+                freeRemainder();
+            }
+            slabs[slabCount++] = ByteBuffer.allocateDirect(slabSize);
+            slabPosition = 0;
+        }
+        long address = address(slabCount - 1, slabPosition);
+        slabPosition += chunkSize;
+        usedBytes += chunkSize;
+        return address;
+    }
+
+    /**
+     * Give a chunk back
+     *
+     * @param address the address returned by {@link #allocate(int)}
+     * @param size the size that was allocated
+     */
+    public void free(long address, int size) {
+        int sizeClass = sizeClass(size);
+        freeLists[sizeClass].push(address);
+        usedBytes -= chunkSizes[sizeClass];
+    }
+
+    public void write(long address, byte[] data) {
+        ByteBuffer buffer = slabs[(int) (address >>> 32)].duplicate();
+        buffer.position((int) address);
+        buffer.put(data);
+    }
+
+    public void read(long address, byte[] target) {
+        ByteBuffer buffer = slabs[(int) (address >>> 32)].duplicate();
+        buffer.position((int) address);
+        buffer.get(target);
+    }
+
+    /**
+     * Returns the size of the chunk a value of the size is stored in
+     *
+     * @param size
+     * @return the chunk size, or -1 if the size is larger than a slab
+     */
+    public int getChunkSize(int size) {
+        int sizeClass = sizeClass(size);
+        return sizeClass < 0 ? -1 : chunkSizes[sizeClass];
+    }
+
+    public int getMaxValueSize() {
+        return slabSize;
+    }
+
+    /**
+     * Returns the bytes of the chunks that are in use
+     *
+     * @return
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns the bytes of direct memory that are allocated
+     *
+     * @return
+     */
+    public long getReservedBytes() {
+        return (long) slabCount * slabSize;
+    }
+
+    public long getCapacityBytes() {
+        return (long) slabs.length * slabSize;
+    }
+
+    /**
+     * Cut the rest of the full slab into the largest chunks that fit, so it is not lost
+     */
+    private void freeRemainder() {
+        int sizeClass = chunkSizes.length - 1;
+        while (slabSize - slabPosition >= MIN_CHUNK_SIZE) {
+            while (chunkSizes[sizeClass] > slabSize - slabPosition) {
+                sizeClass--;
+            }
+            freeLists[sizeClass].push(address(slabCount - 1, slabPosition));
+            slabPosition += chunkSizes[sizeClass];
+        }
+    }
+
+    private int sizeClass(int size) {
+        if (size > slabSize) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(chunkSizes, size);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static long address(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static final class LongStack {
+        private long[] values = new long[16];
+        private int size;
+
+        private void push(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private long pop() {
+            return values[--size];
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package nl.thedutchruben.mccore.global.caching.resp;
+
+import nl.thedutchruben.mccore.utils.CoreLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small client for servers that speak the Redis protocol, like Redis, KeyDB or Valkey.
+ * <p>
+ * The client keeps a pool of connections, each with its own thread and queue. Commands are queued and a thread sends
+ * everything that is waiting in its queue in one pipeline before it reads the replies, so a burst of writes costs one
+ * round trip instead of one per command. Commands with the same route key always use the same connection, so they
+ * are executed in the order they were sent.
+ */
+public class RespClient implements Closeable {
+    private static final int MAX_PIPELINE = 512;
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int timeoutMillis;
+    private final Worker[] workers;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Create a client, the connections are opened when they are first used
+     *
+     * @param host
+     * @param port
+     * @param password the password for AUTH, or null
+     * @param poolSize the amount of connections
+     */
+    public RespClient(String host, int port, String password, int poolSize) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.timeoutMillis = 5000;
+        this.workers = new Worker[Math.max(1, poolSize)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Send a command on the connection of the route key
+     *
+     * @param routeKey commands with the same route key are executed in order, null picks any connection
+     * @param args the command and its arguments
+     * @return a future that completes with the reply, or fails with a {@link RespException}
+     */
+    public CompletableFuture<Object> send(String routeKey, byte[]... args) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new RespException("The client is closed"));
+            return future;
+        }
+        int index = routeKey == null ? Math.floorMod(next.getAndIncrement(), workers.length) : connectionOf(routeKey);
+        workers[index].queue.add(new Request(args, future));
+        return future;
+    }
+
+    /**
+     * Returns the connection a route key is sent on, keys with the same connection can share one command
+     *
+     * @param routeKey
+     * @return the index of the connection
+     */
+    public int connectionOf(String routeKey) {
+        return Math.floorMod(routeKey.hashCode(), workers.length);
+    }
+
+    /**
+     * Send a command with only string arguments on any connection
+     *
+     * @param args the command and its arguments
+     * @return a future that completes with the reply
+     */
+    public CompletableFuture<Object> command(String... args) {
+        byte[][] bytes = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            bytes[i] = RespProtocol.bytes(args[i]);
+        }
+        return send(null, bytes);
+    }
+
+    /**
+     * Send the queued commands and close the connections
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            try {
+                worker.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final class Worker extends Thread {
+        private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+
+        private Worker(int index) {
+            super("mccore-cache-resp-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Request> batch = new ArrayList<>();
+            while (!closed || !queue.isEmpty()) {
+                Request first;
+                try {
+                    first = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (first == null) {
+                    continue;
+                }
+                batch.clear();
+                batch.add(first);
+                queue.drainTo(batch, MAX_PIPELINE - 1);
+                execute(batch);
+            }
+            Request request;
+            while ((request = queue.poll()) != null) {
+                request.future.completeExceptionally(new RespException("The client is closed"));
+            }
+            disconnect();
+        }
+
+        private void execute(List<Request> batch) {
+            int replied = 0;
+            try {
+                connect();
+                for (Request request : batch) {
+                    RespProtocol.writeCommand(out, request.args);
+                }
+                out.flush();
+                for (Request request : batch) {
+                    Object reply = RespProtocol.read(in);
+                    replied++;
+                    if (reply instanceof RespException) {
+                        request.future.completeExceptionally((RespException) reply);
+                    } else {
+                        request.future.complete(reply);
+                    }
+                }
+            } catch (IOException | RespException e) {
+                // The replies of the rest of the pipeline are lost, the next batch opens a new connection
+                disconnect();
+                RespException failure = new RespException("Connection to " + host + ":" + port + " failed", e);
+                for (int i = replied; i < batch.size(); i++) {
+                    batch.get(i).future.completeExceptionally(failure);
+                }
+            }
+        }
+
+        private void connect() throws IOException {
+            if (socket != null) {
+                return;
+            }
+            Socket socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMillis);
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            if (password != null) {
+                RespProtocol.writeCommand(out, new byte[][]{RespProtocol.bytes("AUTH"), RespProtocol.bytes(password)});
+                out.flush();
+                Object reply = RespProtocol.read(in);
+                if (reply instanceof RespException) {
+                    throw (RespException) reply;
+                }
+            }
+        }
+
+        private void disconnect() {
+            if (socket == null) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                CoreLogger.warning("Could not close the connection to the cache server", e);
+            }
+            socket = null;
+            in = null;
+            out = null;
+        }
+    }
+
+    private static final class Request {
+        private final byte[][] args;
+        private final CompletableFuture<Object> future;
+
+        private Request(byte[][] args, CompletableFuture<Object> future) {
+            this.args = args;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package nl.thedutchruben.mccore.global.caching.resp;
+
+/**
+ * An error reply of the server, or a broken connection
+ */
+public class RespException extends RuntimeException {
+
+    public RespException(String message) {
+        super(message);
+    }
+
+    public RespException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
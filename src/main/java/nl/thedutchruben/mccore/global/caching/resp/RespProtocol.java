@@ -0,0 +1,154 @@
+package nl.thedutchruben.mccore.global.caching.resp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the Redis serialization protocol (RESP2), shared by the {@link RespClient} and the stand-in
+ * server of the tests.
+ * <p>
+ * Replies are mapped to java types: simple strings to {@link String}, integers to {@link Long}, bulk strings to
+ * {@code byte[]}, arrays to {@link List} and nil to null. An error reply is returned as a {@link RespException},
+ * it is not thrown because the other replies of a pipeline still have to be read.
+ */
+final class RespProtocol {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private RespProtocol() {
+    }
+
+    /**
+     * Write a command as an array of bulk strings
+     */
+    static void writeCommand(OutputStream out, byte[][] args) throws IOException {
+        out.write('*');
+        writeNumber(out, args.length);
+        for (byte[] arg : args) {
+            writeBulk(out, arg);
+        }
+    }
+
+    /**
+     * Write a reply, the types are the same as the ones {@link #read(InputStream)} returns
+     */
+    static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write(new byte[]{'$', '-', '1', '\r', '\n'});
+        } else if (reply instanceof RespException) {
+            out.write('-');
+            out.write(((RespException) reply).getMessage().getBytes(StandardCharsets.UTF_8));
+            out.write(CRLF);
+        } else if (reply instanceof String) {
+            out.write('+');
+            out.write(((String) reply).getBytes(StandardCharsets.UTF_8));
+            out.write(CRLF);
+        } else if (reply instanceof Long) {
+            out.write(':');
+            writeNumber(out, (Long) reply);
+        } else if (reply instanceof byte[]) {
+            writeBulk(out, (byte[]) reply);
+        } else if (reply instanceof List) {
+            List<?> list = (List<?>) reply;
+            out.write('*');
+            writeNumber(out, list.size());
+            for (Object element : list) {
+                writeReply(out, element);
+            }
+        } else {
+            throw new IllegalArgumentException("Can't write a reply of type " + reply.getClass().getName());
+        }
+    }
+
+    /**
+     * Read one value
+     *
+     * @throws EOFException if the stream ended before the value
+     */
+    static Object read(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            throw new EOFException();
+        }
+        switch (type) {
+            case '+':
+                return readLine(in);
+            case '-':
+                return new RespException(readLine(in));
+            case ':':
+                return Long.parseLong(readLine(in));
+            case '$': {
+                int length = Integer.parseInt(readLine(in));
+                if (length < 0) {
+                    return null;
+                }
+                byte[] data = new byte[length];
+                int read = 0;
+                while (read < length) {
+                    int count = in.read(data, read, length - read);
+                    if (count == -1) {
+                        throw new EOFException();
+                    }
+                    read += count;
+                }
+                readLine(in);
+                return data;
+            }
+            case '*': {
+                int length = Integer.parseInt(readLine(in));
+                if (length < 0) {
+                    return null;
+                }
+                List<Object> list = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            }
+            default:
+                throw new IOException("Unknown RESP type " + (char) type);
+        }
+    }
+
+    static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String string(Object reply) {
+        if (reply instanceof byte[]) {
+            return new String((byte[]) reply, StandardCharsets.UTF_8);
+        }
+        return reply == null ? null : reply.toString();
+    }
+
+    private static void writeBulk(OutputStream out, byte[] data) throws IOException {
+        out.write('$');
+        writeNumber(out, data.length);
+        out.write(data);
+        out.write(CRLF);
+    }
+
+    private static void writeNumber(OutputStream out, long number) throws IOException {
+        out.write(Long.toString(number).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new EOFException();
+            }
+            builder.append((char) c);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("Missing line feed in RESP line");
+        }
+        return builder.toString();
+    }
+}
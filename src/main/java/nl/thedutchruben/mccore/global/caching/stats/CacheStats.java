@@ -0,0 +1,125 @@
+package nl.thedutchruben.mccore.global.caching.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the hits, misses, loads and evictions of a cache.
+ * <p>
+ * Every counter is a {@link LongAdder}, threads increment their own cell so the reading threads don't fight over
+ * one counter. The getters add the cells up, so a value read while other threads record can be slightly behind.
+ */
+public class CacheStats {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final LongAdder[] removals = new LongAdder[RemovalCause.values().length];
+    private final LoadTimeHistogram loadTimes = new LoadTimeHistogram();
+
+    public CacheStats() {
+        for (int i = 0; i < removals.length; i++) {
+            removals[i] = new LongAdder();
+        }
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Record a load that returned an object
+     *
+     * @param nanos the time the load took
+     */
+    public void recordLoadSuccess(long nanos) {
+        loadSuccesses.increment();
+        totalLoadNanos.add(nanos);
+        loadTimes.record(nanos);
+    }
+
+    /**
+     * Record a load that failed or found nothing
+     *
+     * @param nanos the time the load took
+     */
+    public void recordLoadFailure(long nanos) {
+        loadFailures.increment();
+        totalLoadNanos.add(nanos);
+        loadTimes.record(nanos);
+    }
+
+    public void recordRemoval(RemovalCause cause) {
+        removals[cause.ordinal()].increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the part of the requests that was a hit, 1 if there were no requests
+     *
+     * @return
+     */
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long requests = hitCount + getMissCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccesses.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Returns the average time of a load in nanoseconds
+     *
+     * @return
+     */
+    public double getAverageLoadNanos() {
+        long loads = getLoadSuccessCount() + getLoadFailureCount();
+        return loads == 0 ? 0.0 : (double) totalLoadNanos.sum() / loads;
+    }
+
+    public LoadTimeHistogram getLoadTimes() {
+        return loadTimes;
+    }
+
+    /**
+     * Returns how many entries left the cache for the cause
+     *
+     * @param cause
+     * @return
+     */
+    public long getRemovalCount(RemovalCause cause) {
+        return removals[cause.ordinal()].sum();
+    }
+
+    /**
+     * Set all counters back to 0
+     */
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        loadSuccesses.reset();
+        loadFailures.reset();
+        totalLoadNanos.reset();
+        for (LongAdder removal : removals) {
+            removal.reset();
+        }
+        loadTimes.reset();
+    }
+}
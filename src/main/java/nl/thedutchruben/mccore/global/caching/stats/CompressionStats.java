@@ -0,0 +1,165 @@
+package nl.thedutchruben.mccore.global.caching.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what the compression of the stored entries costs and saves.
+ * <p>
+ * Every encoded entry is recorded with its size before and after compression and the time it took, entries below the
+ * threshold and entries that didn't get smaller are counted apart. The ratio of every compressed entry goes in a
+ * bucket per tenth, so a few large entries that compress well can be told apart from many that barely do. Like
+ * {@link CacheStats} every counter is a {@link LongAdder}.
+ */
+public class CompressionStats {
+    private static final int RATIO_BUCKETS = 10;
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder incompressible = new LongAdder();
+    private final LongAdder originalBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressed = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+    private final LongAdder[] ratios = new LongAdder[RATIO_BUCKETS];
+
+    public CompressionStats() {
+        for (int i = 0; i < RATIO_BUCKETS; i++) {
+            ratios[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record an entry that is stored compressed
+     *
+     * @param original the size before compression
+     * @param stored the size after compression
+     * @param nanos the time the compression took
+     */
+    public void recordCompressed(int original, int stored, long nanos) {
+        compressed.increment();
+        originalBytes.add(original);
+        storedBytes.add(stored);
+        compressNanos.add(nanos);
+        ratios[Math.min(RATIO_BUCKETS - 1, (int) ((long) stored * RATIO_BUCKETS / original))].increment();
+    }
+
+    /**
+     * Record an entry below the threshold, it is stored as it is
+     *
+     * @param size
+     */
+    public void recordSkipped(int size) {
+        skipped.increment();
+        originalBytes.add(size);
+        storedBytes.add(size);
+    }
+
+    /**
+     * Record an entry that didn't get smaller, it is stored as it is
+     *
+     * @param size
+     * @param nanos the time the attempt took
+     */
+    public void recordIncompressible(int size, long nanos) {
+        incompressible.increment();
+        originalBytes.add(size);
+        storedBytes.add(size);
+        compressNanos.add(nanos);
+    }
+
+    /**
+     * Record a compressed entry that is read back
+     *
+     * @param nanos the time the decompression took
+     */
+    public void recordDecompressed(long nanos) {
+        decompressed.increment();
+        decompressNanos.add(nanos);
+    }
+
+    public long getCompressedCount() {
+        return compressed.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    public long getIncompressibleCount() {
+        return incompressible.sum();
+    }
+
+    public long getDecompressedCount() {
+        return decompressed.sum();
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes.sum();
+    }
+
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    /**
+     * Returns the stored bytes divided by the original bytes of all entries, 1 if nothing is recorded
+     *
+     * @return
+     */
+    public double getCompressionRatio() {
+        long original = getOriginalBytes();
+        return original == 0 ? 1.0 : (double) getStoredBytes() / original;
+    }
+
+    /**
+     * Returns the average time of a compression in nanoseconds, the attempts that didn't get smaller included
+     *
+     * @return
+     */
+    public double getAverageCompressNanos() {
+        long count = getCompressedCount() + getIncompressibleCount();
+        return count == 0 ? 0.0 : (double) compressNanos.sum() / count;
+    }
+
+    /**
+     * Returns the average time of a decompression in nanoseconds
+     *
+     * @return
+     */
+    public double getAverageDecompressNanos() {
+        long count = getDecompressedCount();
+        return count == 0 ? 0.0 : (double) decompressNanos.sum() / count;
+    }
+
+    /**
+     * Returns the amount of compressed entries per ratio, bucket n holds the entries that were compressed to less
+     * than (n + 1) tenths of their size
+     *
+     * @return
+     */
+    public long[] getRatioCounts() {
+        long[] counts = new long[RATIO_BUCKETS];
+        for (int i = 0; i < RATIO_BUCKETS; i++) {
+            counts[i] = ratios[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Set all counters back to 0
+     */
+    public void reset() {
+        compressed.reset();
+        skipped.reset();
+        incompressible.reset();
+        originalBytes.reset();
+        storedBytes.reset();
+        compressNanos.reset();
+        decompressed.reset();
+        decompressNanos.reset();
+        for (LongAdder ratio : ratios) {
+            ratio.reset();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package nl.thedutchruben.mccore.global.caching.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts load times in buckets that double in size, bucket n holds the loads that took less than 2^n microseconds.
+ * Recording is one striped increment, so it can be called from every loading thread without contention.
+ */
+public class LoadTimeHistogram {
+    private static final int BUCKETS = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    public LoadTimeHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record one load
+     *
+     * @param nanos the time the load took
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+    }
+
+    /**
+     * Returns the upper bound of the bucket that holds the percentile
+     *
+     * @param percentile between 0 and 1, 0.99 for the 99th percentile
+     * @return the load time in microseconds, 0 if nothing is recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, target)) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    /**
+     * Returns the count of every bucket
+     *
+     * @return
+     */
+    public long[] getCounts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package nl.thedutchruben.mccore.global.caching.stats;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Estimates the heap used by the entries of a cache.
+ * <p>
+ * Walking the object graph of every value is too slow for a command, so only a sample of the entries is measured and
+ * the average is multiplied by the size. A value is measured by the length of its json, which is close enough to
+ * compare regions and to see the cache grow.
+ */
+public final class MemoryEstimator {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final int SAMPLE_SIZE = 64;
+    /**
+     * The map node, the entry holder and the headers of the key string and its array
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private MemoryEstimator() {
+    }
+
+    /**
+     * Estimate the bytes used by the entries of the map
+     *
+     * @param map
+     * @return the estimated bytes
+     */
+    public static long estimate(Map<String, ?> map) {
+        int size = map.size();
+        if (size == 0) {
+            return 0;
+        }
+        long sampled = 0;
+        int count = 0;
+        Iterator<? extends Map.Entry<String, ?>> iterator = map.entrySet().iterator();
+        while (count < SAMPLE_SIZE && iterator.hasNext()) {
+            Map.Entry<String, ?> entry = iterator.next();
+            sampled += ENTRY_OVERHEAD + stringBytes(entry.getKey()) + valueBytes(entry.getValue());
+            count++;
+        }
+        return count == 0 ? 0 : sampled * size / count;
+    }
+
+    private static long valueBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return 16 + stringBytes(GSON.toJson(value));
+        } catch (RuntimeException e) {
+            // Values gson can't walk are counted as an empty object
+            return 16;
+        }
+    }
+
+    private static long stringBytes(String string) {
+        return 40 + 2L * string.length();
+    }
+}
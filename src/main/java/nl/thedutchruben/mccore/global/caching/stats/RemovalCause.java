@@ -0,0 +1,19 @@
+package nl.thedutchruben.mccore.global.caching.stats;
+
+/**
+ * The reason an entry left the cache
+ */
+public enum RemovalCause {
+    /**
+     * Removed by the plugin
+     */
+    EXPLICIT,
+    /**
+     * Removed because it was expired
+     */
+    EXPIRED,
+    /**
+     * Evicted from memory because the cache exceeded its maximum size or weight
+     */
+    SIZE
+}
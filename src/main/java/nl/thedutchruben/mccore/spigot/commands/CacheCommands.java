@@ -0,0 +1,105 @@
+package nl.thedutchruben.mccore.spigot.commands;
+
+import nl.thedutchruben.mccore.Mccore;
+import nl.thedutchruben.mccore.global.caching.CacheRegion;
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.DiskTier;
+import nl.thedutchruben.mccore.global.caching.offheap.OffHeapStore;
+import nl.thedutchruben.mccore.global.caching.stats.CacheStats;
+import nl.thedutchruben.mccore.global.caching.stats.LoadTimeHistogram;
+import nl.thedutchruben.mccore.global.caching.stats.RemovalCause;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+/**
+ * Admin commands to look into the cache, added to a plugin command with {@link Mccore#registerCacheCommands(String)}
+ * <p>
+ * /command cache stats [region] - Show the statistics of the cache or of one region
+ * /command cache reset - Set all counters back to 0
+ */
+@SubCommandGroup(value = "cache", description = "Cache statistics", permission = "mccore.cache")
+public class CacheCommands {
+
+    @SubCommand(subCommand = "stats", description = "Show the cache statistics", permission = "mccore.cache.stats",
+            usage = "[cacheregion]", minParams = 0, maxParams = 1)
+    public void stats(CommandSender sender, List<String> args) {
+        CachingManager cachingManager = Mccore.getInstance().getCachingManager();
+        if (args.isEmpty()) {
+            sendStats(sender, "cache", cachingManager.getStats(), cachingManager.getKeys().size(),
+                    cachingManager.estimateMemory());
+            OffHeapStore offHeapStore = cachingManager.getOffHeapStore();
+            if (offHeapStore != null) {
+                sendLine(sender, "Off heap", formatBytes(offHeapStore.getUsedBytes()) + " used, "
+                        + formatBytes(offHeapStore.getReservedBytes()) + " of "
+                        + formatBytes(offHeapStore.getCapacityBytes()) + " allocated");
+            }
+            DiskTier diskTier = cachingManager.getDiskTier();
+            if (diskTier != null) {
+                sendLine(sender, "Disk tier", diskTier.size() + " entries, " + diskTier.getDemotionCount()
+                        + " demoted, " + diskTier.getPromotionCount() + " promoted");
+            }
+            for (CacheRegion<?> region : cachingManager.getRegions()) {
+                sender.sendMessage(ChatColor.GOLD + " region " + ChatColor.WHITE + region.getName()
+                        + ChatColor.GRAY + " : " + ChatColor.WHITE + region.size() + " entries, "
+                        + formatPercent(region.getStats().getHitRate()) + " hits, "
+                        + formatBytes(region.estimateMemory()));
+            }
+            return;
+        }
+        for (CacheRegion<?> region : cachingManager.getRegions()) {
+            if (region.getName().equalsIgnoreCase(args.get(0))) {
+                sendStats(sender, "region " + region.getName(), region.getStats(), region.size(),
+                        region.estimateMemory());
+                return;
+            }
+        }
+        sender.sendMessage(ChatColor.RED + "Can't find the region " + ChatColor.DARK_RED + args.get(0));
+    }
+
+    @SubCommand(subCommand = "reset", description = "Reset the cache statistics", permission = "mccore.cache.reset")
+    public void reset(CommandSender sender, List<String> args) {
+        CachingManager cachingManager = Mccore.getInstance().getCachingManager();
+        cachingManager.getStats().reset();
+        for (CacheRegion<?> region : cachingManager.getRegions()) {
+            region.getStats().reset();
+        }
+        sender.sendMessage(ChatColor.GREEN + "The cache statistics are reset.");
+    }
+
+    private void sendStats(CommandSender sender, String name, CacheStats stats, int size, long memory) {
+        LoadTimeHistogram loadTimes = stats.getLoadTimes();
+        sender.sendMessage(ChatColor.GOLD + "----------" + ChatColor.WHITE + " Stats : " + name + ChatColor.GOLD
+                + " ----------");
+        sendLine(sender, "Entries", size + " (~" + formatBytes(memory) + ")");
+        sendLine(sender, "Hits", stats.getHitCount() + " (" + formatPercent(stats.getHitRate()) + ")");
+        sendLine(sender, "Misses", String.valueOf(stats.getMissCount()));
+        sendLine(sender, "Loads", stats.getLoadSuccessCount() + " ok, " + stats.getLoadFailureCount() + " failed");
+        sendLine(sender, "Load time", String.format("avg %.2fms, p50 <%dms, p99 <%dms",
+                stats.getAverageLoadNanos() / 1_000_000.0,
+                Math.max(1, loadTimes.getPercentileMicros(0.5) / 1000),
+                Math.max(1, loadTimes.getPercentileMicros(0.99) / 1000)));
+        sendLine(sender, "Removed", stats.getRemovalCount(RemovalCause.EXPLICIT) + " explicit, "
+                + stats.getRemovalCount(RemovalCause.EXPIRED) + " expired, "
+                + stats.getRemovalCount(RemovalCause.SIZE) + " size");
+    }
+
+    private void sendLine(CommandSender sender, String label, String value) {
+        sender.sendMessage(ChatColor.GOLD + label + ChatColor.GRAY + " : " + ChatColor.WHITE + value);
+    }
+
+    private String formatPercent(double rate) {
+        return String.format("%.1f%%", rate * 100);
+    }
+
+    private String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
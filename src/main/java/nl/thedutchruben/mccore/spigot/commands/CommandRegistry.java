@@ -155,6 +155,25 @@ public class CommandRegistry implements CommandExecutor, TabCompleter {
         commandMap.put(commandAnnotation.command(), tdrCommand);
     }
 
+    /**
+     * Add a sub command group to a command that is already registered, used for the built in commands of the core
+     * like {@link CacheCommands}
+     *
+     * @param command the name of the command
+     * @param groupClass the class annotated with {@link SubCommandGroup}
+     * @throws IllegalArgumentException if the command is not registered or the class is not a sub command group
+     */
+    public void registerSubCommandGroup(String command, Class<?> groupClass) throws InstantiationException, IllegalAccessException {
+        TdrCommand tdrCommand = commandMap.get(command);
+        if (tdrCommand == null) {
+            throw new IllegalArgumentException("The command " + command + " is not registered");
+        }
+        if (!groupClass.isAnnotationPresent(SubCommandGroup.class)) {
+            throw new IllegalArgumentException(groupClass.getName() + " is not annotated with @SubCommandGroup");
+        }
+        processSubCommandGroup(groupClass, tdrCommand);
+    }
+
     private void processSubCommandGroup(Class<?> nestedClass, TdrCommand tdrCommand) throws InstantiationException, IllegalAccessException {
         SubCommandGroup groupAnnotation = nestedClass.getAnnotation(SubCommandGroup.class);
         Object groupInstance = nestedClass.newInstance();
@@ -0,0 +1,258 @@
+package nl.thedutchruben.mccore.spigot.session;
+
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.utils.CoreLogger;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps the cached data of a player in memory while the player is online.
+ * <p>
+ * The data is loaded during the {@link AsyncPlayerPreLoginEvent}, which runs on a login thread, so the main thread
+ * never waits for the disk when the player joins. The loaded objects are stored in the {@link CachingManager} and
+ * pinned, so the eviction leaves them alone. When the player quits the persistent objects are handed to the
+ * {@link nl.thedutchruben.mccore.global.caching.WriteBehindQueue}, and the pins are released once they are written.
+ * Objects that are already in memory when the player joins are newer than the saved ones and are kept.
+ * <pre>
+ * PlayerSessionCache sessions = new PlayerSessionCache(cachingManager,
+ *         uuid -> profileStore.loadProfiles(uuid));
+ * sessions.register(plugin);
+ * </pre>
+ * Call {@link #close()} in the onDisable of the plugin, quit events are not received anymore once it is disabled.
+ */
+public class PlayerSessionCache implements Listener {
+    private final CachingManager cachingManager;
+    private final Function<UUID, CompletableFuture<? extends Collection<? extends CachingObject>>> loader;
+    private final ConcurrentMap<UUID, Session> sessions = new ConcurrentHashMap<>();
+    private long loadTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+    private String loadFailedMessage = "Your data could not be loaded, please try again.";
+
+    /**
+     * Create a session cache
+     *
+     * @param cachingManager the manager the objects are stored in
+     * @param loader loads all objects of a player, the future may complete with an empty collection for a new player
+     */
+    public PlayerSessionCache(CachingManager cachingManager,
+                              Function<UUID, CompletableFuture<? extends Collection<? extends CachingObject>>> loader) {
+        this.cachingManager = cachingManager;
+        this.loader = loader;
+    }
+
+    /**
+     * Listen to the login and quit events of the server
+     *
+     * @param plugin
+     */
+    public void register(JavaPlugin plugin) {
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Load the objects of the player before the login continues, the player is not let in when the load fails
+     */
+    @EventHandler(priority = EventPriority.LOW)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        try {
+            load(event.getUniqueId()).get(loadTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            CoreLogger.warning("Could not load the session of " + event.getUniqueId() + ", the login is refused", e);
+            release(event.getUniqueId());
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, loadFailedMessage);
+        }
+    }
+
+    /**
+     * Release the objects when another plugin refused the login after they are loaded
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLoginResult(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            release(event.getUniqueId());
+        }
+    }
+
+    /**
+     * Release the objects when the server refused the login, like when it is full or the player is not whitelisted
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            release(event.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        release(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Load the objects of the player and pin them, a player that has a session already gets the objects added to it
+     *
+     * @param uuid
+     * @return a future that completes when the objects are stored
+     */
+    public CompletableFuture<Void> load(UUID uuid) {
+        Session session = sessions.computeIfAbsent(uuid, u -> new Session());
+        return loader.apply(uuid).thenAccept(objects -> {
+            if (objects == null) {
+                return;
+            }
+            for (CachingObject object : objects) {
+                cachingManager.putIfAbsent(object.getKey(), object);
+                // A load that finishes after its login was refused stores the objects without pinning them
+                session.add(object.getKey());
+            }
+        });
+    }
+
+    /**
+     * Add an object to the session of the player, it is stored, saved when the player quits and pinned until then
+     *
+     * @param uuid
+     * @param object
+     */
+    public void add(UUID uuid, CachingObject object) {
+        cachingManager.addCachingObject(object.getKey(), object);
+        while (!sessions.computeIfAbsent(uuid, u -> new Session()).add(object.getKey())) {
+            // The session is released in the meantime, start a new one
+        }
+    }
+
+    /**
+     * Save the persistent objects of the session and release the pins once they are written
+     *
+     * @param uuid
+     * @return a future that completes when the objects are written
+     */
+    public CompletableFuture<Void> release(UUID uuid) {
+        Session session = sessions.remove(uuid);
+        if (session == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> released = session.release();
+        enqueueSaves(released);
+        return cachingManager.getWriteBehindQueue().flushAsync().whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                CoreLogger.warning("Could not save the session of " + uuid, throwable);
+            }
+            released.forEach(cachingManager::unpin);
+        });
+    }
+
+    /**
+     * Returns the keys of the objects in the session of the player
+     *
+     * @param uuid
+     * @return the keys, empty if the player has no session
+     */
+    public Set<String> getKeys(UUID uuid) {
+        Session session = sessions.get(uuid);
+        return session == null ? Collections.emptySet() : session.getKeys();
+    }
+
+    public boolean hasSession(UUID uuid) {
+        return sessions.containsKey(uuid);
+    }
+
+    /**
+     * Set how long a login waits for the objects of the player before it is refused
+     *
+     * @param duration
+     * @param unit
+     */
+    public void setLoadTimeout(long duration, TimeUnit unit) {
+        this.loadTimeoutMillis = unit.toMillis(duration);
+    }
+
+    /**
+     * Set the message a player gets when the objects could not be loaded
+     *
+     * @param loadFailedMessage
+     */
+    public void setLoadFailedMessage(String loadFailedMessage) {
+        this.loadFailedMessage = loadFailedMessage;
+    }
+
+    /**
+     * Queue the saves of all sessions and release them, the writes are finished by
+     * {@link CachingManager#shutdown()}. Call it in the onDisable of the plugin before the manager is shut down.
+     */
+    public void close() {
+        for (UUID uuid : new ArrayList<>(sessions.keySet())) {
+            Session session = sessions.remove(uuid);
+            if (session != null) {
+                List<String> released = session.release();
+                enqueueSaves(released);
+                released.forEach(cachingManager::unpin);
+            }
+        }
+    }
+
+    private void enqueueSaves(Collection<String> keys) {
+        for (String key : keys) {
+            CachingObject object = cachingManager.getCachingObject(key);
+            if (object != null && object.isPersistent()) {
+                cachingManager.getWriteBehindQueue().enqueueSave(key, object);
+            }
+        }
+    }
+
+    /**
+     * The pinned keys of one login of a player
+     */
+    private final class Session {
+        private final Set<String> keys = new HashSet<>();
+        private boolean released;
+
+        /**
+         * Pin the key for this session
+         *
+         * @return false if the session is already released
+         */
+        private synchronized boolean add(String key) {
+            if (released) {
+                return false;
+            }
+            if (keys.add(key)) {
+                cachingManager.pin(key);
+            }
+            return true;
+        }
+
+        /**
+         * Close the session, the caller releases the pins of the returned keys
+         */
+        private synchronized List<String> release() {
+            released = true;
+            return new ArrayList<>(keys);
+        }
+
+        private synchronized Set<String> getKeys() {
+            return new HashSet<>(keys);
+        }
+    }
+}
@@ -2,11 +2,13 @@ package nl.thedutchruben.mccore.utils;
 
 import nl.thedutchruben.mccore.Mccore;
 import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class CoreLogger {
+    private static final Logger FALLBACK_LOGGER = Logger.getLogger("TDRMCore");
 
     public static void log(String message){
-        Mccore.getInstance().getJavaPlugin().getLogger().info("[TDRMCore] " + message);
+        logger().info("[TDRMCore] " + message);
     }
 
     /**
@@ -14,7 +16,7 @@ public class CoreLogger {
      * @param message The message to log
      */
     public static void info(String message) {
-        Mccore.getInstance().getJavaPlugin().getLogger().info("[TDRMCore] " + message);
+        logger().info("[TDRMCore] " + message);
     }
 
     /**
@@ -22,7 +24,16 @@ public class CoreLogger {
      * @param message The message to log
      */
     public static void warning(String message) {
-        Mccore.getInstance().getJavaPlugin().getLogger().warning("[TDRMCore] " + message);
+        logger().warning("[TDRMCore] " + message);
+    }
+
+    /**
+     * Log a warning message with the exception that caused it
+     * @param message The message to log
+     * @param throwable The cause
+     */
+    public static void warning(String message, Throwable throwable) {
+        logger().log(Level.WARNING, "[TDRMCore] " + message, throwable);
     }
 
     /**
@@ -30,7 +41,16 @@ public class CoreLogger {
      * @param message The message to log
      */
     public static void severe(String message) {
-        Mccore.getInstance().getJavaPlugin().getLogger().severe("[TDRMCore] " + message);
+        logger().severe("[TDRMCore] " + message);
+    }
+
+    /**
+     * Log a severe error message with the exception that caused it
+     * @param message The message to log
+     * @param throwable The cause
+     */
+    public static void severe(String message, Throwable throwable) {
+        logger().log(Level.SEVERE, "[TDRMCore] " + message, throwable);
     }
 
     /**
@@ -39,6 +59,17 @@ public class CoreLogger {
      */
     public static void debug(String message) {
         // You can add a config check here to only show debug messages when enabled
-        Mccore.getInstance().getJavaPlugin().getLogger().log(Level.FINE, "[TDRMCore] " + message);
+        logger().log(Level.FINE, "[TDRMCore] " + message);
+    }
+
+    /**
+     * Returns the logger of the plugin, or a plain logger when no plugin is running, like in the tests
+     */
+    private static Logger logger() {
+        Mccore mccore = Mccore.getInstance();
+        if (mccore == null || mccore.getJavaPlugin() == null || mccore.getJavaPlugin().getLogger() == null) {
+            return FALLBACK_LOGGER;
+        }
+        return mccore.getJavaPlugin().getLogger();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.SegmentedLogFileType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkOperationsTest extends TempDirectoryFixture {
+
+    @Test
+    void testPutAllIsSavedInOneBatch() {
+        MappedFileType fileType = new MappedFileType(new File(directory, "cache.dat"), 64);
+        CachingManager cachingManager = new CachingManager(fileType);
+        cachingManager.putAll(TestObject.objects(100));
+        assertEquals(100, cachingManager.size());
+        assertEquals(100, cachingManager.getWriteBehindQueue().getPendingCount());
+
+        cachingManager.flush();
+        assertEquals(100, fileType.size());
+        assertEquals("value42", fileType.load("key42").join().getData());
+        cachingManager.shutdown();
+    }
+
+    @Test
+    void testGetAllLoadsMissingKeysFromALazyFileSystem() {
+        MappedFileType fileType = new MappedFileType(new File(directory, "cache.dat"), 64);
+        fileType.saveAll(TestObject.objects(100)).join();
+        CachingManager cachingManager = new CachingManager(fileType);
+        cachingManager.putIfAbsent("memory", new TestObject("memory", "in memory"));
+
+        Map<String, CachingObject> found = cachingManager.getAll(Arrays.asList("key1", "key50", "memory", "missing"));
+
+        assertEquals(3, found.size());
+        assertEquals("value50", found.get("key50").getData());
+        assertEquals("in memory", found.get("memory").getData());
+        assertTrue(cachingManager.getKeys().contains("key1"));
+        assertEquals(3, cachingManager.getStats().getHitCount());
+        assertEquals(1, cachingManager.getStats().getMissCount());
+        cachingManager.shutdown();
+    }
+
+    @Test
+    void testInvalidateAllRemovesFromTheFileSystem() {
+        MappedFileType fileType = new MappedFileType(new File(directory, "cache.dat"), 64);
+        CachingManager cachingManager = new CachingManager(fileType);
+        cachingManager.putAll(TestObject.objects(10));
+        cachingManager.flush();
+
+        assertEquals(3, cachingManager.invalidateAll(Arrays.asList("key1", "key2", "key3", "missing")));
+        cachingManager.flush();
+
+        assertEquals(7, cachingManager.size());
+        assertEquals(7, fileType.size());
+        assertNull(fileType.load("key2").join());
+        cachingManager.shutdown();
+    }
+
+    @Test
+    void testSegmentedLogBatchesSurviveARestart() {
+        File logDirectory = new File(directory, "log");
+        SegmentedLogFileType fileType = new SegmentedLogFileType(logDirectory, 1024 * 1024);
+        fileType.saveAll(TestObject.objects(200)).join();
+        List<CachingObject> removes = new ArrayList<>();
+        removes.add(new TestObject("key0", null));
+        removes.add(new TestObject("missing", null));
+        fileType.removeAll(removes).join();
+        fileType.close();
+
+        SegmentedLogFileType reopened = new SegmentedLogFileType(logDirectory, 1024 * 1024);
+        Map<String, CachingObject> loaded = reopened.loadAll(Arrays.asList("key0", "key1", "key199")).join();
+        assertEquals(2, loaded.size());
+        assertEquals("value199", loaded.get("key199").getData());
+        assertEquals(199, reopened.loadALl().join().size());
+        reopened.close();
+    }
+
+    @Test
+    void testBatchedSavesStoreTheSameAsSingleSaves() {
+        Map<String, CachingObject> objects = TestObject.objects(1000);
+        MappedFileType single = new MappedFileType(new File(directory, "single.dat"), 64);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        objects.forEach((key, object) -> futures.add(single.save(key, object)));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        MappedFileType batched = new MappedFileType(new File(directory, "batched.dat"), 64);
+        batched.saveAll(objects).join();
+
+        assertEquals(single.size(), batched.size());
+        Map<String, CachingObject> fromSingle = single.loadAll(objects.keySet()).join();
+        Map<String, CachingObject> fromBatched = batched.loadAll(objects.keySet()).join();
+        assertEquals(1000, fromBatched.size());
+        for (String key : objects.keySet()) {
+            assertEquals(fromSingle.get(key).getData(), fromBatched.get(key).getData());
+        }
+        single.close();
+        batched.close();
+    }
+}
@@ -0,0 +1,201 @@
+import nl.thedutchruben.mccore.global.caching.CacheIndex;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheIndexTest extends CachingManagerFixture {
+
+    @Test
+    void testFindByUniqueValue() {
+        CacheIndex<Profile, String> byName = cachingManager.addIndex("name", Profile.class, Profile::getName);
+        cachingManager.putIfAbsent("uuid-1", new Profile("uuid-1", "Notch", "red"));
+        cachingManager.putIfAbsent("uuid-2", new Profile("uuid-2", "Jeb", "blue"));
+
+        assertEquals("uuid-1", byName.getFirst("Notch").getKey());
+        assertNull(byName.getFirst("Dinnerbone"));
+        assertEquals(2, byName.size());
+    }
+
+    @Test
+    void testFindAllWithValue() {
+        CacheIndex<Profile, String> byClan = cachingManager.addIndex("clan", Profile.class, Profile::getClan);
+        for (int i = 0; i < 10; i++) {
+            String clan = i % 2 == 0 ? "red" : "blue";
+            cachingManager.putIfAbsent("uuid-" + i, new Profile("uuid-" + i, "player" + i, clan));
+        }
+
+        assertEquals(5, byClan.get("red").size());
+        assertEquals(5, byClan.getKeys("blue").size());
+        assertTrue(byClan.get("green").isEmpty());
+    }
+
+    @Test
+    void testReplaceAndRemoveUpdateTheIndex() {
+        CacheIndex<Profile, String> byClan = cachingManager.addIndex("clan", Profile.class, Profile::getClan);
+        cachingManager.putIfAbsent("uuid-1", new Profile("uuid-1", "Notch", "red"));
+
+        cachingManager.replace("uuid-1", new Profile("uuid-1", "Notch", "blue"));
+        assertTrue(byClan.get("red").isEmpty());
+        assertEquals("blue", byClan.get("blue").get(0).getClan());
+
+        cachingManager.removeCachingObject("uuid-1");
+        assertTrue(byClan.get("blue").isEmpty());
+        assertEquals(0, byClan.size());
+    }
+
+    @Test
+    void testEvictedObjectsAreRemovedFromTheIndex() {
+        CacheIndex<Profile, String> byName = cachingManager.addIndex("name", Profile.class, Profile::getName);
+        cachingManager.setMaximumSize(10);
+        for (int i = 0; i < 100; i++) {
+            cachingManager.putIfAbsent("uuid-" + i, new Profile("uuid-" + i, "player" + i, "red"));
+        }
+
+        assertEquals(cachingManager.size(), byName.size());
+        for (String key : cachingManager.getKeys()) {
+            Profile profile = (Profile) cachingManager.getCachingObject(key);
+            assertEquals(key, byName.getFirst(profile.getName()).getKey());
+        }
+    }
+
+    @Test
+    void testIndexAddedLaterContainsTheStoredObjects() {
+        cachingManager.putIfAbsent("uuid-1", new Profile("uuid-1", "Notch", "red"));
+        cachingManager.putIfAbsent("other", new Other("other"));
+
+        CacheIndex<Profile, String> byName = cachingManager.addIndex("name", Profile.class, Profile::getName);
+        assertEquals(1, byName.size());
+        assertNotNull(byName.getFirst("Notch"));
+        assertThrows(IllegalArgumentException.class,
+                () -> cachingManager.addIndex("name", Profile.class, Profile::getClan));
+    }
+
+    @Test
+    void testConcurrentWritesLeaveTheIndexConsistent() throws InterruptedException {
+        CacheIndex<Profile, String> byClan = cachingManager.addIndex("clan", Profile.class, Profile::getClan);
+        String[] clans = {"red", "blue", "green"};
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    String key = "uuid-" + random.nextInt(50);
+                    if (random.nextInt(4) == 0) {
+                        cachingManager.removeCachingObject(key);
+                    } else {
+                        cachingManager.putAll(Collections.singletonMap(key,
+                                new Profile(key, key, clans[random.nextInt(clans.length)])));
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int indexed = 0;
+        for (String clan : clans) {
+            for (String key : byClan.getKeys(clan)) {
+                Profile profile = (Profile) cachingManager.getCachingObject(key);
+                assertNotNull(profile, key);
+                assertEquals(clan, profile.getClan(), key);
+                indexed++;
+            }
+        }
+        assertEquals(cachingManager.size(), indexed);
+        assertEquals(cachingManager.size(), byClan.size());
+    }
+
+    public static class Profile extends CachingObject {
+        private String key;
+        private String name;
+        private String clan;
+
+        public Profile() {
+        }
+
+        public Profile(String key, String name, String clan) {
+            this.key = key;
+            this.name = name;
+            this.clan = clan;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getClan() {
+            return clan;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Boolean isPersistent() {
+            return false;
+        }
+
+        @Override
+        public Date getCreateDate() {
+            return null;
+        }
+
+        @Override
+        public Date getExpireDate() {
+            return null;
+        }
+
+        @Override
+        public Object getData() {
+            return name;
+        }
+    }
+
+    public static class Other extends CachingObject {
+        private String key;
+
+        public Other() {
+        }
+
+        public Other(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Boolean isPersistent() {
+            return false;
+        }
+
+        @Override
+        public Date getCreateDate() {
+            return null;
+        }
+
+        @Override
+        public Date getExpireDate() {
+            return null;
+        }
+
+        @Override
+        public Object getData() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import com.google.gson.JsonPrimitive;
+import nl.thedutchruben.mccore.global.caching.CacheRegion;
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.RegionCachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheRegionTest extends CachingManagerFixture {
+
+    @Test
+    void testValuesKeepTheirType() {
+        CacheRegion<Profile> profiles = cachingManager.region("profiles", Profile.class);
+        profiles.put("steve", new Profile("Steve", 3));
+
+        assertEquals(3, profiles.get("steve").level);
+        assertEquals(3, profiles.putIfAbsent("steve", new Profile("Steve", 4)).level);
+        assertEquals("Steve", profiles.computeIfAbsent("steve", key -> new Profile("other", 0)).name);
+        assertEquals(3, profiles.remove("steve").level);
+        assertNull(profiles.get("steve"));
+        assertSame(profiles, cachingManager.region("profiles", Profile.class));
+        assertThrows(IllegalArgumentException.class, () -> cachingManager.region("profiles", String.class));
+    }
+
+    @Test
+    void testExpiredValueIsNotReturned() {
+        ManualClock clock = ManualClock.install();
+        try {
+            CacheRegion<Profile> profiles = cachingManager.region("profiles", Profile.class)
+                    .expireAfterWrite(1, TimeUnit.MILLISECONDS);
+            profiles.put("steve", new Profile("Steve", 3));
+
+            clock.advance(20);
+
+            assertNull(profiles.get("steve"));
+            assertEquals(1, profiles.getStats().getMissCount());
+        } finally {
+            clock.uninstall();
+        }
+    }
+
+    @Test
+    void testValuesSurviveARestart() {
+        File file = new File(directory, "profiles.dat");
+        CacheRegion<Profile> profiles = cachingManager.region("profiles", Profile.class)
+                .persistTo(new MappedFileType(file, 64));
+        profiles.put("steve", new Profile("Steve", 3));
+        profiles.put("alex", new Profile("Alex", 1));
+        profiles.remove("alex");
+        profiles.shutdown();
+
+        CachingManager restarted = new CachingManager(new MappedFileType(new File(directory, "other.dat"), 64));
+        CacheRegion<Profile> reopened = restarted.region("profiles", Profile.class)
+                .persistTo(new MappedFileType(file, 64));
+        reopened.getReadyFuture().join();
+        assertEquals("Steve", reopened.get("steve").name);
+        assertNull(reopened.get("alex"));
+        restarted.shutdown();
+    }
+
+    @Test
+    void testEvictedValueIsLoadedAgain() {
+        CacheRegion<Profile> profiles = cachingManager.region("profiles", Profile.class)
+                .persistTo(new MappedFileType(new File(directory, "profiles.dat"), 64))
+                .maximumSize(10);
+        for (int i = 0; i < 50; i++) {
+            profiles.put("player" + i, new Profile("player" + i, i));
+        }
+        profiles.flush();
+        assertTrue(profiles.size() <= 10);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, profiles.get("player" + i).level);
+        }
+        assertEquals(0, profiles.getStats().getMissCount());
+        assertTrue(profiles.size() <= 10);
+    }
+
+    @Test
+    void testRemovedValueIsNotLoadedBeforeTheRemoveIsFlushed() {
+        CacheRegion<Profile> profiles = cachingManager.region("profiles", Profile.class)
+                .persistTo(new MappedFileType(new File(directory, "profiles.dat"), 64));
+        profiles.put("steve", new Profile("Steve", 3));
+        profiles.flush();
+
+        profiles.remove("steve");
+
+        assertNull(profiles.get("steve"));
+    }
+
+    @Test
+    void testRegionObjectRoundTrip() {
+        RegionCachingObject object = new RegionCachingObject("steve", "profiles", new Date(),
+                new Date(System.currentTimeMillis() + 60_000), new JsonPrimitive("Steve"));
+        BinaryCodec codec = new BinaryCodec();
+
+        CachingObject decoded = codec.decode(codec.encode(object), name -> RegionCachingObject.class);
+
+        assertInstanceOf(RegionCachingObject.class, decoded);
+        RegionCachingObject region = (RegionCachingObject) decoded;
+        assertEquals("steve", region.getKey());
+        assertEquals("profiles", region.getRegion());
+        assertEquals(new JsonPrimitive("Steve"), region.getData());
+        assertEquals(object.getExpireAt() / 1000, region.getExpireAt() / 1000);
+        assertTrue(region.isPersistent());
+    }
+
+    public static class Profile {
+        private String name;
+        private int level;
+
+        public Profile(String name, int level) {
+            this.name = name;
+            this.level = level;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CachingCodec;
+import nl.thedutchruben.mccore.global.caching.codec.JsonCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingCodecTest {
+
+    @Test
+    void testBinaryRoundTrip() {
+        assertRoundTrip(new BinaryCodec());
+    }
+
+    @Test
+    void testJsonRoundTrip() {
+        assertRoundTrip(new JsonCodec());
+    }
+
+    @Test
+    void testBinaryIsSmallerThanJson() {
+        PlayerObject object = createObject();
+
+        int binarySize = new BinaryCodec().encode(object).length;
+        int jsonSize = new JsonCodec().encode(object).length;
+
+        assertTrue(binarySize < jsonSize, "binary " + binarySize + " bytes, json " + jsonSize + " bytes");
+    }
+
+    @Test
+    void testUnknownTypeIsNotDecoded() {
+        byte[] data = new BinaryCodec().encode(createObject());
+
+        assertNull(new BinaryCodec().decode(data, name -> null));
+    }
+
+    @Test
+    void testTruncatedDataIsRejected() {
+        byte[] data = new BinaryCodec().encode(createObject());
+
+        assertThrows(IllegalArgumentException.class, () -> new BinaryCodec()
+                .decode(Arrays.copyOf(data, data.length / 2), name -> PlayerObject.class));
+    }
+
+    @Test
+    void testCorruptCountIsRejected() {
+        // The version and a string count of Integer.MAX_VALUE, followed by nothing
+        byte[] data = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        byte[] negative = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+
+        assertThrows(IllegalArgumentException.class, () -> new BinaryCodec().decode(data, name -> PlayerObject.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> new BinaryCodec().decode(negative, name -> PlayerObject.class));
+    }
+
+    @Test
+    void testDecodedObjectEncodesToTheSameBytes() {
+        BinaryCodec codec = new BinaryCodec();
+        byte[] data = codec.encode(createObject());
+
+        byte[] again = codec.encode(codec.decode(data, name -> PlayerObject.class));
+
+        assertArrayEquals(data, again);
+    }
+
+    private static void assertRoundTrip(CachingCodec codec) {
+        PlayerObject object = createObject();
+
+        CachingObject decoded = codec.decode(codec.encode(object), name -> {
+            assertEquals(PlayerObject.class.getName(), name);
+            return PlayerObject.class;
+        });
+
+        assertInstanceOf(PlayerObject.class, decoded);
+        PlayerObject player = (PlayerObject) decoded;
+        assertEquals(object.key, player.key);
+        assertEquals(object.createDate.getTime() / 1000, player.createDate.getTime() / 1000);
+        assertNull(player.expireDate);
+        assertEquals(object.level, player.level);
+        assertEquals(object.balance, player.balance);
+        assertEquals(object.playTime, player.playTime);
+        assertEquals(object.friends, player.friends);
+        assertEquals(object.homes, player.homes);
+    }
+
+    static PlayerObject createObject() {
+        PlayerObject object = new PlayerObject();
+        object.key = "069a79f4-44e9-4726-a5be-fca90e38aaf5";
+        object.level = 42;
+        object.balance = 1234.56;
+        object.playTime = 9_876_543_210L;
+        for (int i = 0; i < 10; i++) {
+            object.friends.add("friend-" + i);
+        }
+        object.homes.put("home", new Home("world", 100.5, 64, -200.25));
+        object.homes.put("farm", new Home("world", 812, 70, 33));
+        object.homes.put("base", new Home("world_nether", -20, 32, 15.75));
+        return object;
+    }
+
+    public static class PlayerObject extends CachingObject {
+        private String key;
+        private Date createDate = new Date();
+        private Date expireDate;
+        private int level;
+        private double balance;
+        private long playTime;
+        private List<String> friends = new ArrayList<>();
+        private Map<String, Home> homes = new LinkedHashMap<>();
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Boolean isPersistent() {
+            return true;
+        }
+
+        @Override
+        public Date getCreateDate() {
+            return createDate;
+        }
+
+        @Override
+        public Date getExpireDate() {
+            return expireDate;
+        }
+
+        @Override
+        public Object getData() {
+            return homes;
+        }
+    }
+
+    public static class Home {
+        private String world;
+        private double x;
+        private double y;
+        private double z;
+
+        public Home(String world, double x, double y, double z) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Home)) {
+                return false;
+            }
+            Home home = (Home) o;
+            return world.equals(home.world) && x == home.x && y == home.y && z == home.z;
+        }
+
+        @Override
+        public int hashCode() {
+            return world.hashCode();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.io.File;
+
+/**
+ * Gives every test a {@link CachingManager} that stores in cache.dat in the temporary directory, the manager is shut
+ * down before the directory is deleted
+ */
+public abstract class CachingManagerFixture extends TempDirectoryFixture {
+    protected MappedFileType fileType;
+    protected CachingManager cachingManager;
+
+    @BeforeEach
+    void createManager() {
+        fileType = new MappedFileType(new File(directory, "cache.dat"), 64);
+        cachingManager = new CachingManager(fileType);
+    }
+
+    @AfterEach
+    void shutdownManager() {
+        cachingManager.shutdown();
+    }
+}
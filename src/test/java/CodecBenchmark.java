@@ -0,0 +1,39 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CachingCodec;
+import nl.thedutchruben.mccore.global.caching.codec.JsonCodec;
+
+/**
+ * Compares the encode and decode time and the size of the {@link JsonCodec} and the {@link BinaryCodec} on the
+ * player object of the {@link CachingCodecTest}. It is not a test, so the build doesn't run it, run the main method
+ * from the IDE or with the test classes on the class path:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;gson jar&gt; CodecBenchmark [rounds]
+ * </pre>
+ */
+public class CodecBenchmark {
+    private static final int WARM_UP_ROUNDS = 20_000;
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        CachingObject object = CachingCodecTest.createObject();
+        for (CachingCodec codec : new CachingCodec[]{new JsonCodec(), new BinaryCodec()}) {
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                codec.decode(codec.encode(object), name -> CachingCodecTest.PlayerObject.class);
+            }
+            byte[] data = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                data = codec.encode(object);
+            }
+            long encodeNanos = (System.nanoTime() - start) / rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                codec.decode(data, name -> CachingCodecTest.PlayerObject.class);
+            }
+            long decodeNanos = (System.nanoTime() - start) / rounds;
+            System.out.printf("%s: %d bytes, encode %d ns/op, decode %d ns/op%n",
+                    codec.getClass().getSimpleName(), data.length, encodeNanos, decodeNanos);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.codec.BinaryCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CompressingCodec;
+import nl.thedutchruben.mccore.global.caching.codec.CompressionDictionary;
+import nl.thedutchruben.mccore.global.caching.codec.JsonCodec;
+import nl.thedutchruben.mccore.global.caching.stats.CompressionStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressingCodecTest {
+    private static final String[] ITEMS = {"minecraft:diamond_sword", "minecraft:golden_apple", "minecraft:oak_log",
+            "minecraft:cobblestone", "minecraft:iron_pickaxe", "minecraft:bread", "minecraft:torch"};
+
+    @Test
+    void testSmallEntriesAreNotCompressed() {
+        CompressingCodec codec = new CompressingCodec(new JsonCodec(), 4096);
+        InventoryObject object = createObject(1, 3);
+
+        byte[] data = codec.encode(object);
+
+        assertArrayEquals(new JsonCodec().encode(object), data);
+        assertEquals(1, codec.getStats().getSkippedCount());
+        assertEquals(object.getData(), codec.decode(data, name -> InventoryObject.class).getData());
+    }
+
+    @Test
+    void testLargeEntriesAreCompressed() {
+        CompressingCodec codec = new CompressingCodec(new JsonCodec(), 256);
+        InventoryObject object = createObject(1, 36);
+
+        byte[] plain = new JsonCodec().encode(object);
+        byte[] data = codec.encode(object);
+
+        assertTrue(data.length * 3 < plain.length, "compressed " + data.length + " bytes, plain " + plain.length);
+        InventoryObject decoded = (InventoryObject) codec.decode(data, name -> InventoryObject.class);
+        assertEquals(object.getData(), decoded.getData());
+        CompressionStats stats = codec.getStats();
+        assertEquals(1, stats.getCompressedCount());
+        assertEquals(1, stats.getDecompressedCount());
+        assertEquals(plain.length, stats.getOriginalBytes());
+        assertEquals(data.length, stats.getStoredBytes());
+        assertEquals(1, Arrays.stream(stats.getRatioCounts()).sum());
+    }
+
+    @Test
+    void testUncompressedEntriesAreStillRead() {
+        InventoryObject object = createObject(2, 36);
+        byte[] binary = new BinaryCodec().encode(object);
+        byte[] json = new JsonCodec().encode(object);
+
+        assertEquals(object.getData(), new CompressingCodec().decode(binary, name -> InventoryObject.class).getData());
+        assertEquals(object.getData(), new CompressingCodec(new JsonCodec(), 256)
+                .decode(json, name -> InventoryObject.class).getData());
+    }
+
+    @Test
+    void testDictionaryShrinksSmallEntries() {
+        List<InventoryObject> samples = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            samples.add(createObject(i, 4));
+        }
+        CompressingCodec plain = new CompressingCodec(new BinaryCodec(), 16);
+        CompressingCodec trained = new CompressingCodec(new BinaryCodec(), 16);
+        CompressionDictionary dictionary = trained.trainDictionary(samples, 4096);
+        assertTrue(dictionary.size() <= 4096);
+
+        int plainBytes = 0;
+        int trainedBytes = 0;
+        for (int i = 1000; i < 1100; i++) {
+            InventoryObject object = createObject(i, 4);
+            plainBytes += plain.encode(object).length;
+            byte[] data = trained.encode(object);
+            trainedBytes += data.length;
+            assertEquals(object.getData(), trained.decode(data, name -> InventoryObject.class).getData());
+        }
+        assertTrue(trainedBytes * 2 < plainBytes, "with dictionary " + trainedBytes + " bytes, without "
+                + plainBytes);
+
+        // A codec created with the stored bytes of the dictionary reads the entries back
+        byte[] data = trained.encode(createObject(5, 4));
+        CompressingCodec restarted = new CompressingCodec(new BinaryCodec(), 16, 6,
+                new CompressionDictionary(dictionary.toByteArray()));
+        assertEquals(createObject(5, 4).getData(), restarted.decode(data, name -> InventoryObject.class).getData());
+        assertThrows(IllegalArgumentException.class, () -> plain.decode(data, name -> InventoryObject.class));
+    }
+
+    @Test
+    void testIncompressibleEntriesAreStoredAsTheyAre() {
+        CompressingCodec codec = new CompressingCodec(new JsonCodec(), 16);
+        StringBuilder random = new StringBuilder();
+        Random generator = new Random(1);
+        for (int i = 0; i < 64; i++) {
+            random.append((char) ('!' + generator.nextInt(90)));
+        }
+        InventoryObject object = new InventoryObject("random", new ArrayList<>(Arrays.asList(random.toString())));
+
+        byte[] data = codec.encode(object);
+
+        assertEquals(1, codec.getStats().getIncompressibleCount());
+        assertEquals(object.getData(), codec.decode(data, name -> InventoryObject.class).getData());
+    }
+
+    private static InventoryObject createObject(int seed, int slots) {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < slots; i++) {
+            items.add("{\"slot\":" + i + ",\"item\":\"" + ITEMS[(seed + i) % ITEMS.length] + "\",\"amount\":"
+                    + ((seed * 7 + i) % 64 + 1) + ",\"enchantments\":[]}");
+        }
+        return new InventoryObject("player" + seed, items);
+    }
+
+    public static class InventoryObject extends CachingObject {
+        private String key;
+        private List<String> items;
+
+        public InventoryObject() {
+        }
+
+        public InventoryObject(String key, List<String> items) {
+            this.key = key;
+            this.items = items;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Boolean isPersistent() {
+            return true;
+        }
+
+        @Override
+        public Date getCreateDate() {
+            return null;
+        }
+
+        @Override
+        public Date getExpireDate() {
+            return null;
+        }
+
+        @Override
+        public Object getData() {
+            return items;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.DiskTier;
+import nl.thedutchruben.mccore.global.caching.eviction.LruEvictionPolicy;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskTierTest extends CachingManagerFixture {
+    private DiskTier diskTier;
+
+    @BeforeEach
+    void start() {
+        diskTier = new DiskTier(new MappedFileType(new File(directory, "tier.dat"), 64));
+        cachingManager.setDiskTier(diskTier);
+        cachingManager.setEvictionPolicy(new LruEvictionPolicy());
+        cachingManager.setMaximumSize(10);
+    }
+
+    @Test
+    void testEvictedEntriesAreDemotedAndPromoted() {
+        for (int i = 0; i < 50; i++) {
+            cachingManager.addCachingObject("key" + i, TestObject.inMemory("key" + i, "value" + i));
+        }
+        assertEquals(10, cachingManager.size());
+        assertEquals(40, diskTier.size());
+
+        for (int i = 0; i < 50; i++) {
+            CachingObject object = cachingManager.getCachingObject("key" + i);
+            assertNotNull(object, "key" + i);
+            assertEquals("value" + i, object.getData());
+        }
+        assertTrue(diskTier.getPromotionCount() >= 40);
+        assertEquals(50, cachingManager.size() + diskTier.size());
+    }
+
+    @Test
+    void testRemoveAlsoRemovesDemotedEntry() {
+        for (int i = 0; i < 20; i++) {
+            cachingManager.addCachingObject("key" + i, TestObject.inMemory("key" + i, "value" + i));
+        }
+        assertTrue(diskTier.contains("key0"));
+
+        CachingObject removed = cachingManager.removeCachingObject("key0");
+        assertEquals("value0", removed.getData());
+        assertFalse(diskTier.contains("key0"));
+        assertNull(cachingManager.getCachingObject("key0"));
+    }
+
+    @Test
+    void testPutIfAbsentSeesDemotedEntry() {
+        for (int i = 0; i < 20; i++) {
+            cachingManager.addCachingObject("key" + i, TestObject.inMemory("key" + i, "value" + i));
+        }
+
+        CachingObject existing = cachingManager.putIfAbsent("key0", TestObject.inMemory("key0", "other"));
+        assertNotNull(existing);
+        assertEquals("value0", existing.getData());
+        assertEquals("value0", cachingManager.getCachingObject("key0").getData());
+    }
+}
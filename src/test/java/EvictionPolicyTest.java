@@ -0,0 +1,65 @@
+import nl.thedutchruben.mccore.global.caching.eviction.EvictionPolicy;
+import nl.thedutchruben.mccore.global.caching.eviction.LruEvictionPolicy;
+import nl.thedutchruben.mccore.global.caching.eviction.TinyLfuEvictionPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvictionPolicyTest {
+
+    @Test
+    void testLruEvictsLeastRecentlyUsed() {
+        EvictionPolicy policy = new LruEvictionPolicy();
+        policy.onInsert("a");
+        policy.onInsert("b");
+        policy.onInsert("c");
+        policy.onAccess("a");
+
+        assertEquals("b", policy.victim());
+        policy.onRemove("b");
+        assertEquals("c", policy.victim());
+    }
+
+    @Test
+    void testEmptyPolicyHasNoVictim() {
+        assertNull(new LruEvictionPolicy().victim());
+        assertNull(new TinyLfuEvictionPolicy().victim());
+    }
+
+    @Test
+    void testTinyLfuKeepsHotKeysDuringScan() {
+        double lru = hitRate(new LruEvictionPolicy());
+        double tinyLfu = hitRate(new TinyLfuEvictionPolicy());
+
+        assertTrue(tinyLfu > lru, "TinyLFU " + tinyLfu + " should beat LRU " + lru);
+    }
+
+    private double hitRate(EvictionPolicy policy) {
+        int capacity = 100;
+        policy.setCapacity(capacity);
+        Set<String> resident = new HashSet<>();
+        Random random = new Random(1);
+        int hits = 0;
+        int requests = 100_000;
+        for (int i = 0; i < requests; i++) {
+            String key = random.nextBoolean() ? "hot" + random.nextInt(80) : "cold" + random.nextInt(100_000);
+            if (resident.contains(key)) {
+                hits++;
+                policy.onAccess(key);
+                continue;
+            }
+            resident.add(key);
+            policy.onInsert(key);
+            while (resident.size() > capacity) {
+                String victim = policy.victim();
+                policy.onRemove(victim);
+                resident.remove(victim);
+            }
+        }
+        return hits / (double) requests;
+    }
+}
@@ -0,0 +1,178 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GetOrLoadTest extends CachingManagerFixture {
+
+    @Test
+    void testConcurrentCallsShareOneLoad() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<TestObject> database = new CompletableFuture<>();
+        CountDownLatch ready = new CountDownLatch(1);
+        List<CompletableFuture<CachingObject>> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                CompletableFuture<CachingObject> result = cachingManager.getOrLoad("key", key -> {
+                    calls.incrementAndGet();
+                    return database;
+                });
+                synchronized (results) {
+                    results.add(result);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        ready.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, calls.get());
+
+        TestObject loaded = TestObject.inMemory("key", "value");
+        database.complete(loaded);
+        for (CompletableFuture<CachingObject> result : results) {
+            assertSame(loaded, result.join());
+        }
+        assertSame(loaded, cachingManager.getCachingObject("key"));
+        assertEquals(1, cachingManager.getStats().getLoadSuccessCount());
+    }
+
+    @Test
+    void testStoredObjectIsNotLoaded() {
+        cachingManager.addCachingObject("key", TestObject.inMemory("key", "stored"));
+
+        CachingObject result = cachingManager.getOrLoad("key", key -> {
+            throw new AssertionError("The loader must not be called");
+        }).join();
+
+        assertEquals("stored", result.getData());
+    }
+
+    @Test
+    void testFailedLoadIsRetried() {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<TestObject> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("database offline"));
+
+        assertThrows(CompletionException.class, () -> cachingManager.getOrLoad("key", key -> {
+            calls.incrementAndGet();
+            return failed;
+        }).join());
+        assertThrows(CompletionException.class, () -> cachingManager.getOrLoad("key", key -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("no connection");
+        }).join());
+        assertNull(cachingManager.getCachingObject("key"));
+
+        CachingObject result = cachingManager.getOrLoad("key", key -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(TestObject.inMemory(key, "value"));
+        }).join();
+
+        assertEquals("value", result.getData());
+        assertEquals(3, calls.get());
+        assertEquals(2, cachingManager.getStats().getLoadFailureCount());
+    }
+
+    @Test
+    void testNotFoundIsRememberedForTheTtl() {
+        ManualClock clock = ManualClock.install();
+        try {
+            cachingManager.setNotFoundTtl(100, TimeUnit.MILLISECONDS);
+            AtomicInteger calls = new AtomicInteger();
+            Function<String, CompletableFuture<? extends CachingObject>> loader = key -> {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            };
+
+            assertNull(cachingManager.getOrLoad("key", loader).join());
+            assertNull(cachingManager.getOrLoad("key", loader).join());
+            assertEquals(1, calls.get());
+
+            clock.advance(150);
+            assertNull(cachingManager.getOrLoad("key", loader).join());
+            assertEquals(2, calls.get());
+        } finally {
+            clock.uninstall();
+        }
+    }
+
+    @Test
+    void testAddedObjectReplacesTheNotFound() {
+        cachingManager.setNotFoundTtl(1, TimeUnit.MINUTES);
+        assertNull(cachingManager.getOrLoad("key", key -> CompletableFuture.completedFuture(null)).join());
+
+        cachingManager.addCachingObject("key", TestObject.inMemory("key", "added"));
+        cachingManager.removeCachingObject("key");
+
+        CachingObject result = cachingManager.getOrLoad("key",
+                key -> CompletableFuture.completedFuture(TestObject.inMemory(key, "loaded"))).join();
+        assertEquals("loaded", result.getData());
+    }
+
+    @Test
+    void testObjectIsRefreshedBeforeItExpires() {
+        cachingManager.setRefreshAhead(0.5);
+        long now = System.currentTimeMillis();
+        TestObject old = TestObject.inMemory("key", "old").lifetime(new Date(now - 60_000), new Date(now + 30_000));
+        cachingManager.addCachingObject("key", old);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<TestObject> database = new CompletableFuture<>();
+        Function<String, CompletableFuture<? extends CachingObject>> loader = key -> {
+            calls.incrementAndGet();
+            return database;
+        };
+
+        // The old object is returned while the refresh is running, and a second read doesn't start another one
+        assertSame(old, cachingManager.getOrLoad("key", loader).join());
+        assertSame(old, cachingManager.getOrLoad("key", loader).join());
+        assertEquals(1, calls.get());
+
+        TestObject fresh = TestObject.inMemory("key", "new").lifetime(new Date(now), new Date(now + 60_000));
+        database.complete(fresh);
+        assertSame(fresh, cachingManager.getCachingObject("key"));
+        assertSame(fresh, cachingManager.getOrLoad("key", loader).join());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testRefreshThatFindsNothingKeepsTheObject() {
+        cachingManager.setRefreshAhead(0.5);
+        long now = System.currentTimeMillis();
+        TestObject old = TestObject.inMemory("key", "old").lifetime(new Date(now - 60_000), new Date(now + 30_000));
+        cachingManager.addCachingObject("key", old);
+
+        assertSame(old, cachingManager.getOrLoad("key", key -> CompletableFuture.completedFuture(null)).join());
+        assertSame(old, cachingManager.getCachingObject("key"));
+    }
+
+    @Test
+    void testObjectIsNotRefreshedBeforeTheRefreshPoint() {
+        cachingManager.setRefreshAhead(0.5);
+        long now = System.currentTimeMillis();
+        cachingManager.addCachingObject("key",
+                TestObject.inMemory("key", "old").lifetime(new Date(now), new Date(now + 60_000)));
+
+        cachingManager.getOrLoad("key", key -> {
+            throw new AssertionError("The loader must not be called");
+        }).join();
+    }
+}
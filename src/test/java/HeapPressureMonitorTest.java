@@ -0,0 +1,91 @@
+import nl.thedutchruben.mccore.global.caching.HeapPressureMonitor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeapPressureMonitorTest extends CachingManagerFixture {
+    private final List<String> messages = new ArrayList<>();
+
+    @BeforeEach
+    void start() {
+        cachingManager.setMaximumSize(1000);
+        for (int i = 0; i < 1000; i++) {
+            cachingManager.putIfAbsent("key" + i, TestObject.inMemory("key" + i, "value" + i));
+        }
+    }
+
+    @Test
+    void testPressureShrinksTheCache() {
+        HeapPressureMonitor monitor = new HeapPressureMonitor(cachingManager, 0.85, 0.6, messages::add);
+
+        monitor.update(0.9);
+
+        assertEquals(0.5, monitor.getCapacityFactor());
+        assertEquals(500, cachingManager.getEffectiveMaximumSize());
+        assertEquals(500, cachingManager.size());
+        assertEquals(1000, cachingManager.getMaximumSize());
+        assertEquals(1, messages.size());
+    }
+
+    @Test
+    void testCapacityGrowsBackWhenPressureClears() {
+        HeapPressureMonitor monitor = new HeapPressureMonitor(cachingManager, 0.85, 0.6, messages::add);
+        monitor.update(0.9);
+
+        monitor.update(0.7);
+        assertEquals(0.5, monitor.getCapacityFactor());
+        for (int i = 0; i < 10; i++) {
+            monitor.update(0.3);
+        }
+
+        assertEquals(1.0, monitor.getCapacityFactor(), 0.0001);
+        assertEquals(1000, cachingManager.getEffectiveMaximumSize());
+        assertEquals(6, messages.size());
+    }
+
+    @Test
+    void testInvalidWatermarks() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new HeapPressureMonitor(cachingManager, 0.5, 0.7, messages::add));
+    }
+
+    @Test
+    void testStopPutsBackThePreviousThresholds() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getUsage().getMax() > 0
+                    && pool.isCollectionUsageThresholdSupported()) {
+                pools.add(pool);
+            }
+        }
+        List<Long> previous = new ArrayList<>();
+        for (MemoryPoolMXBean pool : pools) {
+            previous.add(pool.getCollectionUsageThreshold());
+            pool.setCollectionUsageThreshold(1024);
+        }
+        HeapPressureMonitor monitor = new HeapPressureMonitor(cachingManager, 0.85, 0.6, messages::add);
+        try {
+            monitor.start();
+            for (MemoryPoolMXBean pool : pools) {
+                assertEquals((long) (pool.getUsage().getMax() * 0.85), pool.getCollectionUsageThreshold());
+            }
+
+            monitor.stop();
+            for (MemoryPoolMXBean pool : pools) {
+                assertEquals(1024, pool.getCollectionUsageThreshold());
+            }
+        } finally {
+            monitor.stop();
+            for (int i = 0; i < pools.size(); i++) {
+                pools.get(i).setCollectionUsageThreshold(previous.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.HotKeyRecorder;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotKeyWarmUpTest extends TempDirectoryFixture {
+
+    @Test
+    void testHottestKeysComeFirst() {
+        HotKeyRecorder recorder = new HotKeyRecorder(new File(directory, "hot-keys.dat"), 3, 1);
+        for (int i = 0; i < 30; i++) {
+            recorder.record("hot");
+        }
+        for (int i = 0; i < 20; i++) {
+            recorder.record("warm");
+        }
+        for (int i = 0; i < 10; i++) {
+            recorder.record("lukewarm");
+        }
+        recorder.record("cold");
+
+        assertEquals(Arrays.asList("hot", "warm", "lukewarm"), recorder.getHotKeys());
+    }
+
+    @Test
+    void testScanDoesNotPushOutAHotKey() {
+        HotKeyRecorder recorder = new HotKeyRecorder(new File(directory, "hot-keys.dat"), 10, 1);
+        for (int i = 0; i < 100; i++) {
+            recorder.record("hot");
+        }
+        for (int i = 0; i < 10_000; i++) {
+            recorder.record("scan" + i);
+            if (i % 10 == 0) {
+                recorder.record("hot");
+            }
+        }
+
+        assertEquals("hot", recorder.getHotKeys().get(0));
+        assertEquals(10, recorder.getHotKeys().size());
+    }
+
+    @Test
+    void testKeysSurviveARestart() throws IOException {
+        File file = new File(directory, "hot-keys.dat");
+        HotKeyRecorder recorder = new HotKeyRecorder(file, 100, 1);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j <= i; j++) {
+                recorder.record("key" + i);
+            }
+        }
+        recorder.save();
+
+        List<String> keys = HotKeyRecorder.read(file);
+        assertEquals(10, keys.size());
+        assertEquals("key9", keys.get(0));
+        assertEquals("key0", keys.get(9));
+        assertTrue(HotKeyRecorder.read(new File(directory, "missing.dat")).isEmpty());
+    }
+
+    @Test
+    void testWarmUpLoadsTheRecordedKeys() {
+        File cacheFile = new File(directory, "cache.dat");
+        File hotKeys = new File(directory, "hot-keys.dat");
+        MappedFileType fileType = new MappedFileType(cacheFile, 64);
+        Map<String, CachingObject> objects = TestObject.objects(1000);
+        fileType.saveAll(objects).join();
+        CachingManager cachingManager = new CachingManager(fileType);
+        cachingManager.enableHotKeyRecording(new HotKeyRecorder(hotKeys, 100, 1));
+        for (int i = 0; i < 300; i++) {
+            cachingManager.getCachingObject("key" + (i % 50));
+        }
+        cachingManager.getCachingObject("missing");
+        cachingManager.shutdown();
+
+        MappedFileType reopened = new MappedFileType(cacheFile, 64);
+        CachingManager restarted = new CachingManager(reopened);
+        assertEquals(0, restarted.size());
+        assertEquals(50, restarted.warmUp(hotKeys).join().intValue());
+        assertEquals(50, restarted.size());
+        assertTrue(restarted.getKeys().contains("key49"));
+        assertEquals(0, restarted.getStats().getMissCount());
+        restarted.shutdown();
+    }
+
+    @Test
+    void testWarmUpStopsWhenTheCacheIsFull() {
+        MappedFileType fileType = new MappedFileType(new File(directory, "cache.dat"), 64);
+        Map<String, CachingObject> objects = TestObject.objects(1000);
+        fileType.saveAll(objects).join();
+        CachingManager cachingManager = new CachingManager(fileType);
+        cachingManager.setMaximumSize(100);
+
+        assertEquals(100, cachingManager.warmUp(new ArrayList<>(objects.keySet())).join().intValue());
+        // The hottest keys are loaded, not the last ones
+        assertTrue(cachingManager.getKeys().contains("key0"));
+        assertFalse(cachingManager.getKeys().contains("key999"));
+        cachingManager.shutdown();
+    }
+}
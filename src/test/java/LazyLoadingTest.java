@@ -0,0 +1,92 @@
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.eviction.LruEvictionPolicy;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyLoadingTest extends CachingManagerFixture {
+
+    @Test
+    void testRemovedObjectIsNotLoadedBeforeTheFlush() {
+        cachingManager.addCachingObject("key", new TestObject("key", "value"));
+        cachingManager.flush();
+
+        cachingManager.removeCachingObject("key");
+
+        assertNull(cachingManager.getCachingObject("key"));
+        assertFalse(cachingManager.getKeys().contains("key"));
+        cachingManager.flush();
+        assertNull(cachingManager.getCachingObject("key"));
+    }
+
+    @Test
+    void testInvalidatedObjectsAreNotLoadedBeforeTheFlush() {
+        cachingManager.putAll(TestObject.objects(3));
+        cachingManager.flush();
+
+        cachingManager.invalidateAll(Arrays.asList("key0", "key1"));
+
+        assertEquals(1, cachingManager.getAll(Arrays.asList("key0", "key1", "key2")).size());
+        assertNull(cachingManager.getCachingObject("key0"));
+    }
+
+    @Test
+    void testEvictedObjectWithAQueuedSaveIsNotLoadedOld() {
+        cachingManager.setEvictionPolicy(new LruEvictionPolicy());
+        cachingManager.setMaximumSize(1);
+        cachingManager.addCachingObject("key", new TestObject("key", "old"));
+        cachingManager.flush();
+        cachingManager.replace("key", new TestObject("key", "new"));
+
+        cachingManager.addCachingObject("other", new TestObject("other", "value"));
+        assertFalse(cachingManager.getKeys().contains("key"));
+
+        assertEquals("new", cachingManager.getCachingObject("key").getData());
+        // Evicted again by the other key, now read in a batch
+        cachingManager.addCachingObject("other", new TestObject("other", "value"));
+        assertFalse(cachingManager.getKeys().contains("key"));
+        assertEquals("new", cachingManager.getAll(Arrays.asList("key")).get("key").getData());
+    }
+
+    @Test
+    void testRemoveIsVisibleWhileItIsFlushed() throws InterruptedException {
+        GatedFileType gated = new GatedFileType(new File(directory, "gated.dat"));
+        CachingManager manager = new CachingManager(gated);
+        manager.addCachingObject("key", new TestObject("key", "value"));
+        manager.flush();
+        manager.removeCachingObject("key");
+
+        CompletableFuture<Void> flush = manager.getWriteBehindQueue().flushAsync();
+        gated.removing.await();
+        // The remove left the queue but is not on disk yet
+        assertNull(manager.getCachingObject("key"));
+        gated.gate.complete(null);
+        flush.join();
+
+        assertNull(manager.getCachingObject("key"));
+        manager.shutdown();
+    }
+
+    private static class GatedFileType extends MappedFileType {
+        private final CountDownLatch removing = new CountDownLatch(1);
+        private final CompletableFuture<Void> gate = new CompletableFuture<>();
+
+        private GatedFileType(File file) {
+            super(file, 64);
+        }
+
+        @Override
+        public CompletableFuture<Void> removeAll(Collection<CachingObject> cachingObjects) {
+            removing.countDown();
+            return gate.thenCompose(ignored -> super.removeAll(cachingObjects));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ManagerPersistenceTest extends CachingManagerFixture {
+
+    @Test
+    void testWritesGoToTheFileSystemOfTheManager() {
+        cachingManager.addCachingObject("added", new TestObject("added", "a"));
+        cachingManager.computeIfAbsent("computed", key -> new TestObject(key, "c"));
+        cachingManager.putIfAbsent("replaced", new TestObject("replaced", "old"));
+        cachingManager.replace("replaced", new TestObject("replaced", "new"));
+        cachingManager.compareAndSet("set", 0, new TestObject("set", "s"));
+        cachingManager.merge("merged", new TestObject("merged", "m"), (current, value) -> value);
+        cachingManager.flush();
+
+        assertEquals("a", fileType.load("added").join().getData());
+        assertEquals("c", fileType.load("computed").join().getData());
+        assertEquals("new", fileType.load("replaced").join().getData());
+        assertEquals("s", fileType.load("set").join().getData());
+        assertEquals("m", fileType.load("merged").join().getData());
+    }
+
+    @Test
+    void testSaveAndRemoveGoToTheSameFileSystem() {
+        cachingManager.addCachingObject("key", new TestObject("key", "value"));
+        cachingManager.flush();
+        assertNotNull(fileType.load("key").join());
+
+        cachingManager.removeCachingObject("key");
+        cachingManager.flush();
+        assertNull(fileType.load("key").join());
+    }
+}
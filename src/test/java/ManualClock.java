@@ -0,0 +1,40 @@
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the {@link CacheClock} by hand, so the expiry tests move the time forward instead of sleeping. Install it
+ * before the test and uninstall it after, the clock then follows the system time again.
+ */
+public class ManualClock {
+    private final AtomicLong time = new AtomicLong(System.currentTimeMillis());
+
+    public static ManualClock install() {
+        ManualClock clock = new ManualClock();
+        CacheClock.setTimeSource(clock.time::get);
+        return clock;
+    }
+
+    public void uninstall() {
+        CacheClock.setTimeSource(System::currentTimeMillis);
+    }
+
+    /**
+     * Returns the time of the clock in epoch millis
+     *
+     * @return
+     */
+    public long millis() {
+        return time.get();
+    }
+
+    /**
+     * Move the time forward and let the cache clock see it right away
+     *
+     * @param millis
+     */
+    public void advance(long millis) {
+        time.addAndGet(millis);
+        CacheClock.tick();
+    }
+}
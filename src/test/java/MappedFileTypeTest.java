@@ -0,0 +1,109 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedFileTypeTest extends TempDirectoryFixture {
+    private static final String LARGE = new String(new char[1024]).replace('\0', 'x');
+
+    private File file;
+
+    @BeforeEach
+    void start() {
+        file = new File(directory, "cache.dat");
+    }
+
+    @Test
+    void testSavesAndRemovesSurviveARestart() {
+        MappedFileType fileType = new MappedFileType(file, 64);
+        fileType.save("a", new TestObject("a", "first")).join();
+        fileType.save("a", new TestObject("a", "second")).join();
+        fileType.save("b", new TestObject("b", "value")).join();
+        fileType.remove(new TestObject("b", null)).join();
+        fileType.close();
+
+        MappedFileType reopened = new MappedFileType(file, 64);
+        assertEquals("second", reopened.load("a").join().getData());
+        assertNull(reopened.load("b").join());
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    void testTooLongKeyIsRejected() {
+        MappedFileType fileType = new MappedFileType(file, 64);
+        String longKey = new String(new char[65536]).replace('\0', 'k');
+        String longestKey = longKey.substring(1);
+        Map<String, CachingObject> objects = new LinkedHashMap<>();
+        objects.put(longKey, new TestObject(longKey, "value"));
+        objects.put(longestKey, new TestObject(longestKey, "value"));
+
+        assertThrows(CompletionException.class, () -> fileType.saveAll(objects).join());
+        assertNull(fileType.load(longKey).join());
+        assertEquals("value", fileType.load(longestKey).join().getData());
+        fileType.close();
+
+        MappedFileType reopened = new MappedFileType(file, 64);
+        assertEquals(1, reopened.size());
+        assertEquals("value", reopened.load(longestKey).join().getData());
+        reopened.close();
+    }
+
+    @Test
+    void testFullIndexIsRebuiltWithMoreSlots() {
+        MappedFileType fileType = new MappedFileType(file, 16);
+        fileType.saveAll(TestObject.objects(500)).join();
+        List<CachingObject> removes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            removes.add(new TestObject("key" + i, null));
+        }
+        fileType.removeAll(removes).join();
+        assertEquals(400, fileType.size());
+        fileType.close();
+
+        MappedFileType reopened = new MappedFileType(file, 16);
+        assertEquals(400, reopened.size());
+        assertNull(reopened.load("key0").join());
+        assertEquals("value499", reopened.load("key499").join().getData());
+        assertEquals(2, reopened.loadAll(Arrays.asList("key99", "key100", "key101")).join().size());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        reopened.close();
+    }
+
+    @Test
+    void testRebuildGivesBackTheSpaceOfSupersededRecords() {
+        MappedFileType fileType = new MappedFileType(file, 1024);
+        for (int i = 0; i < 200; i++) {
+            fileType.save("key" + i, new TestObject("key" + i, LARGE)).join();
+        }
+        long grown = file.length();
+        List<CachingObject> removes = new ArrayList<>();
+        for (int i = 10; i < 200; i++) {
+            removes.add(new TestObject("key" + i, null));
+        }
+        fileType.removeAll(removes).join();
+        for (int i = 0; i < 300; i++) {
+            fileType.save("counter", new TestObject("counter", LARGE + i)).join();
+        }
+
+        assertTrue(file.length() < grown);
+        assertEquals(11, fileType.size());
+        assertEquals(LARGE + 299, fileType.load("counter").join().getData());
+        assertEquals(LARGE, fileType.load("key9").join().getData());
+        fileType.close();
+
+        MappedFileType reopened = new MappedFileType(file, 1024);
+        assertEquals(11, reopened.loadALl().join().size());
+        reopened.close();
+    }
+}
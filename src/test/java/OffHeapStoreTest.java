@@ -0,0 +1,146 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.offheap.OffHeapEntry;
+import nl.thedutchruben.mccore.global.caching.offheap.OffHeapStore;
+import nl.thedutchruben.mccore.global.caching.offheap.SlabAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapStoreTest {
+
+    @Test
+    void testFreedChunkIsReused() {
+        SlabAllocator allocator = new SlabAllocator(1024, 1);
+        long first = allocator.allocate(100);
+        allocator.allocate(100);
+        assertEquals(2L * allocator.getChunkSize(100), allocator.getUsedBytes());
+
+        allocator.free(first, 100);
+        assertEquals(allocator.getChunkSize(100), allocator.getUsedBytes());
+
+        // Any size of the same class gets the freed chunk back
+        assertEquals(first, allocator.allocate(allocator.getChunkSize(100)));
+        assertEquals(1024, allocator.getReservedBytes());
+    }
+
+    @Test
+    void testRemainderOfAFullSlabIsNotLost() {
+        SlabAllocator allocator = new SlabAllocator(1024, 2);
+        int first = allocator.getChunkSize(600);
+        assertEquals(0, allocator.allocate(600));
+        // Does not fit in the rest of the first slab, so a second slab is started
+        assertEquals(1L << 32, allocator.allocate(600));
+
+        int remainder = 1024 - first;
+        int size = remainder;
+        while (allocator.getChunkSize(size) > remainder) {
+            size--;
+        }
+        assertEquals(first, allocator.allocate(size));
+        assertEquals(2048, allocator.getReservedBytes());
+    }
+
+    @Test
+    void testAllocatorReturnsMinusOneWhenFull() {
+        SlabAllocator allocator = new SlabAllocator(1024, 1);
+        assertEquals(-1, allocator.allocate(1025));
+        long address = allocator.allocate(1024);
+        assertTrue(address >= 0);
+        assertEquals(-1, allocator.allocate(64));
+
+        allocator.free(address, 1024);
+        assertEquals(address, allocator.allocate(1024));
+    }
+
+    @Test
+    void testStoreAndRelease() {
+        OffHeapStore store = new OffHeapStore(64 * 1024, 1024, 0);
+        Date created = new Date();
+        OffHeapEntry entry = store.store("key", new TestObject("key", "value").lifetime(created, null));
+        assertNotNull(entry);
+        assertEquals("value", entry.decode().getData());
+        // A copy has the same create date, otherwise it is a different object
+        assertTrue(entry.isCopy(new TestObject("key", "value").lifetime(created, null)));
+        assertFalse(entry.isCopy(new TestObject("key", "other").lifetime(created, null)));
+        assertTrue(store.getUsedBytes() > 0);
+
+        store.release(entry);
+        store.release(entry);
+        assertNull(entry.decode());
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test
+    void testObjectsThatDoNotFitStayOnTheHeap() {
+        OffHeapStore small = new OffHeapStore(64 * 1024, 1024, 10_000);
+        assertNull(small.store("key", new TestObject("key", "value")));
+
+        OffHeapStore full = new OffHeapStore(1024, 1024, 0);
+        assertNull(full.store("large", new TestObject("large", pad("x", 2000))));
+        List<OffHeapEntry> entries = new ArrayList<>();
+        OffHeapEntry entry;
+        while ((entry = full.store("key", new TestObject("key", "value"))) != null) {
+            entries.add(entry);
+        }
+        assertFalse(entries.isEmpty());
+        full.release(entries.get(0));
+        assertNotNull(full.store("key", new TestObject("key", "value")));
+    }
+
+    @Test
+    void testOptimisticReadsNeverSeeAReusedChunk() throws InterruptedException {
+        OffHeapStore store = new OffHeapStore(64 * 1024, 1024, 0);
+        AtomicReference<OffHeapEntry> current = new AtomicReference<>(store.store("0", object(0)));
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            readers.add(new Thread(() -> {
+                while (running.get()) {
+                    OffHeapEntry entry = current.get();
+                    try {
+                        CachingObject object = entry.decode();
+                        // A released entry decodes to null, never to the object that took over its chunk
+                        if (object != null && !object.getData().equals(object(Integer.parseInt(entry.getKey()))
+                                .getData())) {
+                            failure.compareAndSet(null, new AssertionError("entry " + entry.getKey()
+                                    + " decoded to " + object.getData()));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        for (int i = 1; i < 20_000; i++) {
+            OffHeapEntry next = store.store(Integer.toString(i), object(i));
+            // Readers may still copy the released entry while the next store takes its chunk
+            store.release(current.getAndSet(next));
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+    }
+
+    private static TestObject object(int i) {
+        return new TestObject(Integer.toString(i), pad("value" + i, 200));
+    }
+
+    private static String pad(String value, int length) {
+        StringBuilder builder = new StringBuilder(value);
+        while (builder.length() < length) {
+            builder.append('-');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,60 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.eviction.LruEvictionPolicy;
+import nl.thedutchruben.mccore.spigot.session.PlayerSessionCache;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlayerSessionCacheTest extends CachingManagerFixture {
+
+    @BeforeEach
+    void start() {
+        cachingManager.setEvictionPolicy(new LruEvictionPolicy());
+        cachingManager.setMaximumSize(5);
+    }
+
+    @Test
+    void testSessionEntriesArePinnedUntilRelease() {
+        UUID uuid = UUID.randomUUID();
+        PlayerSessionCache sessions = new PlayerSessionCache(cachingManager, id -> CompletableFuture.completedFuture(
+                Arrays.asList(new TestObject(id + ":profile", "profile"), new TestObject(id + ":stats", "stats"))));
+
+        sessions.load(uuid).join();
+        assertEquals(2, sessions.getKeys(uuid).size());
+        for (int i = 0; i < 20; i++) {
+            cachingManager.putIfAbsent("other" + i, new TestObject("other" + i, "value"));
+        }
+        assertEquals("profile", cachingManager.getCachingObject(uuid + ":profile").getData());
+        assertEquals("stats", cachingManager.getCachingObject(uuid + ":stats").getData());
+
+        sessions.release(uuid).join();
+        assertFalse(sessions.hasSession(uuid));
+        assertFalse(cachingManager.isPinned(uuid + ":profile"));
+        assertEquals("profile", fileType.load(uuid + ":profile").join().getData());
+    }
+
+    @Test
+    void testFailedLoadRefusesLogin() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        PlayerSessionCache sessions = new PlayerSessionCache(cachingManager, id -> {
+            CompletableFuture<List<CachingObject>> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("database offline"));
+            return future;
+        });
+
+        AsyncPlayerPreLoginEvent event = new AsyncPlayerPreLoginEvent("Player", InetAddress.getLoopbackAddress(), uuid);
+        sessions.onPreLogin(event);
+
+        assertEquals(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, event.getLoginResult());
+        assertFalse(sessions.hasSession(uuid));
+    }
+}
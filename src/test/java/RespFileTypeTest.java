@@ -0,0 +1,146 @@
+import nl.thedutchruben.mccore.global.caching.CachingManager;
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.RespFileType;
+import nl.thedutchruben.mccore.global.caching.resp.RespServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RespFileTypeTest {
+    private RespServer server;
+    private RespFileType fileType;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new RespServer(0);
+        fileType = new RespFileType("127.0.0.1", server.getPort(), null, 4, "test:");
+    }
+
+    @AfterEach
+    void stop() {
+        fileType.close();
+        server.close();
+    }
+
+    @Test
+    void testSaveLoadAndRemove() {
+        fileType.save("a", new TestObject("a", "hello")).join();
+
+        CachingObject loaded = fileType.load("a").join();
+        assertInstanceOf(TestObject.class, loaded);
+        assertEquals("hello", loaded.getData());
+
+        fileType.remove(loaded).join();
+        assertNull(fileType.load("a").join());
+    }
+
+    @Test
+    void testExpiredObjectIsNotStored() {
+        fileType.save("old", new TestObject("old", "x").expires(new Date(System.currentTimeMillis() - 1000))).join();
+
+        assertNull(fileType.load("old").join());
+        assertEquals(0, server.size());
+    }
+
+    @Test
+    void testBatchesRoundTrip() {
+        Map<String, CachingObject> objects = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            Date expireDate = i % 10 == 0 ? new Date(System.currentTimeMillis() + 60_000) : null;
+            objects.put("key" + i, new TestObject("key" + i, "value" + i).expires(expireDate));
+        }
+        fileType.saveAll(objects).join();
+        assertEquals(100, server.size());
+
+        Map<String, CachingObject> loaded = fileType.loadAll(Arrays.asList("key1", "key10", "key99", "missing")).join();
+        assertEquals(3, loaded.size());
+        assertEquals("value10", loaded.get("key10").getData());
+        assertNull(loaded.get("missing"));
+
+        fileType.removeAll(new ArrayList<>(objects.values())).join();
+        assertEquals(0, server.size());
+    }
+
+    @Test
+    void testLoadAllScansEveryPage() {
+        // More keys than one SCAN page holds, saved concurrently so they share the pipelined connections
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            saves.add(fileType.save("key" + i, new TestObject("key" + i, "value" + i)));
+        }
+        CompletableFuture.allOf(saves.toArray(new CompletableFuture[0])).join();
+
+        Set<String> keys = new HashSet<>();
+        for (CachingObject cachingObject : fileType.loadALl().join()) {
+            assertEquals("value" + cachingObject.getKey().substring(3), cachingObject.getData());
+            keys.add(cachingObject.getKey());
+        }
+
+        assertEquals(2000, keys.size());
+    }
+
+    @Test
+    void testManagerReadsThroughInsteadOfLoadingTheNamespace() {
+        fileType.save("a", new TestObject("a", "hello")).join();
+        CachingManager manager = manager();
+
+        assertTrue(manager.getKeys().isEmpty());
+        assertEquals("hello", manager.getCachingObjectAsync("a").join().getData());
+        assertEquals("hello", manager.getCachingObject("a").getData());
+        assertNull(manager.getCachingObjectAsync("missing").join());
+        // A loaded object is not saved back
+        assertEquals(0, manager.getWriteBehindQueue().getPendingCount());
+        manager.shutdown();
+    }
+
+    @Test
+    void testWriteOfAnotherServerIsSeenAfterEvict() {
+        CachingManager first = manager();
+        CachingManager second = manager();
+        first.addCachingObject("key", new TestObject("key", "old"));
+        first.flush();
+        assertEquals("old", second.getCachingObjectAsync("key").join().getData());
+
+        first.replace("key", new TestObject("key", "new"));
+        first.flush();
+        // The second server serves its own copy until it drops it, and never writes that copy back
+        assertEquals("old", second.getCachingObject("key").getData());
+        second.flush();
+        assertEquals("new", fileType.load("key").join().getData());
+
+        assertTrue(second.evict("key"));
+        assertEquals("new", second.getCachingObjectAsync("key").join().getData());
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    void testMergeBuildsOnTheSavedObject() {
+        fileType.save("key", new TestObject("key", "saved")).join();
+        CachingManager manager = manager();
+
+        manager.merge("key", new TestObject("key", "added"),
+                (current, added) -> new TestObject("key", current.getData() + "+" + added.getData()));
+        manager.flush();
+
+        assertEquals("saved+added", fileType.load("key").join().getData());
+        manager.shutdown();
+    }
+
+    private CachingManager manager() {
+        return new CachingManager(new RespFileType("127.0.0.1", server.getPort(), null, 2, "test:"));
+    }
+}
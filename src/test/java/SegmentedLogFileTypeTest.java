@@ -0,0 +1,105 @@
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.SegmentedLogFileType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentedLogFileTypeTest extends TempDirectoryFixture {
+
+    @Test
+    void testSavesAndTombstonesSurviveARestart() {
+        SegmentedLogFileType fileType = new SegmentedLogFileType(directory, 1024 * 1024);
+        fileType.save("a", new TestObject("a", "first")).join();
+        fileType.save("a", new TestObject("a", "second")).join();
+        fileType.save("b", new TestObject("b", "value")).join();
+        fileType.remove(new TestObject("b", null)).join();
+        assertEquals("second", fileType.load("a").join().getData());
+        assertNull(fileType.load("b").join());
+        fileType.close();
+
+        SegmentedLogFileType reopened = new SegmentedLogFileType(directory, 1024 * 1024);
+        assertEquals("second", reopened.load("a").join().getData());
+        assertNull(reopened.load("b").join());
+        assertEquals(1, reopened.loadALl().join().size());
+        reopened.close();
+    }
+
+    @Test
+    void testTornTailIsCutOff() throws IOException {
+        SegmentedLogFileType fileType = new SegmentedLogFileType(directory, 1024 * 1024);
+        fileType.save("a", new TestObject("a", "value")).join();
+        fileType.close();
+        try (FileOutputStream out = new FileOutputStream(segments()[0], true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3});
+        }
+
+        SegmentedLogFileType reopened = new SegmentedLogFileType(directory, 1024 * 1024);
+        assertEquals("value", reopened.load("a").join().getData());
+        reopened.save("b", new TestObject("b", "value")).join();
+        reopened.close();
+
+        // The next record starts where the torn one was cut off
+        SegmentedLogFileType again = new SegmentedLogFileType(directory, 1024 * 1024);
+        assertEquals("value", again.load("a").join().getData());
+        assertEquals("value", again.load("b").join().getData());
+        again.close();
+    }
+
+    @Test
+    void testBadRecordInAnOlderSegmentFails() throws IOException {
+        SegmentedLogFileType fileType = new SegmentedLogFileType(directory, 128);
+        for (int i = 0; i < 20; i++) {
+            fileType.save("key" + i, new TestObject("key" + i, "value" + i)).join();
+        }
+        fileType.close();
+        File[] segments = segments();
+        assertTrue(segments.length > 1);
+        try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+            file.seek(file.length() - 1);
+            file.write(file.read() ^ 0xFF);
+        }
+
+        SegmentedLogFileType reopened = new SegmentedLogFileType(directory, 128);
+        assertThrows(CompletionException.class, () -> reopened.load("key19").join());
+        assertThrows(CompletionException.class, () -> reopened.save("key0", new TestObject("key0", "new")).join());
+        assertThrows(CompletionException.class, () -> reopened.compact().join());
+        reopened.close();
+        assertEquals(segments.length, segments().length);
+    }
+
+    @Test
+    void testCompactionKeepsTheLiveRecords() {
+        SegmentedLogFileType fileType = new SegmentedLogFileType(directory, 256);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 20; i++) {
+                fileType.save("key" + i, new TestObject("key" + i, "value" + round)).join();
+            }
+        }
+        for (int i = 10; i < 20; i++) {
+            fileType.remove(new TestObject("key" + i, null)).join();
+        }
+        int before = segments().length;
+        fileType.compact().join();
+        assertTrue(segments().length < before);
+        assertEquals(10, fileType.loadALl().join().size());
+        fileType.close();
+
+        SegmentedLogFileType reopened = new SegmentedLogFileType(directory, 256);
+        assertEquals(10, reopened.loadALl().join().size());
+        assertEquals("value4", reopened.load("key0").join().getData());
+        assertNull(reopened.load("key15").join());
+        reopened.close();
+    }
+
+    private File[] segments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-"));
+        Arrays.sort(files);
+        return files;
+    }
+}
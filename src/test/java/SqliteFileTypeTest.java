@@ -0,0 +1,77 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.SqliteFileType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SqliteFileTypeTest extends TempDirectoryFixture {
+    private File file;
+
+    @BeforeEach
+    void start() {
+        file = new File(directory, "caching.db");
+    }
+
+    @Test
+    void testSaveLoadAndRemove() {
+        SqliteFileType fileType = new SqliteFileType(file);
+        fileType.save("a", new TestObject("a", "hello")).join();
+
+        CachingObject loaded = fileType.load("a").join();
+        assertInstanceOf(TestObject.class, loaded);
+        assertEquals("hello", loaded.getData());
+
+        fileType.remove(loaded).join();
+        assertNull(fileType.load("a").join());
+        fileType.close();
+    }
+
+    @Test
+    void testBatchesSurviveARestart() {
+        SqliteFileType fileType = new SqliteFileType(file);
+        Map<String, CachingObject> objects = new LinkedHashMap<>();
+        for (int i = 0; i < 1200; i++) {
+            objects.put("key" + i, new TestObject("key" + i, "value" + i));
+        }
+        fileType.saveAll(objects).join();
+        List<CachingObject> removes = new ArrayList<>();
+        removes.add(objects.get("key0"));
+        fileType.removeAll(removes).join();
+        fileType.close();
+
+        SqliteFileType reopened = new SqliteFileType(file);
+        List<String> keys = new ArrayList<>(objects.keySet());
+        keys.add("missing");
+        Map<String, CachingObject> loaded = reopened.loadAll(keys).join();
+        assertEquals(1199, loaded.size());
+        assertEquals("value1100", loaded.get("key1100").getData());
+        assertFalse(loaded.containsKey("key0"));
+        reopened.close();
+    }
+
+    @Test
+    void testStreamSkipsExpiredRows() {
+        SqliteFileType fileType = new SqliteFileType(file);
+        fileType.save("old", new TestObject("old", "x").expires(new Date(System.currentTimeMillis() - 1000))).join();
+        fileType.save("new", new TestObject("new", "y")).join();
+
+        AtomicInteger streamed = new AtomicInteger();
+        fileType.streamAll(object -> streamed.incrementAndGet()).join();
+
+        assertEquals(1, streamed.get());
+        List<CachingObject> all = fileType.loadALl().join();
+        assertEquals(1, all.size());
+        assertEquals("new", all.get(0).getKey());
+        assertNull(fileType.load("old").join());
+        fileType.close();
+    }
+}
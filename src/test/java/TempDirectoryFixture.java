@@ -0,0 +1,33 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Gives every test an empty temporary directory, which is deleted with everything in it after the test
+ */
+public abstract class TempDirectoryFixture {
+    protected File directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("mccore-test").toFile();
+    }
+
+    @AfterEach
+    void deleteDirectory() {
+        delete(directory);
+    }
+
+    protected static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,98 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The caching object the tests store, persistent unless it is created with {@link #inMemory(String, String)}
+ */
+public class TestObject extends CachingObject {
+    private String key;
+    private String data;
+    private boolean persistent = true;
+    private Date createDate = new Date();
+    private Date expireDate;
+    private long timeToIdle = -1;
+
+    public TestObject() {
+    }
+
+    public TestObject(String key, String data) {
+        this.key = key;
+        this.data = data;
+    }
+
+    /**
+     * Create an object that is not saved to the file system
+     *
+     * @param key
+     * @param data
+     * @return
+     */
+    public static TestObject inMemory(String key, String data) {
+        TestObject object = new TestObject(key, data);
+        object.persistent = false;
+        return object;
+    }
+
+    /**
+     * Create persistent objects with the keys key0, key1... and the values value0, value1...
+     *
+     * @param count
+     * @return the objects by key, in the order of the keys
+     */
+    public static Map<String, CachingObject> objects(int count) {
+        Map<String, CachingObject> objects = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            objects.put("key" + i, new TestObject("key" + i, "value" + i));
+        }
+        return objects;
+    }
+
+    public TestObject expires(Date expireDate) {
+        this.expireDate = expireDate;
+        return this;
+    }
+
+    public TestObject lifetime(Date createDate, Date expireDate) {
+        this.createDate = createDate;
+        this.expireDate = expireDate;
+        return this;
+    }
+
+    public TestObject timeToIdle(long timeToIdle) {
+        this.timeToIdle = timeToIdle;
+        return this;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public Boolean isPersistent() {
+        return persistent;
+    }
+
+    @Override
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    @Override
+    public Date getExpireDate() {
+        return expireDate;
+    }
+
+    @Override
+    public long getTimeToIdleMillis() {
+        return timeToIdle;
+    }
+
+    @Override
+    public Object getData() {
+        return data;
+    }
+}
@@ -0,0 +1,70 @@
+import nl.thedutchruben.mccore.global.caching.expiry.CacheClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeToIdleTest extends CachingManagerFixture {
+    private ManualClock clock;
+
+    @BeforeEach
+    void installClock() {
+        clock = ManualClock.install();
+    }
+
+    @AfterEach
+    void uninstallClock() {
+        clock.uninstall();
+    }
+
+    @Test
+    void testReadsKeepTheObjectAlive() {
+        cachingManager.putIfAbsent("used", TestObject.inMemory("used", "value").timeToIdle(300));
+
+        for (int i = 0; i < 10; i++) {
+            clock.advance(100);
+            assertNotNull(cachingManager.getCachingObject("used"), "read " + i);
+        }
+    }
+
+    @Test
+    void testIdleObjectExpires() throws InterruptedException {
+        cachingManager.putIfAbsent("idle", TestObject.inMemory("idle", "value").timeToIdle(200));
+        assertNotNull(cachingManager.getCachingObject("idle"));
+
+        clock.advance(400);
+        assertNull(cachingManager.getCachingObject("idle"));
+
+        // The expiry service removes it in the background, once its tick of a second is over
+        clock.advance(1000);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cachingManager.getKeys().contains("idle") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(cachingManager.getKeys().contains("idle"));
+    }
+
+    @Test
+    void testExpireDateWinsOverTimeToIdle() {
+        long expireAt = clock.millis() + 200;
+        TestObject object = TestObject.inMemory("short", "value").timeToIdle(60_000).expires(new Date(expireAt));
+        assertEquals(expireAt, object.getExpireAt());
+        cachingManager.putIfAbsent("short", object);
+
+        clock.advance(300);
+        assertNull(cachingManager.getCachingObject("short"));
+    }
+
+    @Test
+    void testClockFollowsTheTimeSource() {
+        long time = CacheClock.currentTimeMillis();
+        clock.advance(1000);
+        assertEquals(time + 1000, CacheClock.currentTimeMillis());
+
+        clock.uninstall();
+        assertTrue(Math.abs(System.currentTimeMillis() - CacheClock.currentTimeMillis()) <= CacheClock.TICK_MILLIS);
+    }
+}
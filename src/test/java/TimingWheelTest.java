@@ -0,0 +1,47 @@
+import nl.thedutchruben.mccore.global.caching.expiry.TimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    @Test
+    void testDueKeyIsNotAdded() {
+        TimingWheel wheel = new TimingWheel(10, 8, 1000);
+        assertFalse(wheel.add("old", 500));
+        assertTrue(wheel.add("new", 1500));
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void testKeysExpireInTimeAcrossOverflowWheels() {
+        TimingWheel wheel = new TimingWheel(10, 8, 1000);
+        Map<String, Long> expireTimes = new HashMap<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 2000; i++) {
+            long expireAt = 1000 + random.nextInt(100_000);
+            expireTimes.put("key" + i, expireAt);
+            wheel.add("key" + i, expireAt);
+        }
+
+        List<String> expired = new ArrayList<>();
+        for (long now = 1000; now <= 102_000; now += 7) {
+            long time = now;
+            wheel.advance(now, key -> {
+                long expireAt = expireTimes.get(key);
+                assertTrue(expireAt <= time, key + " expired too early");
+                assertTrue(time - expireAt <= 10 + 7, key + " expired too late");
+                expired.add(key);
+            });
+        }
+
+        assertEquals(2000, expired.size());
+        assertEquals(0, wheel.size());
+    }
+}
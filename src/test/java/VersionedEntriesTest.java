@@ -0,0 +1,163 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.VersionedObject;
+import nl.thedutchruben.mccore.global.caching.offheap.OffHeapStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionedEntriesTest extends CachingManagerFixture {
+
+    @Test
+    void testStaleVersionIsRejected() {
+        assertNull(cachingManager.getVersioned("clan"));
+        assertTrue(cachingManager.compareAndSet("clan", 0, new ClanPoints("clan", 10)));
+        assertFalse(cachingManager.compareAndSet("clan", 0, new ClanPoints("clan", 20)));
+
+        VersionedObject first = cachingManager.getVersioned("clan");
+        assertEquals(10, ((ClanPoints) first.getObject()).points);
+        assertTrue(cachingManager.compareAndSet("clan", first.getVersion(), new ClanPoints("clan", 15)));
+        assertFalse(cachingManager.compareAndSet("clan", first.getVersion(), new ClanPoints("clan", 30)));
+
+        VersionedObject second = cachingManager.getVersioned("clan");
+        assertEquals(15, ((ClanPoints) second.getObject()).points);
+        assertTrue(second.getVersion() > first.getVersion());
+    }
+
+    @Test
+    void testOtherWritesChangeTheVersion() {
+        cachingManager.putIfAbsent("clan", new ClanPoints("clan", 10));
+        long version = cachingManager.getVersioned("clan").getVersion();
+
+        cachingManager.replace("clan", new ClanPoints("clan", 11));
+
+        assertFalse(cachingManager.compareAndSet("clan", version, new ClanPoints("clan", 12)));
+        assertEquals(11, ((ClanPoints) cachingManager.getCachingObject("clan")).points);
+    }
+
+    @Test
+    void testFailedWritesKeepTheVersion() {
+        ClanPoints points = new ClanPoints("clan", 10);
+        cachingManager.putIfAbsent("clan", points);
+        long version = cachingManager.getVersioned("clan").getVersion();
+
+        assertFalse(cachingManager.compareAndSet("clan", version + 1, new ClanPoints("clan", 11)));
+        assertNotNull(cachingManager.putIfAbsent("clan", points));
+        assertFalse(cachingManager.replace("clan", new ClanPoints("clan", 12), points));
+
+        assertEquals(version, cachingManager.getVersioned("clan").getVersion());
+        assertTrue(cachingManager.compareAndSet("clan", version, new ClanPoints("clan", 13)));
+    }
+
+    @Test
+    void testStoredObjectIsRejected() {
+        cachingManager.putIfAbsent("clan", new ClanPoints("clan", 10));
+        VersionedObject current = cachingManager.getVersioned("clan");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> cachingManager.compareAndSet("clan", current.getVersion(), current.getObject()));
+        assertEquals(current.getVersion(), cachingManager.getVersioned("clan").getVersion());
+    }
+
+    @Test
+    void testConcurrentMergesAreNotLost()throws InterruptedException {
+        runConcurrently(() -> cachingManager.merge("clan", new ClanPoints("clan", 1),
+                (current, added) -> new ClanPoints("clan",
+                        ((ClanPoints) current).points + ((ClanPoints) added).points)));
+
+        assertEquals(8 * 10_000, ((ClanPoints) cachingManager.getCachingObject("clan")).points);
+    }
+
+    @Test
+    void testConcurrentCompareAndSetLoopsAreNotLost() throws InterruptedException {
+        cachingManager.putIfAbsent("clan", new ClanPoints("clan", 0));
+        runConcurrently(() -> {
+            VersionedObject current;
+            do {
+                current = cachingManager.getVersioned("clan");
+            } while (!cachingManager.compareAndSet("clan", current.getVersion(),
+                    new ClanPoints("clan", ((ClanPoints) current.getObject()).points + 1)));
+        });
+
+        assertEquals(8 * 10_000, ((ClanPoints) cachingManager.getCachingObject("clan")).points);
+    }
+
+    @Test
+    void testMergeToNullRemoves() {
+        cachingManager.putIfAbsent("clan", new ClanPoints("clan", 10));
+
+        assertNull(cachingManager.merge("clan", new ClanPoints("clan", 0), (current, added) -> null));
+
+        assertNull(cachingManager.getCachingObject("clan"));
+        assertEquals(0, cachingManager.size());
+    }
+
+    @Test
+    void testVersionsOfObjectsOffTheHeap() {
+        cachingManager.setOffHeapStore(new OffHeapStore(1024 * 1024, 64 * 1024, 0));
+        cachingManager.merge("clan", new ClanPoints("clan", 5), (current, added) -> added);
+
+        VersionedObject current = cachingManager.getVersioned("clan");
+        assertEquals(5, ((ClanPoints) current.getObject()).points);
+        assertTrue(cachingManager.compareAndSet("clan", current.getVersion(), new ClanPoints("clan", 6)));
+        assertFalse(cachingManager.compareAndSet("clan", current.getVersion(), new ClanPoints("clan", 7)));
+        assertEquals(6, ((ClanPoints) cachingManager.getCachingObject("clan")).points);
+    }
+
+    private static void runConcurrently(Runnable update) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    update.run();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    public static class ClanPoints extends CachingObject {
+        private String key;
+        private int points;
+
+        public ClanPoints() {
+        }
+
+        public ClanPoints(String key, int points) {
+            this.key = key;
+            this.points = points;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Boolean isPersistent() {
+            return false;
+        }
+
+        @Override
+        public Date getCreateDate() {
+            return null;
+        }
+
+        @Override
+        public Date getExpireDate() {
+            return null;
+        }
+
+        @Override
+        public Object getData() {
+            return points;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.WriteAheadLog;
+import nl.thedutchruben.mccore.global.caching.WriteBehindQueue;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest extends TempDirectoryFixture {
+    private File logDirectory;
+
+    @BeforeEach
+    void start() {
+        logDirectory = new File(directory, "wal");
+    }
+
+    @Test
+    void testReplayWritesTheLastWriteOfEveryKey() {
+        WriteAheadLog log = new WriteAheadLog(logDirectory);
+        log.logSave("a", new TestObject("a", "first")).join();
+        log.logSave("a", new TestObject("a", "second")).join();
+        log.logSave("b", new TestObject("b", "value")).join();
+        log.logRemove(new TestObject("b", "value")).join();
+        // Closed without a checkpoint, like a crash before the write-behind queue flushed
+        log.close();
+
+        MappedFileType fileType = new MappedFileType(new File(directory, "cache.dat"), 64);
+        WriteAheadLog reopened = new WriteAheadLog(logDirectory);
+        assertEquals(2, reopened.replay(fileType));
+        assertEquals("second", fileType.load("a").join().getData());
+        assertNull(fileType.load("b").join());
+
+        reopened.close();
+        assertEquals(0, logFiles().length);
+        fileType.close();
+    }
+
+    @Test
+    void testTornRecordEndsTheReplay() throws IOException {
+        WriteAheadLog log = new WriteAheadLog(logDirectory);
+        log.logSave("a", new TestObject("a", "value")).join();
+        log.close();
+        try (FileOutputStream out = new FileOutputStream(logFiles()[0], true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3});
+        }
+
+        MappedFileType fileType = new MappedFileType(new File(directory, "cache.dat"), 64);
+        WriteAheadLog reopened = new WriteAheadLog(logDirectory);
+        assertEquals(1, reopened.replay(fileType));
+        assertEquals("value", fileType.load("a").join().getData());
+        reopened.close();
+        fileType.close();
+    }
+
+    @Test
+    void testCheckpointDeletesFlushedGenerations() {
+        WriteAheadLog log = new WriteAheadLog(logDirectory);
+        log.logSave("a", new TestObject("a", "value")).join();
+        long generation = log.rotate();
+        log.logSave("b", new TestObject("b", "value")).join();
+        log.checkpoint(generation);
+        log.close();
+
+        assertEquals(1, logFiles().length);
+    }
+
+    @Test
+    void testEveryConcurrentWriteIsLogged() throws InterruptedException {
+        WriteAheadLog log = new WriteAheadLog(logDirectory);
+        List<CompletableFuture<Void>> futures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    String key = "key" + thread + "-" + i;
+                    futures.add(log.logSave(key, new TestObject(key, "value")));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        log.close();
+
+        MappedFileType fileType = new MappedFileType(new File(directory, "cache.dat"), 64);
+        WriteAheadLog reopened = new WriteAheadLog(logDirectory);
+        assertEquals(2000, reopened.replay(fileType));
+        assertEquals("value", fileType.load("key3-499").join().getData());
+        reopened.close();
+        fileType.close();
+    }
+
+    @Test
+    void testFailedFlushIsRetriedAndItsGenerationDeleted() {
+        FailingFileType fileType = new FailingFileType(new File(directory, "cache.dat"));
+        WriteAheadLog log = new WriteAheadLog(logDirectory);
+        WriteBehindQueue queue = new WriteBehindQueue(() -> fileType, 60_000, 1000, log);
+
+        fileType.failing = true;
+        queue.enqueueSave("a", new TestObject("a", "value"));
+        queue.flush();
+        assertEquals(1, queue.getPendingCount());
+
+        fileType.failing = false;
+        queue.enqueueSave("b", new TestObject("b", "value"));
+        queue.flush();
+        queue.shutdown();
+
+        assertEquals("value", fileType.load("a").join().getData());
+        assertEquals("value", fileType.load("b").join().getData());
+        // The retry logged the write again, so its checkpoint deleted the generation of the failed flush
+        assertEquals(0, logFiles().length);
+        fileType.close();
+    }
+
+    private File[] logFiles() {
+        File[] files = logDirectory.listFiles((dir, name) -> name.endsWith(".log"));
+        return files == null ? new File[0] : files;
+    }
+
+    private static class FailingFileType extends MappedFileType {
+        private volatile boolean failing;
+
+        private FailingFileType(File file) {
+            super(file, 64);
+        }
+
+        @Override
+        public CompletableFuture<Void> saveAll(Map<String, CachingObject> cachingObjects) {
+            if (failing) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(new IOException("disk full"));
+                return future;
+            }
+            return super.saveAll(cachingObjects);
+        }
+    }
+}
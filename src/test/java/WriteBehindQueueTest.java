@@ -0,0 +1,96 @@
+import nl.thedutchruben.mccore.global.caching.CachingObject;
+import nl.thedutchruben.mccore.global.caching.WriteBehindQueue;
+import nl.thedutchruben.mccore.global.caching.fileSystemTypes.MappedFileType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindQueueTest extends TempDirectoryFixture {
+    private PoisonFileType fileType;
+    private WriteBehindQueue queue;
+
+    @BeforeEach
+    void createQueue() {
+        fileType = new PoisonFileType(new File(directory, "cache.dat"));
+        queue = new WriteBehindQueue(() -> fileType, 60_000, 1000);
+    }
+
+    @AfterEach
+    void shutdownQueue() {
+        queue.shutdown();
+        fileType.close();
+    }
+
+    @Test
+    void testPoisonWriteDoesNotHoldBackTheBatch() {
+        queue.enqueueSave("a", new TestObject("a", "value"));
+        queue.enqueueSave("poison", new TestObject("poison", "value"));
+        queue.enqueueSave("b", new TestObject("b", "value"));
+        queue.flush();
+
+        assertEquals("value", fileType.load("a").join().getData());
+        assertEquals("value", fileType.load("b").join().getData());
+        assertEquals(1, queue.getPendingCount());
+        assertTrue(queue.isPending("poison"));
+    }
+
+    @Test
+    void testWriteIsDroppedAfterTheMaximumAttempts() {
+        queue.enqueueSave("poison", new TestObject("poison", "value"));
+        for (int i = 1; i < WriteBehindQueue.MAX_ATTEMPTS; i++) {
+            queue.flush();
+            assertTrue(queue.isPending("poison"));
+        }
+
+        queue.flush();
+
+        assertFalse(queue.isPending("poison"));
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    void testNewerWriteStartsWithNewAttempts() {
+        queue.enqueueSave("poison", new TestObject("poison", "old"));
+        for (int i = 1; i < WriteBehindQueue.MAX_ATTEMPTS; i++) {
+            queue.flush();
+        }
+        queue.enqueueSave("poison", new TestObject("poison", "new"));
+
+        queue.flush();
+
+        assertEquals("new", queue.getPendingSave("poison").getData());
+    }
+
+    /**
+     * Fails every write that contains the key poison
+     */
+    private static class PoisonFileType extends MappedFileType {
+
+        private PoisonFileType(File file) {
+            super(file, 64);
+        }
+
+        @Override
+        public CompletableFuture<Void> save(String key, CachingObject cachingObject) {
+            return "poison".equals(key) ? failed() : super.save(key, cachingObject);
+        }
+
+        @Override
+        public CompletableFuture<Void> saveAll(Map<String, CachingObject> cachingObjects) {
+            return cachingObjects.containsKey("poison") ? failed() : super.saveAll(cachingObjects);
+        }
+
+        private static CompletableFuture<Void> failed() {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("bad record"));
+            return future;
+        }
+    }
+}
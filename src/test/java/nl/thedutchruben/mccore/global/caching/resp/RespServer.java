@@ -0,0 +1,299 @@
+package nl.thedutchruben.mccore.global.caching.resp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in memory server that speaks the Redis protocol, so the {@link RespClient} and the
+ * {@link nl.thedutchruben.mccore.global.caching.fileSystemTypes.RespFileType} can be tested and benchmarked without
+ * a Redis server.
+ * <p>
+ * Only the commands the file system uses are supported: PING, AUTH, SELECT, GET, SET (with PX), MSET, MGET, DEL,
+ * EXISTS, PEXPIREAT, SCAN (with MATCH on a prefix and COUNT), DBSIZE, FLUSHDB and QUIT. It is not made to run in
+ * production.
+ */
+public class RespServer implements Closeable {
+    private final ConcurrentSkipListMap<String, Value> data = new ConcurrentSkipListMap<>();
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Map<Socket, Boolean> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Start a server on the loopback address
+     *
+     * @param port the port, 0 picks a free port
+     * @throws IOException if the port can't be bound
+     */
+    public RespServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mccore-resp-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::accept);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the amount of keys that are stored, expired keys that are not read yet are included
+     *
+     * @return
+     */
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Socket socket : clients.keySet()) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed by the client
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                clients.put(socket, Boolean.TRUE);
+                executor.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket ignored = socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            while (true) {
+                Object request = RespProtocol.read(in);
+                if (!(request instanceof List)) {
+                    RespProtocol.writeReply(out, new RespException("ERR expected a command array"));
+                } else {
+                    List<?> args = (List<?>) request;
+                    if (!args.isEmpty() && "QUIT".equalsIgnoreCase(RespProtocol.string(args.get(0)))) {
+                        RespProtocol.writeReply(out, "OK");
+                        out.flush();
+                        return;
+                    }
+                    RespProtocol.writeReply(out, execute(args));
+                }
+                // Only flush when the whole pipeline is read, the replies go back in one write
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // The client closed the connection
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    private Object execute(List<?> args) {
+        if (args.isEmpty()) {
+            return new RespException("ERR empty command");
+        }
+        String command = RespProtocol.string(args.get(0)).toUpperCase();
+        try {
+            switch (command) {
+                case "PING":
+                    return "PONG";
+                case "AUTH":
+                case "SELECT":
+                    return "OK";
+                case "GET":
+                    return get(key(args, 1));
+                case "SET":
+                    return set(args);
+                case "MSET": {
+                    if (args.size() < 3 || args.size() % 2 == 0) {
+                        return new RespException("ERR wrong number of arguments for 'MSET'");
+                    }
+                    for (int i = 1; i < args.size(); i += 2) {
+                        data.put(key(args, i), new Value((byte[]) args.get(i + 1), -1));
+                    }
+                    return "OK";
+                }
+                case "MGET": {
+                    List<Object> values = new ArrayList<>(args.size() - 1);
+                    for (int i = 1; i < args.size(); i++) {
+                        values.add(get(key(args, i)));
+                    }
+                    return values;
+                }
+                case "DEL": {
+                    long removed = 0;
+                    for (int i = 1; i < args.size(); i++) {
+                        Value value = data.remove(key(args, i));
+                        if (value != null && !value.isExpired(System.currentTimeMillis())) {
+                            removed++;
+                        }
+                    }
+                    return removed;
+                }
+                case "EXISTS": {
+                    long found = 0;
+                    for (int i = 1; i < args.size(); i++) {
+                        if (get(key(args, i)) != null) {
+                            found++;
+                        }
+                    }
+                    return found;
+                }
+                case "PEXPIREAT": {
+                    String key = key(args, 1);
+                    long expireAt = Long.parseLong(RespProtocol.string(args.get(2)));
+                    Value value = data.computeIfPresent(key, (k, current) -> new Value(current.data, expireAt));
+                    return value == null ? 0L : 1L;
+                }
+                case "SCAN":
+                    return scan(args);
+                case "DBSIZE":
+                    return (long) data.size();
+                case "FLUSHDB":
+                    data.clear();
+                    return "OK";
+                default:
+                    return new RespException("ERR unknown command '" + command + "'");
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return new RespException("ERR wrong number of arguments for '" + command + "'");
+        } catch (NumberFormatException e) {
+            return new RespException("ERR value is not an integer or out of range");
+        }
+    }
+
+    private byte[] get(String key) {
+        Value value = data.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value.isExpired(System.currentTimeMillis())) {
+            data.remove(key, value);
+            return null;
+        }
+        return value.data;
+    }
+
+    private Object set(List<?> args) {
+        String key = key(args, 1);
+        byte[] value = (byte[]) args.get(2);
+        long expireAt = -1;
+        for (int i = 3; i < args.size(); i++) {
+            String option = RespProtocol.string(args.get(i)).toUpperCase();
+            if (option.equals("PX")) {
+                expireAt = System.currentTimeMillis() + Long.parseLong(RespProtocol.string(args.get(++i)));
+            } else if (option.equals("PXAT")) {
+                expireAt = Long.parseLong(RespProtocol.string(args.get(++i)));
+            } else {
+                return new RespException("ERR syntax error");
+            }
+        }
+        data.put(key, new Value(value, expireAt));
+        return "OK";
+    }
+
+    /**
+     * The cursor is the last key of the previous page, so keys that are added or removed during a scan don't move
+     * the other keys like an index would
+     */
+    private Object scan(List<?> args) {
+        String cursor = RespProtocol.string(args.get(1));
+        String prefix = "";
+        int count = 10;
+        for (int i = 2; i < args.size(); i++) {
+            String option = RespProtocol.string(args.get(i)).toUpperCase();
+            if (option.equals("MATCH")) {
+                String pattern = RespProtocol.string(args.get(++i));
+                if (!pattern.endsWith("*") || pattern.indexOf('*') != pattern.length() - 1) {
+                    return new RespException("ERR only prefix patterns are supported");
+                }
+                prefix = pattern.substring(0, pattern.length() - 1);
+            } else if (option.equals("COUNT")) {
+                count = Math.max(1, Integer.parseInt(RespProtocol.string(args.get(++i))));
+            } else {
+                return new RespException("ERR syntax error");
+            }
+        }
+        Map<String, Value> tail = cursor.equals("0") ? data.tailMap(prefix, true)
+                : data.tailMap(new String(Base64.getDecoder().decode(cursor), StandardCharsets.UTF_8), false);
+        List<Object> keys = new ArrayList<>();
+        String last = null;
+        boolean more = false;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Value> entry : tail.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (keys.size() >= count) {
+                more = true;
+                break;
+            }
+            last = entry.getKey();
+            if (!entry.getValue().isExpired(now)) {
+                keys.add(RespProtocol.bytes(last));
+            }
+        }
+        String nextCursor = more ? Base64.getEncoder().encodeToString(last.getBytes(StandardCharsets.UTF_8)) : "0";
+        return Arrays.asList(RespProtocol.bytes(nextCursor), keys.isEmpty() ? Collections.emptyList() : keys);
+    }
+
+    private static String key(List<?> args, int index) {
+        return RespProtocol.string(args.get(index));
+    }
+
+    private static final class Value {
+        private final byte[] data;
+        private final long expireAt;
+
+        private Value(byte[] data, long expireAt) {
+            this.data = data;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt >= 0 && now >= expireAt;
+        }
+    }
+}